@@ -0,0 +1,67 @@
+package blok2.daos.db;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of a single atomic reservation (cfr. DBLocationReservationDao) with a connection of the pool of the
+ * ConnectionProvider, compared against a new connection for every reservation as before. The reservation is rolled
+ * back, so that the database is left as it was.
+ *
+ * Needs a migrated database, by default the one of the tests. Another one can be used with
+ * ./gradlew jmh -Pjmh.datasource.url=... -Pjmh.datasource.username=... -Pjmh.datasource.password=...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectionProviderBenchmark {
+
+    @Param({"pooled", "dedicated"})
+    public String connection;
+
+    private ConnectionProvider connectionProvider;
+    private int timeslotSeqnr;
+
+    @Setup(Level.Trial)
+    public void createConnectionProvider() throws SQLException {
+        connectionProvider = new ConnectionProvider(new SimpleMeterRegistry());
+        connectionProvider.setUrl(System.getProperty("jmh.datasource.url", "jdbc:postgresql://localhost:5432/blokatugent_test"));
+        connectionProvider.setUsername(System.getProperty("jmh.datasource.username", "postgres"));
+        connectionProvider.setPassword(System.getProperty("jmh.datasource.password", "postgres"));
+        // Without a timeslot the update changes nothing, but the round trips are the same.
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("select coalesce(min(sequence_number), -1) from timeslots");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            timeslotSeqnr = rs.getInt(1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeConnectionProvider() {
+        connectionProvider.close();
+    }
+
+    @Benchmark
+    public int reserveAndRollBack() throws SQLException {
+        try (Connection conn = "pooled".equals(connection) ? connectionProvider.getConnection() : connectionProvider.getDedicatedConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement("update timeslots " +
+                    "set reservation_count = reservation_count + 1 " +
+                    "where sequence_number = ? and reservation_count < seat_count")) {
+                stmt.setInt(1, timeslotSeqnr);
+                return stmt.executeUpdate();
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package blok2.scheduling;
+
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservations.LocationReservation;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
+
+/**
+ * Benchmarks of the PoolQueue:
+ * - pushReservation from 1 to N producers while a consumer pops the first come first serve pools,
+ *   compared against a LinkedBlockingQueue;
+ * - releasing the random pools of thousands of timeslots once their pre-reservation timer expired, one by one
+ *   or as a release wave, compared against scanning all random pools as the minute cron used to do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoolQueueBenchmark {
+
+    private static final int OPERATIONS = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class FirstComeFirstServe {
+
+        @Param({"1", "2", "4", "8"})
+        public int producers;
+
+        @Param({"PoolQueue", "LinkedBlockingQueue"})
+        public String queue;
+
+        private ExecutorService producerThreads;
+        private LocationReservation[] reservations;
+
+        private PoolQueue poolQueue;
+        private LinkedBlockingQueue<LocationReservation> blockingQueue;
+
+        @Setup(Level.Trial)
+        public void startProducers() {
+            producerThreads = Executors.newFixedThreadPool(producers);
+            reservations = Reservations.firstComeFirstServe(OPERATIONS, 100);
+        }
+
+        @TearDown(Level.Trial)
+        public void stopProducers() {
+            producerThreads.shutdownNow();
+        }
+
+        @Setup(Level.Invocation)
+        public void newQueue() {
+            poolQueue = new PoolQueue();
+            blockingQueue = new LinkedBlockingQueue<>();
+        }
+
+        void push(LocationReservation reservation) {
+            if ("PoolQueue".equals(queue)) {
+                poolQueue.pushReservation(reservation);
+            } else {
+                blockingQueue.add(reservation);
+            }
+        }
+
+        int pop() throws InterruptedException {
+            if ("PoolQueue".equals(queue)) {
+                return poolQueue.popPool().size();
+            }
+            List<LocationReservation> pool = new ArrayList<>();
+            pool.add(blockingQueue.take());
+            blockingQueue.drainTo(pool);
+            return pool.size();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int pushReservationAndPopPool(FirstComeFirstServe state) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        int perProducer = OPERATIONS / state.producers;
+        for (int p = 0; p < state.producers; p++) {
+            int from = p * perProducer;
+            int to = p == state.producers - 1 ? OPERATIONS : from + perProducer;
+            state.producerThreads.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    state.push(state.reservations[i]);
+                }
+            });
+        }
+        start.countDown();
+
+        int popped = 0;
+        while (popped < OPERATIONS) {
+            popped += state.pop();
+        }
+        return popped;
+    }
+
+    @State(Scope.Benchmark)
+    public static class RandomPools {
+
+        private static final int RESERVATIONS_PER_TIMESLOT = 10;
+
+        @Param({"1000", "5000"})
+        public int timeslots;
+
+        @Param({"DelayQueue", "DelayQueueWaves", "Scan"})
+        public String release;
+
+        private PoolQueue poolQueue;
+        private Map<Timeslot, ConcurrentLinkedQueue<LocationReservation>> scannedPools;
+
+        /**
+         * Fill the random pools of all timeslots and wait until their pre-reservation timer expired.
+         */
+        @Setup(Level.Invocation)
+        public void fillRandomPools() throws InterruptedException {
+            LocalDateTime closesAt = LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(200));
+            LocationReservation[] reservations = Reservations.randomPools(timeslots * RESERVATIONS_PER_TIMESLOT, timeslots, closesAt);
+            if ("Scan".equals(release)) {
+                scannedPools = new ConcurrentHashMap<>();
+                for (LocationReservation reservation : reservations) {
+                    scannedPools.computeIfAbsent(reservation.getTimeslot(), t -> new ConcurrentLinkedQueue<>()).add(reservation);
+                }
+            } else {
+                poolQueue = new PoolQueue("DelayQueueWaves".equals(release));
+                for (LocationReservation reservation : reservations) {
+                    poolQueue.pushReservation(reservation);
+                }
+            }
+            while (!LocalDateTime.now().isAfter(closesAt.plusNanos(TimeUnit.MILLISECONDS.toNanos(5)))) {
+                Thread.sleep(5);
+            }
+        }
+
+        /**
+         * How the random pools were scheduled before the DelayQueue: every random pool is checked, the
+         * expired ones are removed and shuffled.
+         */
+        List<List<LocationReservation>> scan() {
+            List<List<LocationReservation>> released = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            Iterator<Map.Entry<Timeslot, ConcurrentLinkedQueue<LocationReservation>>> it = scannedPools.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Timeslot, ConcurrentLinkedQueue<LocationReservation>> pool = it.next();
+                if (now.isAfter(pool.getKey().getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS))) {
+                    it.remove();
+                    List<LocationReservation> reservations = new ArrayList<>(pool.getValue());
+                    Collections.shuffle(reservations);
+                    released.add(reservations);
+                }
+            }
+            return released;
+        }
+    }
+
+    @Benchmark
+    public int releaseRandomPools(RandomPools state) throws InterruptedException {
+        if ("Scan".equals(state.release)) {
+            int released = 0;
+            for (List<LocationReservation> pool : state.scan()) {
+                released += pool.size();
+            }
+            return released;
+        }
+        while (state.poolQueue.getRandomPoolCount() > 0) {
+            state.poolQueue.releaseRandomPool();
+        }
+        int released = 0;
+        int expected = state.timeslots * RandomPools.RESERVATIONS_PER_TIMESLOT;
+        while (released < expected) {
+            released += state.poolQueue.popPool().size();
+        }
+        return released;
+    }
+
+}
@@ -0,0 +1,150 @@
+package blok2.scheduling;
+
+import blok2.model.reservations.LocationReservation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Contended adds from 1 to N producers while a single consumer drains the queue, as done by the
+ * ReservationQueue and the first come first serve pool. The queues of the scheduling package are
+ * compared against the JDK queues that could take their place.
+ *
+ * Every invocation moves OPERATIONS elements from the producers to the consumer (the benchmark thread),
+ * the score is the average time per element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueueBenchmark {
+
+    private static final int OPERATIONS = 100_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int producers;
+
+    @Param({"ChunkedMpscQueue", "LockFreeClearQueue", "ReservationQueue",
+            "ConcurrentLinkedQueue", "LinkedBlockingQueue", "ArrayBlockingQueue"})
+    public String queue;
+
+    private ExecutorService producerThreads;
+    private LocationReservation[] elements;
+    private DrainableQueue drainable;
+
+    @Setup(Level.Trial)
+    public void startProducers() {
+        producerThreads = Executors.newFixedThreadPool(producers);
+        elements = Reservations.firstComeFirstServe(OPERATIONS, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopProducers() {
+        producerThreads.shutdownNow();
+    }
+
+    @Setup(Level.Invocation)
+    public void newQueue() {
+        drainable = DrainableQueue.create(queue);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int addAndDrain() throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        int perProducer = OPERATIONS / producers;
+        for (int p = 0; p < producers; p++) {
+            int from = p * perProducer;
+            int to = p == producers - 1 ? OPERATIONS : from + perProducer;
+            producerThreads.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    drainable.add(elements[i]);
+                }
+            });
+        }
+        start.countDown();
+
+        List<LocationReservation> batch = new ArrayList<>();
+        int drained = 0;
+        while (drained < OPERATIONS) {
+            batch.clear();
+            drainable.drainTo(batch);
+            drained += batch.size();
+        }
+        return drained;
+    }
+
+    /**
+     * The operations of the ReservationQueue: many producers add, one consumer takes everything at once.
+     */
+    private interface DrainableQueue {
+
+        void add(LocationReservation reservation);
+
+        void drainTo(List<LocationReservation> batch);
+
+        static DrainableQueue create(String name) {
+            switch (name) {
+                case "ChunkedMpscQueue": {
+                    ChunkedMpscQueue<LocationReservation> q = new ChunkedMpscQueue<>();
+                    return of(q::add, q::drainTo);
+                }
+                case "LockFreeClearQueue": {
+                    LockFreeClearQueue<LocationReservation> q = new LockFreeClearQueue<>();
+                    return of(q::add, batch -> batch.addAll(q.clear()));
+                }
+                case "ReservationQueue": {
+                    ReservationQueue q = new ReservationQueue();
+                    return of(q::push, batch -> batch.addAll(q.clear()));
+                }
+                case "ConcurrentLinkedQueue": {
+                    ConcurrentLinkedQueue<LocationReservation> q = new ConcurrentLinkedQueue<>();
+                    return of(q::add, batch -> {
+                        LocationReservation reservation;
+                        while ((reservation = q.poll()) != null) {
+                            batch.add(reservation);
+                        }
+                    });
+                }
+                case "LinkedBlockingQueue": {
+                    LinkedBlockingQueue<LocationReservation> q = new LinkedBlockingQueue<>();
+                    return of(q::add, q::drainTo);
+                }
+                case "ArrayBlockingQueue": {
+                    ArrayBlockingQueue<LocationReservation> q = new ArrayBlockingQueue<>(OPERATIONS);
+                    return of(q::add, q::drainTo);
+                }
+                default:
+                    throw new IllegalArgumentException(name);
+            }
+        }
+
+        static DrainableQueue of(Consumer<LocationReservation> add, Consumer<List<LocationReservation>> drainTo) {
+            return new DrainableQueue() {
+                @Override
+                public void add(LocationReservation reservation) {
+                    add.accept(reservation);
+                }
+
+                @Override
+                public void drainTo(List<LocationReservation> batch) {
+                    drainTo.accept(batch);
+                }
+            };
+        }
+    }
+
+}
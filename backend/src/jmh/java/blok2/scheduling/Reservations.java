@@ -0,0 +1,54 @@
+package blok2.scheduling;
+
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
+
+/**
+ * Reservations to feed the benchmarks with, nothing of them is stored.
+ */
+final class Reservations {
+
+    private Reservations() {
+    }
+
+    /**
+     * Reservations for timeslots of which the random pool closed long ago, spread round robin over the timeslots.
+     */
+    static LocationReservation[] firstComeFirstServe(int count, int timeslotCount) {
+        return spread(count, timeslots(timeslotCount, LocalDateTime.now().minusDays(1)));
+    }
+
+    /**
+     * Reservations for timeslots of which the random pool closes at the given moment, spread round robin over the timeslots.
+     */
+    static LocationReservation[] randomPools(int count, int timeslotCount, LocalDateTime closesAt) {
+        return spread(count, timeslots(timeslotCount, closesAt.minusMinutes(RANDOM_RESERVATION_DURATION_MINS)));
+    }
+
+    private static Timeslot[] timeslots(int count, LocalDateTime reservableFrom) {
+        Timeslot[] timeslots = new Timeslot[count];
+        for (int i = 0; i < count; i++) {
+            timeslots[i] = new Timeslot(i, LocalDate.now().plusDays(1), LocalTime.of(9, 0), LocalTime.of(17, 0),
+                    true, reservableFrom, 100, i);
+        }
+        return timeslots;
+    }
+
+    private static LocationReservation[] spread(int count, Timeslot[] timeslots) {
+        LocationReservation[] reservations = new LocationReservation[count];
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setUserId(String.valueOf(i));
+            reservations[i] = new LocationReservation(user, timeslots[i % timeslots.length], LocationReservation.State.PENDING);
+        }
+        return reservations;
+    }
+
+}
@@ -0,0 +1,173 @@
+package blok2.config;
+
+import blok2.model.stats.AdmissionStat;
+import blok2.scheduling.DistributedReservationQueue;
+import blok2.scheduling.ReservationManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a new reservation may still enter the reservation queue. When too many reservations are
+ * waiting to be decided, or the reservations that are decided had to wait too long, new reservations are
+ * refused with a suggested time to retry instead of growing the backlog.
+ *
+ * In distributed mode, the backlog is not in memory but in the database: every instance stores and claims pending
+ * reservations (cfr. DistributedReservationQueue). The queue depth is then the amount of pending reservations,
+ * which is counted regularly rather than for every request.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final ReservationManager reservationManager;
+    private final PoolProcessor poolProcessor;
+    private final DistributedReservationQueue distributedQueue;
+
+    private final boolean enabled;
+    private final int maxQueueDepth;
+    private final long maxLagMillis;
+    private final int maxRetryAfterSeconds;
+
+    private final AtomicLong rejectedOnQueueDepth = new AtomicLong(0);
+    private final AtomicLong rejectedOnLag = new AtomicLong(0);
+
+    // Distributed mode only, the amount of pending reservations when they were last counted.
+    private volatile long pendingCount = 0;
+
+    // Sampled every second, used to estimate how long it takes to work away the backlog.
+    private volatile double decisionsPerSecond = 0;
+    private long lastDecided = 0;
+    private long lastSampledAt = System.nanoTime();
+
+    @Autowired
+    public AdmissionControl(ReservationManager reservationManager, PoolProcessor poolProcessor,
+                            DistributedReservationQueue distributedQueue, MeterRegistry meterRegistry,
+                            @Value("${custom.reservations.admission.enabled:true}") boolean enabled,
+                            @Value("${custom.reservations.admission.maxQueueDepth:20000}") int maxQueueDepth,
+                            @Value("${custom.reservations.admission.maxLagMs:30000}") long maxLagMillis,
+                            @Value("${custom.reservations.admission.maxRetryAfterSeconds:60}") int maxRetryAfterSeconds) {
+        this.reservationManager = reservationManager;
+        this.poolProcessor = poolProcessor;
+        this.distributedQueue = distributedQueue;
+        this.enabled = enabled;
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxLagMillis = maxLagMillis;
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+
+        Gauge.builder("reservations.admission.queue.depth", this, AdmissionControl::getQueueDepth)
+                .description("Reservations that are queued or being processed, but not decided yet")
+                .register(meterRegistry);
+        TimeGauge.builder("reservations.admission.lag", this, TimeUnit.MILLISECONDS, AdmissionControl::getLagMillis)
+                .description("How long reservations have to wait before they are decided")
+                .register(meterRegistry);
+        FunctionCounter.builder("reservations.admission.rejected", rejectedOnQueueDepth, AtomicLong::get)
+                .description("Reservations that were refused before entering the reservation queue")
+                .tag("reason", "queue_depth")
+                .register(meterRegistry);
+        FunctionCounter.builder("reservations.admission.rejected", rejectedOnLag, AtomicLong::get)
+                .description("Reservations that were refused before entering the reservation queue")
+                .tag("reason", "lag")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decides whether a new reservation may be queued.
+     * @return : 0 if the reservation may be queued, otherwise the amount of seconds after which the client should retry.
+     */
+    public long retryAfterSeconds() {
+        if (!enabled) {
+            return 0;
+        }
+        int depth = getQueueDepth();
+        if (depth >= maxQueueDepth) {
+            rejectedOnQueueDepth.incrementAndGet();
+            // Retry once the backlog is worked away to half of the threshold.
+            double excess = depth - maxQueueDepth / 2.0;
+            return clampRetryAfter((long) Math.ceil(excess / Math.max(1, decisionsPerSecond)));
+        }
+        long lag = getLagMillis();
+        if (lag >= maxLagMillis) {
+            rejectedOnLag.incrementAndGet();
+            return clampRetryAfter((long) Math.ceil(lag / 1000.0));
+        }
+        return 0;
+    }
+
+    /**
+     * The amount of reservations that are queued or being processed, but not decided yet. In distributed mode,
+     * the amount of pending reservations of every instance, as they were last counted.
+     */
+    public int getQueueDepth() {
+        if (distributedQueue.isEnabled()) {
+            return (int) Math.min(Integer.MAX_VALUE, pendingCount);
+        }
+        return reservationManager.getQueueDepth() + poolProcessor.getReservationsInProgress();
+    }
+
+    /**
+     * How long reservations have to wait before they are decided. If nothing is waiting, there is no lag.
+     */
+    public long getLagMillis() {
+        return getQueueDepth() == 0 ? 0 : poolProcessor.getLagMillis();
+    }
+
+    public AdmissionStat getStat() {
+        return new AdmissionStat(enabled, maxQueueDepth, maxLagMillis, getQueueDepth(), getLagMillis(),
+                decisionsPerSecond, rejectedOnQueueDepth.get(), rejectedOnLag.get());
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public synchronized void sampleThroughput() {
+        long now = System.nanoTime();
+        long decided = poolProcessor.getReservationsDecided();
+        double seconds = (now - lastSampledAt) / 1e9;
+        if (seconds > 0) {
+            decisionsPerSecond = (decided - lastDecided) / seconds;
+        }
+        lastDecided = decided;
+        lastSampledAt = now;
+    }
+
+    /**
+     * Counts the pending reservations in distributed mode. If they can't be counted, the last count is kept.
+     */
+    @Scheduled(fixedDelayString = "${custom.reservations.admission.pendingCountIntervalMs:1000}")
+    public void countPending() {
+        if (!distributedQueue.isEnabled()) {
+            return;
+        }
+        try {
+            pendingCount = distributedQueue.countPending();
+        } catch (DataAccessException ex) {
+            logger.warn("Could not count the pending reservations, the queue depth is not updated", ex);
+        }
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public void logRejections() {
+        long onDepth = rejectedOnQueueDepth.get();
+        long onLag = rejectedOnLag.get();
+        if (onDepth + onLag > 0) {
+            logger.info(String.format("Admission control rejected %d reservations on queue depth and %d on lag since startup",
+                    onDepth, onLag));
+        }
+    }
+
+    private long clampRetryAfter(long seconds) {
+        return Math.max(1, Math.min(maxRetryAfterSeconds, seconds));
+    }
+
+}
@@ -0,0 +1,87 @@
+package blok2.config;
+
+import blok2.daos.db.ReadFromReplica;
+import blok2.daos.db.ReadOnlyRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * The DataSource of JPA. Read-only transactions of methods annotated with @ReadFromReplica go to the streaming
+ * replica configured in spring.replica-datasource, if there is one (cfr. ReadOnlyRoutingDataSource). The pools are
+ * named primary and replica in the hikaricp.* meters.
+ */
+@Configuration
+public class DataSourceConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceConfiguration.class);
+
+    @Bean
+    public ReadOnlyRoutingDataSource routingDataSource(DataSourceProperties properties, MeterRegistry meterRegistry,
+                                                       @Value("${spring.replica-datasource.url:}") String replicaUrl,
+                                                       @Value("${spring.replica-datasource.username:}") String replicaUsername,
+                                                       @Value("${spring.replica-datasource.password:}") String replicaPassword,
+                                                       @Value("${spring.replica-datasource.maximumPoolSize:10}") int replicaPoolSize) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        // Lets the driver turn a batch of inserts from Hibernate into multi-row inserts.
+        primary.addDataSourceProperty("reWriteBatchedInserts", true);
+
+        HikariDataSource replica = null;
+        if (!replicaUrl.isEmpty()) {
+            replica = new HikariDataSource();
+            replica.setPoolName("replica");
+            replica.setJdbcUrl(replicaUrl);
+            // The replica has the same users as the primary, unless configured otherwise.
+            replica.setUsername(replicaUsername.isEmpty() ? properties.determineUsername() : replicaUsername);
+            replica.setPassword(replicaPassword.isEmpty() ? properties.determinePassword() : replicaPassword);
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            logger.info("Reads annotated with @ReadFromReplica are sent to the replica at " + replicaUrl);
+        }
+        return new ReadOnlyRoutingDataSource(primary, replica);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadOnlyRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Lets the reads of the methods annotated with @ReadFromReplica go to the replica. This is an infrastructure
+     * advisor, so that the proxies of @Transactional pick it up.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor readFromReplicaAdvisor() {
+        MethodInterceptor interceptor = invocation -> {
+            boolean previous = ReadOnlyRoutingDataSource.allowReplica(true);
+            try {
+                return invocation.proceed();
+            } finally {
+                ReadOnlyRoutingDataSource.allowReplica(previous);
+            }
+        };
+        return new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(null, ReadFromReplica.class, true), interceptor);
+    }
+
+}
@@ -0,0 +1,146 @@
+package blok2.config;
+
+import blok2.daos.db.ConnectionProvider;
+import blok2.daos.services.DataVersions;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Shares the changes of the DataVersions of this instance with the other backend instances, so that no instance
+ * answers 304 Not Modified for a resource that another instance changed. The changes are sent every intervalMs
+ * with a PostgreSQL NOTIFY on the data_versions channel, on a dedicated connection that also listens for the changes
+ * of the other instances. A change is seen by the other instances at most intervalMs after its commit, plus the
+ * delivery of the notification. While the connection is lost, DataVersions hands out no 304 at all.
+ */
+@Component
+public class DataVersionsBroadcaster {
+
+    public static final String CHANNEL = "data_versions";
+
+    private static final Logger logger = LoggerFactory.getLogger(DataVersionsBroadcaster.class);
+
+    // A payload of a NOTIFY must be shorter than 8000 bytes.
+    private static final int MAX_PAYLOAD_LENGTH = 7000;
+    // How often a connection without any notifications is checked.
+    private static final long CHECK_INTERVAL_MILLIS = 5000;
+
+    private final String instance = UUID.randomUUID().toString().substring(0, 8);
+
+    private final DataVersions dataVersions;
+    private final ConnectionProvider connectionProvider;
+    private final int intervalMillis;
+
+    @Autowired
+    public DataVersionsBroadcaster(DataVersions dataVersions, ConnectionProvider connectionProvider,
+                                   @Value("${custom.dataVersions.broadcast.enabled:true}") boolean enabled,
+                                   @Value("${custom.dataVersions.broadcast.intervalMs:100}") int intervalMillis) {
+        this.dataVersions = dataVersions;
+        this.connectionProvider = connectionProvider;
+        this.intervalMillis = intervalMillis;
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "data-versions-broadcaster");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Send and receive the changes. When the connection is lost, continue on a new one.
+     */
+    private void run() {
+        while (true) {
+            try (Connection connection = connectionProvider.getDedicatedConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                dataVersions.setReceiving(true);
+                long lastCheck = System.currentTimeMillis();
+                while (true) {
+                    send(connection);
+                    PGNotification[] notifications = pgConnection.getNotifications(intervalMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        receive(notifications);
+                        lastCheck = System.currentTimeMillis();
+                    } else if (System.currentTimeMillis() - lastCheck > CHECK_INTERVAL_MILLIS) {
+                        // A connection that silently died would otherwise look like one without changes.
+                        if (!connection.isValid(intervalMillis / 1000 + 1)) {
+                            throw new SQLException("Connection is no longer valid");
+                        }
+                        lastCheck = System.currentTimeMillis();
+                    }
+                }
+            } catch (SQLException ex) {
+                logger.error("Lost the connection that shares the data versions with the other instances", ex);
+            } finally {
+                dataVersions.setReceiving(false);
+            }
+            try {
+                Thread.sleep(CHECK_INTERVAL_MILLIS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void send(Connection connection) throws SQLException {
+        List<String> changes = dataVersions.takeUnsent();
+        if (changes.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("select pg_notify(?, ?)")) {
+            StringBuilder payload = new StringBuilder(instance);
+            for (String change : changes) {
+                if (payload.length() + change.length() + 1 > MAX_PAYLOAD_LENGTH) {
+                    sendPayload(statement, payload.toString());
+                    payload = new StringBuilder(instance);
+                }
+                payload.append(' ').append(change);
+            }
+            sendPayload(statement, payload.toString());
+        } catch (SQLException ex) {
+            // Sending a change twice does no harm, losing it does.
+            dataVersions.unsent(changes);
+            throw ex;
+        }
+    }
+
+    private void sendPayload(PreparedStatement statement, String payload) throws SQLException {
+        statement.setString(1, CHANNEL);
+        statement.setString(2, payload);
+        statement.execute();
+    }
+
+    private void receive(PGNotification[] notifications) {
+        for (PGNotification notification : notifications) {
+            List<String> payload = Arrays.asList(notification.getParameter().split(" "));
+            // The changes of this instance are applied already.
+            if (payload.get(0).equals(instance)) {
+                continue;
+            }
+            for (String change : payload.subList(1, payload.size())) {
+                try {
+                    dataVersions.receive(change);
+                } catch (RuntimeException ex) {
+                    logger.warn("Invalid change of the data versions: " + change, ex);
+                    dataVersions.allChanged();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package blok2.config;
+
+import blok2.daos.services.PoolApprovalService;
+import blok2.scheduling.DistributedReservationQueue;
+import blok2.scheduling.PoolDecision;
+import blok2.scheduling.ReservationManager;
+import blok2.scheduling.ReservationMetrics;
+import blok2.scheduling.ReservationStatePublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes the pending reservations in distributed mode (cfr. DistributedReservationQueue). A listener
+ * wakes up the workers whenever a reservation is signalled. The workers also look for work regularly
+ * by themselves, e.g. for random pools that just closed, or timeslots that were skipped because
+ * another instance was deciding them.
+ */
+@Component
+public class DistributedReservationProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedReservationProcessor.class);
+
+    private final DistributedReservationQueue distributedQueue;
+    private final PoolApprovalService poolApprovalService;
+    private final ReservationManager reservationManager;
+    private final ReservationStatePublisher statePublisher;
+    private final ReservationMetrics reservationMetrics;
+
+    private final int maxTimeslotsPerClaim;
+    private final int pollIntervalMillis;
+
+    // Incremented on every signal, so that a worker does not sleep through a signal that arrived while it was busy.
+    private final AtomicLong signals = new AtomicLong(0);
+
+    @Autowired
+    public DistributedReservationProcessor(DistributedReservationQueue distributedQueue, PoolApprovalService poolApprovalService,
+                                           ReservationManager reservationManager, ReservationStatePublisher statePublisher,
+                                           ReservationMetrics reservationMetrics,
+                                           @Value("${custom.reservations.distributed.workers:2}") int workers,
+                                           @Value("${custom.reservations.distributed.maxTimeslotsPerClaim:50}") int maxTimeslotsPerClaim,
+                                           @Value("${custom.reservations.distributed.pollIntervalMs:1000}") int pollIntervalMillis) {
+        this.distributedQueue = distributedQueue;
+        this.poolApprovalService = poolApprovalService;
+        this.reservationManager = reservationManager;
+        this.statePublisher = statePublisher;
+        this.reservationMetrics = reservationMetrics;
+        this.maxTimeslotsPerClaim = maxTimeslotsPerClaim;
+        this.pollIntervalMillis = pollIntervalMillis;
+        if (!distributedQueue.isEnabled()) {
+            return;
+        }
+        startDaemon(this::listen, "reservation-listener");
+        for (int i = 0; i < workers; i++) {
+            startDaemon(this::work, "reservation-claimer-" + i);
+        }
+    }
+
+    /**
+     * Wake up the workers on every signal. When the connection is lost, listen again on a new one.
+     */
+    private void listen() {
+        while (true) {
+            try (DistributedReservationQueue.Listener listener = distributedQueue.listen()) {
+                // Signals may have been missed while not listening.
+                wakeUpWorkers();
+                while (true) {
+                    if (listener.await(pollIntervalMillis)) {
+                        wakeUpWorkers();
+                    }
+                }
+            } catch (SQLException ex) {
+                logger.error("Lost the connection that listens for pending reservations", ex);
+            }
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Claim and decide pending reservations until there is nothing left to claim, then wait for a signal.
+     * Catch all exceptions, because this must keep running so that reservations can still be processed.
+     */
+    private void work() {
+        while (true) {
+            long signal = signals.get();
+            try {
+                List<PoolDecision> decisions;
+                do {
+                    decisions = poolApprovalService.approvePending(maxTimeslotsPerClaim);
+                    for (PoolDecision decision : decisions) {
+                        // Decisions of other instances are not seen here, their entries expire instead.
+                        reservationManager.reservationsDecided(decision);
+                        reservationMetrics.recordDecision(decision);
+                        statePublisher.publish(decision);
+                    }
+                } while (!decisions.isEmpty());
+            } catch (Exception ex) {
+                logger.error("Could not decide pending reservations", ex);
+            }
+            try {
+                synchronized (signals) {
+                    if (signals.get() == signal) {
+                        signals.wait(pollIntervalMillis);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void wakeUpWorkers() {
+        synchronized (signals) {
+            signals.incrementAndGet();
+            signals.notifyAll();
+        }
+    }
+
+    private static void startDaemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+}
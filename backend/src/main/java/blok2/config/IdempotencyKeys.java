@@ -0,0 +1,79 @@
+package blok2.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the response to requests that carried an Idempotency-Key header, so that a client that retries such
+ * a request (e.g. after a timeout) gets the original response instead of having the request processed again.
+ * Keys are scoped per user. Only the most recent keys are remembered, and only for a limited time.
+ */
+@Component
+public class IdempotencyKeys {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final long maxAgeMillis;
+    private final Map<String, Outcome> outcomes;
+
+    @Autowired
+    public IdempotencyKeys(@Value("${custom.reservations.idempotency.maxKeys:100000}") int maxKeys,
+                           @Value("${custom.reservations.idempotency.maxAgeMinutes:60}") long maxAgeMinutes) {
+        this.maxAgeMillis = TimeUnit.MINUTES.toMillis(maxAgeMinutes);
+        this.outcomes = new LinkedHashMap<String, Outcome>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    /**
+     * @return : The outcome of the earlier request of the user with this key, or null if there is none.
+     */
+    public synchronized Outcome get(String userId, String key) {
+        Outcome outcome = outcomes.get(scoped(userId, key));
+        if (outcome == null || System.currentTimeMillis() - outcome.storedAt > maxAgeMillis) {
+            return null;
+        }
+        return outcome;
+    }
+
+    /**
+     * Remembers the response to the request of the user with this key.
+     * @param request : Identifies the request, a retry with the same key must be for the same request.
+     */
+    public synchronized void put(String userId, String key, Object request, Object response) {
+        outcomes.put(scoped(userId, key), new Outcome(request, response));
+    }
+
+    private static String scoped(String userId, String key) {
+        return userId + '\u0000' + key;
+    }
+
+    public static class Outcome {
+        private final Object request;
+        private final Object response;
+        private final long storedAt = System.currentTimeMillis();
+
+        private Outcome(Object request, Object response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        public boolean isFor(Object request) {
+            return Objects.equals(this.request, request);
+        }
+
+        public Object getResponse() {
+            return response;
+        }
+    }
+
+}
@@ -1,39 +1,80 @@
 package blok2.config;
 
-import blok2.daos.repositories.LocationReservationRepository;
-import blok2.daos.repositories.TimeslotRepository;
+import blok2.daos.services.PoolApprovalService;
 import blok2.model.calendar.Timeslot;
 import blok2.model.reservations.LocationReservation;
+import blok2.scheduling.PoolDecision;
 import blok2.scheduling.ReservationManager;
+import blok2.scheduling.ReservationMetrics;
+import blok2.scheduling.ReservationPool;
+import blok2.scheduling.ReservationStatePublisher;
+import blok2.scheduling.SeatLedger;
+import blok2.scheduling.TimeslotShardedExecutor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.transaction.Transactional;
-import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class PoolProcessor implements Runnable{
 
     public static final int RANDOM_RESERVATION_DURATION_MINS = 10;
 
+    private static final Logger logger = LoggerFactory.getLogger(PoolProcessor.class);
+
     private final ReservationManager reservationManager;
-    private final LocationReservationRepository reservationRepository;
-    private final TimeslotRepository timeslotRepository;
+    private final PoolApprovalService poolApprovalService;
+    private final SeatLedger seatLedger;
+    private final ReservationStatePublisher statePublisher;
+    private final ReservationMetrics reservationMetrics;
+
+    // Pools are split up per timeslot and processed in parallel by these workers.
+    private final TimeslotShardedExecutor poolWorkers;
+
+    // Reservations that were handed to the pool workers, but are not decided yet.
+    private final AtomicInteger inProgress = new AtomicInteger(0);
+    private final AtomicLong decided = new AtomicLong(0);
+    // How long the reservations of the last decided pool had to wait, since they could have been decided.
+    private volatile long lagMillis = 0;
 
+    private final Timer waveTimer;
 
     @Autowired
-    public PoolProcessor(ReservationManager reservationManager, LocationReservationRepository reservationRepository, TimeslotRepository timeslotRepository) {
+    public PoolProcessor(ReservationManager reservationManager, PoolApprovalService poolApprovalService, SeatLedger seatLedger,
+                         ReservationStatePublisher statePublisher, ReservationMetrics reservationMetrics,
+                         MeterRegistry meterRegistry, @Value("${custom.reservations.poolWorkers:4}") int poolWorkerCount) {
         this.reservationManager = reservationManager;
-        this.reservationRepository = reservationRepository;
-        this.timeslotRepository = timeslotRepository;
+        this.poolApprovalService = poolApprovalService;
+        this.seatLedger = seatLedger;
+        this.statePublisher = statePublisher;
+        this.reservationMetrics = reservationMetrics;
+        this.poolWorkers = new TimeslotShardedExecutor(poolWorkerCount);
+        this.waveTimer = Timer.builder("reservations.wave.duration")
+                .description("Time to decide all random pools that closed at the same moment")
+                .register(meterRegistry);
+        Gauge.builder("reservations.in.progress", inProgress, AtomicInteger::get)
+                .description("Reservations that were popped from the pool queue, but are not decided yet")
+                .register(meterRegistry);
         Thread thread = new Thread(this);
         thread.start();
     }
 
     /**
-     * Get a pool of reservations when available and process them.
+     * Get a pool of reservations when available and hand it to the pool workers.
+     * A release wave is decided right away, as a whole.
      * Catch all exceptions, because this program must continue running
      * so that reservations can still be processed.
      */
@@ -41,35 +82,12 @@ public class PoolProcessor implements Runnable{
     public void run() {
         while (true) {
             try {
-                List<LocationReservation> reservations = reservationManager.getPool();
-                for (LocationReservation reservation : reservations) {
-                    Optional<LocationReservation> optDbRes =  reservationRepository.findById(reservation.getId());
-                    if (!optDbRes.isPresent()) {
-                        continue; // Not or no longer present. Should not happen. Ignore.
-                    }
-                    reservation = optDbRes.get();
-                    if (reservation.getStateE() != LocationReservation.State.PENDING) {
-                        // Might have been deleted (state DELETED). Ignore.
-                        continue;
-                    }
-                    Timeslot dbTimeslot = timeslotRepository.getByTimeslotSeqnr(reservation.getTimeslot().getTimeslotSeqnr());
-                    if (!dbTimeslot.isReservable()) {
-                        System.err.println("Warning: Invalid state. Reservation is not reservable.");
-                        rejectReservation(reservation);
-                        continue;
-                    }
-                    if (!LocalDateTime.now().isAfter(dbTimeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS))) {
-                        System.err.println("Warning: Invalid state. Reservations should not be processing yet.");
-                        rejectReservation(reservation);
-                        continue;
-                    }
-                    if (dbTimeslot.getAmountOfReservations() + 1 > dbTimeslot.getSeatCount()) {
-                        System.err.println("Warning: Invalid state. Is full.");
-
-                        rejectReservation(reservation);
-                        continue;
-                    }
-                    approveReservation(dbTimeslot, reservation);
+                ReservationPool pool = reservationManager.getPool();
+                inProgress.addAndGet(pool.size());
+                if (pool.getKind() == ReservationPool.Kind.RELEASE_WAVE) {
+                    processReleaseWave(pool.getReservations());
+                } else {
+                    poolWorkers.dispatch(pool.getReservations(), reservations -> processTimeslotPool(pool.getKind(), reservations));
                 }
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -77,24 +95,123 @@ public class PoolProcessor implements Runnable{
         }
     }
 
-    @Transactional
-    public void approveReservation(Timeslot timeslot, LocationReservation reservation) {
-        Optional<LocationReservation> optDbRes =  reservationRepository.findById(reservation.getId());
-        if (!optDbRes.isPresent()) {
-            return; // Not or no longer present. Ignore.
+    /**
+     * Decide the random pools of all timeslots that closed at the same moment in a single transaction,
+     * with bulk reads and writes. If that fails, the pools are handed to the pool workers instead.
+     * NOTE: This runs on the thread that pops the pools, so that no pools of these timeslots can be
+     * dispatched to the workers before the wave is decided.
+     */
+    private void processReleaseWave(List<LocationReservation> reservations) {
+        Map<Integer, List<LocationReservation>> perTimeslot = new LinkedHashMap<>();
+        for (LocationReservation reservation : reservations) {
+            perTimeslot.computeIfAbsent(reservation.getTimeslot().getTimeslotSeqnr(), seqnr -> new ArrayList<>())
+                    .add(reservation);
+        }
+
+        long start = System.nanoTime();
+        List<PoolDecision> decisions;
+        try {
+            decisions = poolApprovalService.approveWave(perTimeslot);
+        } catch (RuntimeException ex) {
+            logger.error(String.format("Could not decide release wave of %d timeslots, falling back on the pool workers",
+                    perTimeslot.size()), ex);
+            poolWorkers.dispatch(reservations, pool -> processTimeslotPool(ReservationPool.Kind.RELEASE_WAVE, pool));
+            return;
+        }
+        reservationManager.reservationsProcessed(reservations);
+        long duration = System.nanoTime() - start;
+        waveTimer.record(duration, TimeUnit.NANOSECONDS);
+        logger.info(String.format("Release wave of %d timeslots and %d reservations decided in %d ms",
+                perTimeslot.size(), reservations.size(), TimeUnit.NANOSECONDS.toMillis(duration)));
+
+        for (PoolDecision decision : decisions) {
+            // The counters were changed without the ledger, let it reload them from the database.
+            seatLedger.invalidate(decision.getTimeslotSeqnr());
+            publish(decision);
+        }
+        recordDecided(reservations);
+    }
+
+    /**
+     * Process the reservations of a single timeslot, in order. This is called by the
+     * pool worker that is responsible for the timeslot. With the seat ledger, the pool is
+     * decided in memory and stored in the background. Otherwise, the whole pool is decided
+     * in a single transaction. Once stored, the outcome is pushed to the users.
+     */
+    private void processTimeslotPool(ReservationPool.Kind kind, List<LocationReservation> reservations) {
+        int timeslotSeqnr = reservations.get(0).getTimeslot().getTimeslotSeqnr();
+        long start = System.nanoTime();
+        try {
+            if (!seatLedger.isEnabled()) {
+                publish(poolApprovalService.approvePool(timeslotSeqnr, reservations));
+                return;
+            }
+            PoolDecision decision = seatLedger.decide(timeslotSeqnr, reservations);
+            seatLedger.writeThrough(decision, this::storeDecision, () -> {
+                publish(poolApprovalService.approvePool(timeslotSeqnr, reservations));
+                seatLedger.invalidate(timeslotSeqnr);
+            });
+        } finally {
+            // Also when the pool could not be decided, so that a repeated request is not answered from memory.
+            reservationManager.reservationsProcessed(reservations);
+            reservationMetrics.recordPoolDuration(kind, System.nanoTime() - start);
+            recordDecided(reservations);
+        }
+    }
+
+    private int storeDecision(PoolDecision decision) {
+        PoolDecision stored = poolApprovalService.applyDecision(decision);
+        // Every reservation of the decision is decided, but only the ones that were still pending changed state.
+        reservationManager.reservationsDecided(decision);
+        reservationMetrics.recordDecision(stored);
+        statePublisher.publish(stored);
+        return stored.getApproved().size();
+    }
+
+    private void publish(PoolDecision decision) {
+        reservationManager.reservationsDecided(decision);
+        reservationMetrics.recordDecision(decision);
+        statePublisher.publish(decision);
+    }
+
+    /**
+     * The amount of reservations that were popped from the pool queue, but are not decided yet.
+     */
+    public int getReservationsInProgress() {
+        return inProgress.get();
+    }
+
+    /**
+     * The total amount of reservations that were decided since startup.
+     */
+    public long getReservationsDecided() {
+        return decided.get();
+    }
+
+    /**
+     * How long the reservations of the last decided pool had to wait before being decided, counted from
+     * the moment they were queued or, for random pools, from the moment the random pool closed.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    private void recordDecided(List<LocationReservation> reservations) {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        for (LocationReservation reservation : reservations) {
+            long readyAt = Math.max(reservation.getEnqueuedAt(), randomPoolClosesAt(reservation.getTimeslot()));
+            lag = Math.max(lag, now - readyAt);
         }
-        reservation = optDbRes.get();
-        reservation.setState(LocationReservation.State.APPROVED);
-        reservationRepository.save(reservation);
-        timeslot = timeslotRepository.getByTimeslotSeqnr(timeslot.getTimeslotSeqnr());
-        timeslot.incrementAmountOfReservations();
-        timeslotRepository.save(timeslot);
+        lagMillis = lag;
+        reservationMetrics.recordDecided(reservations, now);
+        decided.addAndGet(reservations.size());
+        inProgress.addAndGet(-reservations.size());
     }
 
-    @Transactional
-    public void rejectReservation(LocationReservation reservation) {
-        reservation.setState(LocationReservation.State.REJECTED);
-        reservationRepository.save(reservation);
+    private static long randomPoolClosesAt(Timeslot timeslot) {
+        return timeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
 }
@@ -0,0 +1,36 @@
+package blok2.config;
+
+import blok2.scheduling.ReservationManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class RandomPoolReleaser implements Runnable {
+
+    private final ReservationManager reservationManager;
+
+    @Autowired
+    public RandomPoolReleaser(ReservationManager reservationManager) {
+        this.reservationManager = reservationManager;
+        Thread thread = new Thread(this, "random-pool-releaser");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Release every random pool the moment its pre-reservation timer expires. Catch all
+     * exceptions because this process must keep running for the random pools to be processed.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                reservationManager.releaseRandomPool();
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package blok2.config;
+
+import blok2.daos.db.ReadOnlyRoutingDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures regularly how far the replica lags behind the primary. While the replica is unreachable, or lags
+ * more than maxLagSeconds, the reads annotated with @ReadFromReplica are sent to the primary instead.
+ * The lag is exposed as datasource.replica.lag, and whether the replica is used as datasource.replica.available.
+ */
+@Component
+public class ReplicationLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationLagMonitor.class);
+
+    // Nothing to replay means no lag, even if the last replayed transaction is old. 0 if the server is not a replica.
+    private static final String LAG_QUERY = "select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+            "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    private final ReadOnlyRoutingDataSource routingDataSource;
+    private final double maxLagSeconds;
+
+    private volatile double lagSeconds = 0;
+
+    @Autowired
+    public ReplicationLagMonitor(ReadOnlyRoutingDataSource routingDataSource, MeterRegistry meterRegistry,
+                                 @Value("${custom.datasource.replica.maxLagSeconds:30}") double maxLagSeconds) {
+        this.routingDataSource = routingDataSource;
+        this.maxLagSeconds = maxLagSeconds;
+        if (!routingDataSource.hasReplica()) {
+            return;
+        }
+        TimeGauge.builder("datasource.replica.lag", this, TimeUnit.SECONDS, monitor -> monitor.lagSeconds)
+                .description("How far the replica lags behind the primary")
+                .register(meterRegistry);
+        Gauge.builder("datasource.replica.available", routingDataSource, ds -> ds.isReplicaAvailable() ? 1 : 0)
+                .description("Whether the reads annotated with @ReadFromReplica are sent to the replica")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${custom.datasource.replica.lagCheckIntervalMs:5000}")
+    public void checkLag() {
+        if (!routingDataSource.hasReplica()) {
+            return;
+        }
+        boolean available;
+        try (Connection conn = routingDataSource.getReplica().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(LAG_QUERY)) {
+            rs.next();
+            lagSeconds = rs.getDouble(1);
+            available = lagSeconds <= maxLagSeconds;
+        } catch (SQLException ex) {
+            logger.warn("Could not measure the lag of the replica", ex);
+            available = false;
+        }
+        if (available != routingDataSource.isReplicaAvailable()) {
+            logger.warn(available ? "Read-only transactions are sent to the replica again"
+                    : "Read-only transactions are sent to the primary until the replica catches up");
+        }
+        routingDataSource.setReplicaAvailable(available);
+    }
+
+}
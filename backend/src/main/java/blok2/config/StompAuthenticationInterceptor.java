@@ -0,0 +1,42 @@
+package blok2.config;
+
+import blok2.security.config.JwtAuthenticationToken;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Authenticates a STOMP session with the token of its CONNECT frame. Browsers can't send the X-AUTH header
+ * with the WebSocket handshake, so the clients send it as a header of the CONNECT frame instead. An invalid
+ * token refuses the connection. Without a token, the user of the handshake (e.g. a session login) is kept.
+ */
+public class StompAuthenticationInterceptor implements ChannelInterceptor {
+
+    public static final String AUTH_HEADER = "X-AUTH";
+
+    private final AuthenticationManager authManager;
+
+    public StompAuthenticationInterceptor(AuthenticationManager authManager) {
+        this.authManager = authManager;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand())) {
+            return message;
+        }
+        String token = accessor.getFirstNativeHeader(AUTH_HEADER);
+        if (token != null) {
+            Authentication authentication = authManager.authenticate(new JwtAuthenticationToken(token));
+            accessor.setUser(WebSocketConfiguration.userIdOf(authentication));
+        }
+        return message;
+    }
+
+}
@@ -0,0 +1,82 @@
+package blok2.config;
+
+import blok2.model.users.User;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * STOMP over WebSocket, used to push the outcome of reservations to the users (cfr. ReservationStatePublisher).
+ * Clients connect to /ws and subscribe to /user/queue/reservations. Clients that cannot use WebSocket fall
+ * back on the SockJS transports (streaming or polling over HTTP) on the same endpoint. Clients authenticate
+ * with the X-AUTH header of the STOMP CONNECT frame (cfr. StompAuthenticationInterceptor).
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer {
+
+    public static final String ENDPOINT = "/ws";
+    public static final String RESERVATIONS_QUEUE = "/queue/reservations";
+
+    private final AuthenticationManager authManager;
+
+    // Lazy, the authentication manager is built by the security configuration.
+    public WebSocketConfiguration(@Lazy AuthenticationManager authManager) {
+        this.authManager = authManager;
+    }
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint(ENDPOINT)
+                .setHandshakeHandler(new UserIdHandshakeHandler())
+                .withSockJS();
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        registry.enableSimpleBroker("/queue");
+        registry.setApplicationDestinationPrefixes("/app");
+        registry.setUserDestinationPrefix("/user");
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new StompAuthenticationInterceptor(authManager));
+    }
+
+    /**
+     * @return : A principal named after the user id of the authenticated user, which is what the reservation
+     *           updates are addressed to, instead of the mail address that is used as username.
+     */
+    static Principal userIdOf(Principal principal) {
+        if (principal instanceof Authentication && ((Authentication) principal).getPrincipal() instanceof User) {
+            String userId = ((User) ((Authentication) principal).getPrincipal()).getUserId();
+            return () -> userId;
+        }
+        return principal;
+    }
+
+    /**
+     * The handshake goes through the regular security filters. A user that is logged in with a session is
+     * known from the handshake already, the others are known once their CONNECT frame is authenticated.
+     */
+    private static class UserIdHandshakeHandler extends DefaultHandshakeHandler {
+        @Override
+        protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            return userIdOf(request.getPrincipal());
+        }
+    }
+
+}
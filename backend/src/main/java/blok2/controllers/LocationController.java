@@ -1,6 +1,10 @@
 package blok2.controllers;
 
 import blok2.daos.*;
+import blok2.daos.services.DataVersions;
+import blok2.daos.services.LocationCatalog;
+import blok2.daos.services.LocationService;
+import blok2.helpers.ETags;
 import blok2.helpers.LocationWithApproval;
 import blok2.helpers.View;
 import blok2.helpers.authorization.AuthorizedLocationController;
@@ -17,13 +21,15 @@ import com.fasterxml.jackson.annotation.JsonView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import javax.mail.MessagingException;
 import java.io.UnsupportedEncodingException;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -45,6 +51,8 @@ public class LocationController extends AuthorizedLocationController {
     private final ILocationReservationDao locationReservationDao;
     private final IActionLogDao actionLogDao;
     private final IUserLocationSubscriptionDao userLocationSubscriptionDao;
+    private final LocationCatalog locationCatalog;
+    private final DataVersions dataVersions;
 
     private final MailService mailService;
 
@@ -55,7 +63,8 @@ public class LocationController extends AuthorizedLocationController {
     @Autowired
     public LocationController(ILocationDao locationDao, ILocationTagDao locationTagDao, IUserDao userDao,
                               IVolunteerDao volunteerDao, MailService mailService, ILocationReservationDao locationReservationDao,
-                              IActionLogDao actionLogDao, IUserLocationSubscriptionDao userLocationSubscriptionDao) {
+                              IActionLogDao actionLogDao, IUserLocationSubscriptionDao userLocationSubscriptionDao,
+                              LocationCatalog locationCatalog, DataVersions dataVersions) {
         this.locationDao = locationDao;
         this.locationTagDao = locationTagDao;
         this.userDao = userDao;
@@ -64,15 +73,23 @@ public class LocationController extends AuthorizedLocationController {
         this.locationReservationDao = locationReservationDao;
         this.actionLogDao = actionLogDao;
         this.userLocationSubscriptionDao = userLocationSubscriptionDao;
+        this.locationCatalog = locationCatalog;
+        this.dataVersions = dataVersions;
     }
 
-    @JsonView(View.List.class)
+    /**
+     * The active locations, sorted by name and serialized with the View.List view, come from the LocationCatalog.
+     */
     @GetMapping
     @PreAuthorize("permitAll()")
-    public List<Location> getAllLocations() {
-        List<Location> locations = locationDao.getAllActiveLocations();
-        locations.sort(Comparator.comparing(Location::getName));
-        return locations;
+    public ResponseEntity<byte[]> getAllLocations(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        LocationCatalog.Snapshot catalog = locationCatalog.getActiveLocations();
+        if (ETags.matches(ifNoneMatch, catalog.getEtag())) {
+            return ETags.notModified(catalog.getEtag());
+        }
+        return ETags.ok(catalog.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(catalog.getJson());
     }
 
     @JsonView(View.List.class)
@@ -84,11 +101,22 @@ public class LocationController extends AuthorizedLocationController {
     @JsonView(View.Detail.class)
     @GetMapping("/{locationId}")
     @PreAuthorize("permitAll()")
-    public Location getLocation(@PathVariable("locationId") int locationId, @AuthenticationPrincipal User user) {
+    public ResponseEntity<Location> getLocation(@PathVariable("locationId") int locationId, @AuthenticationPrincipal User user,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Whether the location changed is known without going to the database (cfr. DataVersions).
+        String resource = "locations/" + locationId;
+        long[] versions = {dataVersions.locations(), dataVersions.location(locationId), dataVersions.reservations(locationId)};
+        String userId = user == null ? null : user.getUserId();
+        String etag = ETags.forUser(dataVersions.currentEtag(resource, versions), userId);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
+
         Location location = locationDao.getLocationById(locationId);
         locationDao.initializeTags(location);
         userLocationSubscriptionDao.initializeSubscribed(location, user);
-        return location;
+        etag = ETags.forUser(dataVersions.handOut(resource, LocationService.unchangedUntil(location), versions), userId);
+        return ETags.ok(etag).body(location);
     }
 
     @GetMapping("/nextReservableFroms")
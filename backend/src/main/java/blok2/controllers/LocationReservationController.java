@@ -1,9 +1,12 @@
 package blok2.controllers;
 
+import blok2.config.AdmissionControl;
+import blok2.config.IdempotencyKeys;
 import blok2.daos.ILocationDao;
 import blok2.daos.ILocationReservationDao;
 import blok2.daos.ITimeslotDao;
 import blok2.helpers.Base64String;
+import blok2.helpers.KeysetPage;
 import blok2.helpers.authorization.AuthorizedLocationController;
 import blok2.helpers.exceptions.NoSuchDatabaseObjectException;
 import blok2.mail.MailService;
@@ -13,7 +16,9 @@ import blok2.model.users.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
@@ -43,14 +48,18 @@ public class LocationReservationController extends AuthorizedLocationController
 
     private final MailService mailService;
     private final ILocationDao locationDao;
+    private final AdmissionControl admissionControl;
+    private final IdempotencyKeys idempotencyKeys;
 
     @Autowired
     public LocationReservationController(ILocationReservationDao locationReservationDao, ITimeslotDao timeslotDao, MailService ms
-                                                , ILocationDao locDao) {
+                                                , ILocationDao locDao, AdmissionControl admissionControl, IdempotencyKeys idempotencyKeys) {
         this.locationReservationDao = locationReservationDao;
         this.timeslotDao = timeslotDao;
         this.mailService = ms;
         this.locationDao = locDao;
+        this.admissionControl = admissionControl;
+        this.idempotencyKeys = idempotencyKeys;
     }
 
     @GetMapping("/user")
@@ -58,18 +67,49 @@ public class LocationReservationController extends AuthorizedLocationController
     // TODO: if only 'HAS_AUTHORITIES', then only allowed to retrieve the reservations for a location within one of the user's authorities
     // Not sure why you'd be allowed to get a user's reservations if you own a location.
     // TODO: We suddenly use a request parameter here. Probably better to streamline it with everything else and put it in the url.
-    public List<LocationReservation> getLocationReservationsByUserId(@RequestParam String id) {
-        return locationReservationDao.getAllLocationReservationsOfUser(id);
+    // Paged by timeslot (cfr. KeysetPage).
+    public ResponseEntity<List<LocationReservation>> getLocationReservationsByUserId(@RequestParam String id,
+                                                                                  @RequestParam(required = false) Integer limit,
+                                                                                  @RequestParam(required = false) String pageToken) {
+        int pageSize = KeysetPage.pageSize(limit);
+        int afterTimeslot = pageToken == null ? Integer.MIN_VALUE
+                : KeysetPage.decode(pageToken, key -> Integer.parseInt(key[0]));
+        List<LocationReservation> reservations =
+                locationReservationDao.getLocationReservationsOfUserAfterTimeslot(id, afterTimeslot, pageSize + 1);
+        return KeysetPage.response(reservations, pageSize,
+                lr -> KeysetPage.encode(lr.getTimeslot().getTimeslotSeqnr()));
     }
 
     /**
-     * Add a new reservation queue, to be processed later.
+     * Add a new reservation queue, to be processed later. Once processed, the outcome is pushed
+     * to the user on /user/queue/reservations (cfr. WebSocketConfiguration).
      * @return : The time at which the reservation will enter the 'fast' or 'non-random order' queue.
-     *           This time may be in the past.
+     *           This time may be in the past. If the queue is overloaded, 429 is returned with a
+     *           Retry-After header and the reservation is not queued.
+     *           A repeat while the user's reservation is pending or approved gets the same response, and leaves the
+     *           reservation as it is. A retry with the same Idempotency-Key header gets the original response, even
+     *           if the reservation was rejected in the meantime: it is not queued again. Reusing a key for another
+     *           timeslot gives 422.
      */
     @PostMapping
     @PreAuthorize("hasAuthority('USER') or hasAuthority('HAS_AUTHORITIES') or hasAuthority('ADMIN')")
-    public LocalDateTime createLocationReservation(@AuthenticationPrincipal User user, @Valid @RequestBody Timeslot timeslot) {
+    public ResponseEntity<LocalDateTime> createLocationReservation(@AuthenticationPrincipal User user, @Valid @RequestBody Timeslot timeslot,
+                                                                   @RequestHeader(value = IdempotencyKeys.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null) {
+            IdempotencyKeys.Outcome outcome = idempotencyKeys.get(user.getUserId(), idempotencyKey);
+            if (outcome != null) {
+                if (!outcome.isFor(timeslot.getTimeslotSeqnr())) {
+                    throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "The idempotency key was used for another timeslot.");
+                }
+                return ResponseEntity.ok((LocalDateTime) outcome.getResponse());
+            }
+        }
+        long retryAfter = admissionControl.retryAfterSeconds();
+        if (retryAfter > 0) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                    .build();
+        }
         // TODO(ydndonck): Why do we need to get from db here? To prevent people from sending along malicious reservablefrom?
         // If that is the case then this check may no longer be needed as the actual checking and processing of reservations
         // now happens in a different thread and a 'naive' check based on the timeslot the user provided is sufficient (in this thread).
@@ -80,10 +120,15 @@ public class LocationReservationController extends AuthorizedLocationController
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "This timeslot can't yet be reserved");
         }
         LocationReservation reservation = new LocationReservation(user, dbTimeslot, LocationReservation.State.PENDING);
-        if (!locationReservationDao.addLocationReservationToReservationQueue(reservation)) {
+        LocationReservation.State state = locationReservationDao.addLocationReservationToReservationQueue(reservation);
+        if (state == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The timeslot was invalid.");
         }
-        return dbTimeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS);
+        LocalDateTime fastQueueFrom = dbTimeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS);
+        if (idempotencyKey != null) {
+            idempotencyKeys.put(user.getUserId(), idempotencyKey, timeslot.getTimeslotSeqnr(), fastQueueFrom);
+        }
+        return ResponseEntity.ok(fastQueueFrom);
     }
 
     @GetMapping("/timeslot/{seqnr}")
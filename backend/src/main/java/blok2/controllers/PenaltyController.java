@@ -2,14 +2,18 @@ package blok2.controllers;
 
 import blok2.daos.IPenaltyDao;
 import blok2.daos.IPenaltyEventsDao;
+import blok2.helpers.KeysetPage;
+import blok2.helpers.Pair;
 import blok2.model.penalty.Penalty;
 import blok2.model.penalty.PenaltyEvent;
 import blok2.model.users.User;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 
@@ -33,8 +37,19 @@ public class PenaltyController {
 
     @GetMapping
     @PreAuthorize("hasAuthority('ADMIN')")
-    public List<Penalty> getAllPenalties() {
-        return penaltyDao.getAllPenalties();
+    // Paged, newest first (cfr. KeysetPage).
+    public ResponseEntity<List<Penalty>> getAllPenalties(@RequestParam(required = false) Integer limit,
+                                                         @RequestParam(required = false) String pageToken) {
+        int pageSize = KeysetPage.pageSize(limit);
+        List<Penalty> penalties;
+        if (pageToken == null) {
+            penalties = penaltyDao.getPenaltiesBefore(null, 0, pageSize + 1);
+        } else {
+            Pair<LocalDateTime, Integer> last = KeysetPage.decode(pageToken,
+                    key -> new Pair<>(LocalDateTime.parse(key[0]), Integer.parseInt(key[1])));
+            penalties = penaltyDao.getPenaltiesBefore(last.getFirst(), last.getSecond(), pageSize + 1);
+        }
+        return KeysetPage.response(penalties, pageSize, p -> KeysetPage.encode(p.getCreatedAt(), p.getPenaltyId()));
     }
 
     @GetMapping("/{userId}")
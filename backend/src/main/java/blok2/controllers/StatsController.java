@@ -1,16 +1,20 @@
 package blok2.controllers;
 
+import blok2.config.AdmissionControl;
 import blok2.daos.ILocationDao;
 import blok2.daos.ILocationReservationDao;
 import blok2.daos.ITimeslotDao;
+import blok2.daos.db.ReadFromReplica;
 import blok2.model.calendar.Timeslot;
 import blok2.model.reservables.Location;
 import blok2.model.reservations.LocationReservation;
+import blok2.model.stats.AdmissionStat;
 import blok2.model.stats.InstitutionOverviewStat;
 import blok2.model.stats.LocationOverviewStat;
 import blok2.model.stats.LocationStat;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -32,22 +36,34 @@ public class StatsController {
     private final ILocationDao locationDao;
     private final ITimeslotDao timeslotDAO;
     private final ILocationReservationDao locationReservationDao;
+    private final AdmissionControl admissionControl;
 
     @Autowired
-    public StatsController(ILocationDao locationDao, ITimeslotDao timeslotDAO, ILocationReservationDao locationReservationDao) {
+    public StatsController(ILocationDao locationDao, ITimeslotDao timeslotDAO, ILocationReservationDao locationReservationDao,
+                           AdmissionControl admissionControl) {
         this.locationDao = locationDao;
         this.timeslotDAO = timeslotDAO;
         this.locationReservationDao = locationReservationDao;
+        this.admissionControl = admissionControl;
+    }
+
+    @GetMapping("/admission")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public AdmissionStat getAdmissionStats() {
+        return admissionControl.getStat();
     }
 
     @GetMapping
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional(readOnly = true)
+    @ReadFromReplica
     public List<LocationStat> getAllStats() {
         List<Location> locations = locationDao.getAllActiveLocations();
         locations.sort(Comparator.comparing(Location::getName));
 
         return locations.stream().map(location -> {
-            Optional<Timeslot> currentOrNextTimeslot = timeslotDAO.getCurrentOrNextTimeslot(location.getLocationId());
+            // The active locations come with their current or next timeslot (cfr. TimeslotIndex).
+            Optional<Timeslot> currentOrNextTimeslot = Optional.ofNullable(location.getCurrentTimeslot());
             boolean open = false;
             boolean reservable = false;
             int numberOfSeats = 0;
@@ -69,6 +85,8 @@ public class StatsController {
 
     @GetMapping("/{date}")
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional(readOnly = true)
+    @ReadFromReplica
     public List<LocationStat> getAllStats(@PathVariable("date") String stringDate) {
         List<Location> locations = locationDao.getAllActiveLocations();
         locations.sort(Comparator.comparing(Location::getName));
@@ -88,6 +106,8 @@ public class StatsController {
 
     @GetMapping("/locations/{locationId}/from/{from}/to/{to}")
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional(readOnly = true)
+    @ReadFromReplica
     public LocationOverviewStat getStatsForLocation(@PathVariable("locationId") int locationId, @PathVariable("from") String stringDateFrom, @PathVariable("to") String stringDateTo) {
         LocalDate dateFrom = LocalDate.parse(stringDateFrom);
         LocalDate dateTo = LocalDate.parse(stringDateTo);
@@ -124,6 +144,8 @@ public class StatsController {
 
     @GetMapping("/institutions/{institutionLocations}/students/{institutionStudents}/from/{from}/to/{to}")
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional(readOnly = true)
+    @ReadFromReplica
     public InstitutionOverviewStat getStatsForInstitution(@PathVariable("institutionLocations") String institutionLocations, @PathVariable("institutionStudents") String institutionStudents, @PathVariable("from") String stringDateFrom, @PathVariable("to") String stringDateTo) {
         LocalDate dateFrom = LocalDate.parse(stringDateFrom);
         LocalDate dateTo = LocalDate.parse(stringDateTo);
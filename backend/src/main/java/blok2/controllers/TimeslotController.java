@@ -1,11 +1,16 @@
 package blok2.controllers;
 
 import blok2.daos.ITimeslotDao;
+import blok2.daos.services.DataVersions;
+import blok2.helpers.ETags;
+import blok2.helpers.KeysetPage;
+import blok2.helpers.Pair;
 import blok2.helpers.authorization.AuthorizedLocationController;
 import blok2.helpers.exceptions.InvalidRequestParametersException;
 import blok2.helpers.exceptions.NoSuchDatabaseObjectException;
 import blok2.model.calendar.Timeslot;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -21,10 +26,12 @@ import static org.springframework.http.HttpStatus.BAD_REQUEST;
 public class TimeslotController extends AuthorizedLocationController {
 
     private final ITimeslotDao timeslotDAO;
+    private final DataVersions dataVersions;
 
     @Autowired
-    public TimeslotController(ITimeslotDao calendarPeriodDao) {
+    public TimeslotController(ITimeslotDao calendarPeriodDao, DataVersions dataVersions) {
         this.timeslotDAO = calendarPeriodDao;
+        this.dataVersions = dataVersions;
     }
 
     @GetMapping("/details/{timeslotId}")
@@ -39,9 +46,28 @@ public class TimeslotController extends AuthorizedLocationController {
 
     @GetMapping("/{locationId}")
     @PreAuthorize("permitAll()")
-    public List<Timeslot> getTimeslotsOfLocation(@PathVariable("locationId") int locationId) {
+    public ResponseEntity<List<Timeslot>> getTimeslotsOfLocation(@PathVariable("locationId") int locationId,
+                                                                 @RequestParam(required = false) Integer limit,
+                                                                 @RequestParam(required = false) String pageToken,
+                                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Whether the timeslots changed is known without going to the database (cfr. DataVersions).
+        String resource = "locations/timeslots/" + locationId + "?limit=" + limit + "&pageToken=" + pageToken;
+        long[] versions = {dataVersions.location(locationId), dataVersions.reservations(locationId)};
+        String etag = dataVersions.currentEtag(resource, versions);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
+
         // Only return timeslots from up to 6 months old until all in the future, to limit data sent to the frontend.
-        return timeslotDAO.getTimeslotsOfLocationAfterTimeslotDate(locationId, LocalDate.now().minusMonths(6));
+        // Paged by date (cfr. KeysetPage). The first page starts before every timeslot of the date 6 months ago.
+        int pageSize = KeysetPage.pageSize(limit);
+        Pair<LocalDate, Integer> after = pageToken == null ? new Pair<>(LocalDate.now().minusMonths(6), Integer.MIN_VALUE)
+                : KeysetPage.decode(pageToken, key -> new Pair<>(LocalDate.parse(key[0]), Integer.parseInt(key[1])));
+        List<Timeslot> timeslots = timeslotDAO.getTimeslotsOfLocationAfter(locationId, after.getFirst(), after.getSecond(),
+                pageSize + 1);
+        // The first page starts 6 months before today, so it changes at midnight.
+        etag = dataVersions.handOut(resource, LocalDate.now().plusDays(1).atStartOfDay(), versions);
+        return ETags.withEtag(KeysetPage.response(timeslots, pageSize, t -> KeysetPage.encode(t.timeslotDate(), t.getTimeslotSeqnr())), etag);
     }
 
     @PutMapping()
@@ -15,6 +15,12 @@ public interface ILocationReservationDao {
      */
     List<LocationReservation> getAllLocationReservationsOfUser(String userId);
 
+    /**
+     * Get at most limit location reservations of the specified user, ordered by timeslot, of the timeslots after
+     * the given timeslot (cfr. KeysetPage)
+     */
+    List<LocationReservation> getLocationReservationsOfUserAfterTimeslot(String userId, int timeslotSeqnr, int limit);
+
     /*
      * Get the location reservation of a specified user at a specified timeslot
      */
@@ -69,10 +75,19 @@ public interface ILocationReservationDao {
      */
     boolean addLocationReservationIfStillRoomAtomically(LocationReservation reservation) throws SQLException;
 
+    /**
+     * Try to make several location reservations at once, each one only if the capacity of its timeslot is not
+     * exceeded. Reservations for the same timeslot get the remaining seats in the order of the list.
+     * @return : The reservations that were made.
+     */
+    List<LocationReservation> addLocationReservationsIfStillRoomAtomically(List<LocationReservation> reservations) throws SQLException;
+
     /**
      * Add a location reservation to the queue of reservations that are pending and need to be completed later.
+     * @return : The state of the reservation afterwards: PENDING if it is queued, now or by an earlier request,
+     *           APPROVED if the user already has the reservation, or null if it could not be stored.
      */
-    boolean addLocationReservationToReservationQueue(LocationReservation reservation);
+    LocationReservation.State addLocationReservationToReservationQueue(LocationReservation reservation);
 
     /**
      * Set all LocationReservations corresponding to the given Timeslot for which the field attended is null
@@ -2,6 +2,7 @@ package blok2.daos;
 
 import blok2.model.penalty.Penalty;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface IPenaltyDao {
@@ -13,6 +14,12 @@ public interface IPenaltyDao {
 
     List<Penalty> getAllPenalties();
 
+    /**
+     * Get at most limit penalties, newest first, that come after the penalty with the given creation time and id.
+     * If createdAt is null, the newest penalties are returned (cfr. KeysetPage).
+     */
+    List<Penalty> getPenaltiesBefore(LocalDateTime createdAt, int penaltyId, int limit);
+
     /**
      * addPenalty() adds a Penalty
      */
@@ -12,6 +12,12 @@ public interface ITimeslotDao {
 
     List<Timeslot> getTimeslotsOfLocationAfterTimeslotDate(int locationId, LocalDate timeslotDate);
 
+    /**
+     * Get at most limit timeslots of the location, ordered by date and sequence number, that come after the given
+     * date and sequence number (cfr. KeysetPage)
+     */
+    List<Timeslot> getTimeslotsOfLocationAfter(int locationId, LocalDate timeslotDate, int timeslotSeqnr, int limit);
+
     List<Timeslot> getTimeslotsOfLocationOnTimeslotDate(int locationId, LocalDate timeslotDate);
 
     Timeslot getTimeslot(int timeslotSeqNr);
@@ -1,39 +1,21 @@
 package blok2.daos.db;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Service;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-
 /**
  * Abstract class used for the token database. Implements universal functionalities.
+ * The connections are pooled, cfr. PooledConnectionProvider.
  */
 @Service
 @ConfigurationProperties(prefix = "spring.auth-datasource")
-public class AuthConnectionProvider {
-
-    private String url;
-    private String username;
-    private String password;
-
-    public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(url, username, password);
-    }
-
-    public void setUrl(String url) {
-        this.url = url;
-    }
-
-    public void setUsername(String username) {
-        this.username = username;
-    }
+public class AuthConnectionProvider extends PooledConnectionProvider {
 
-    public void setPassword(String password) {
-        this.password = password;
+    @Autowired
+    public AuthConnectionProvider(MeterRegistry meterRegistry) {
+        super("auth-connection-provider", meterRegistry);
     }
 
 }
-
-
@@ -1,39 +1,21 @@
 package blok2.daos.db;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Service;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-
 /**
  * Abstract class used for all the database DAOs. Implements universal functionalities.
+ * The connections are pooled, cfr. PooledConnectionProvider.
  */
 @Service
 @ConfigurationProperties(prefix = "spring.datasource")
-public class ConnectionProvider {
-
-    private String url;
-    private String username;
-    private String password;
-
-    public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(url, username, password);
-    }
-
-    public void setUrl(String url) {
-        this.url = url;
-    }
-
-    public void setUsername(String username) {
-        this.username = username;
-    }
+public class ConnectionProvider extends PooledConnectionProvider {
 
-    public void setPassword(String password) {
-        this.password = password;
+    @Autowired
+    public ConnectionProvider(MeterRegistry meterRegistry) {
+        super("connection-provider", meterRegistry);
     }
 
 }
-
-
@@ -5,11 +5,83 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
-import java.sql.Date;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
 public class DBLocationReservationDao {
 
+    // Takes a seat and stores the reservation in a single statement: the reservation is only inserted if the
+    // counter could be incremented. Concurrent reservations for the same timeslot wait for each other on the
+    // row of the timeslot, and the condition on the counter is checked again against the latest row.
+    private static final String RESERVE_IF_STILL_ROOM = "with reserved as ( " +
+            "    update timeslots " +
+            "    set reservation_count = reservation_count + 1 " +
+            "    where sequence_number = ? and reservation_count < seat_count " +
+            "    and not exists (select 1 from location_reservations where timeslot_sequence_number = ? and user_id = ?) " +
+            "    returning sequence_number " +
+            ") " +
+            "insert into public.location_reservations (user_id, timeslot_sequence_number, state) " +
+            "select ?, sequence_number, ? from reserved " +
+            "returning timeslot_sequence_number";
+
+    // The batch variant: the timeslots are locked in a fixed order, so that concurrent batches cannot deadlock.
+    // Per timeslot, the reservations are granted in the order of the batch, as long as there are seats left.
+    private static final String RESERVE_BATCH_IF_STILL_ROOM = "with requested as ( " +
+            "    select distinct on (r.timeslot_sequence_number, r.user_id) r.user_id, r.timeslot_sequence_number, r.state, r.ord " +
+            "    from unnest(?, ?, ?) with ordinality as r(user_id, timeslot_sequence_number, state, ord) " +
+            "    where not exists (select 1 from location_reservations lr " +
+            "        where lr.timeslot_sequence_number = r.timeslot_sequence_number and lr.user_id = r.user_id) " +
+            "    order by r.timeslot_sequence_number, r.user_id, r.ord " +
+            "), locked as ( " +
+            "    select t.sequence_number, t.seat_count - t.reservation_count as free " +
+            "    from timeslots t " +
+            "    where t.sequence_number in (select timeslot_sequence_number from requested) " +
+            "    order by t.sequence_number " +
+            "    for update " +
+            "), granted as ( " +
+            "    select r.user_id, r.timeslot_sequence_number, r.state " +
+            "    from (select q.*, row_number() over (partition by q.timeslot_sequence_number order by q.ord) as place " +
+            "          from requested q) r " +
+            "    join locked l on l.sequence_number = r.timeslot_sequence_number " +
+            "    where r.place <= l.free " +
+            "), inserted as ( " +
+            "    insert into public.location_reservations (user_id, timeslot_sequence_number, state) " +
+            "    select user_id, timeslot_sequence_number, state from granted " +
+            "    on conflict do nothing " +
+            "    returning timeslot_sequence_number, user_id " +
+            "), counted as ( " +
+            "    update timeslots t " +
+            "    set reservation_count = t.reservation_count + i.amount " +
+            "    from (select timeslot_sequence_number, count(*) as amount from inserted group by timeslot_sequence_number) i " +
+            "    where t.sequence_number = i.timeslot_sequence_number " +
+            ") " +
+            "select timeslot_sequence_number, user_id from inserted";
+
+    // Marks the approved reservations of the timeslot absent, frees their seats and, if penalty points are
+    // given (the third parameter), penalizes every absent user that wasn't penalized for the timeslot yet.
+    // All data-modifying parts see the same snapshot, so they all work on the reservations of 'absent'.
+    private static final String SET_NOT_SCANNED_ABSENT = "with absent as ( " +
+            "    update location_reservations " +
+            "    set state = 'ABSENT', updated_at = ? " +
+            "    where timeslot_sequence_number = ? and state = 'APPROVED' " +
+            "    returning user_id, timeslot_sequence_number " +
+            "), counted as ( " +
+            "    update timeslots " +
+            "    set reservation_count = reservation_count - (select count(*) from absent) " +
+            "    where sequence_number = ? " +
+            "), penalized as ( " +
+            "    insert into penalty_points (user_id, description, class, points, timeslot_sequence_number) " +
+            "    select a.user_id, '', ?, ?, a.timeslot_sequence_number " +
+            "    from absent a " +
+            "    where ? and not exists (select 1 from penalty_points p " +
+            "        where p.user_id = a.user_id and p.timeslot_sequence_number = a.timeslot_sequence_number) " +
+            ") " +
+            "select count(*) from absent";
+
     private final ConnectionProvider connectionProvider;
 
     @Autowired
@@ -17,50 +89,95 @@ public class DBLocationReservationDao {
         this.connectionProvider = connectionProvider;
     }
 
+    /**
+     * Stores the reservation if the timeslot still has a seat, in a single round trip.
+     * @return : Whether the reservation was stored, false if the timeslot is full or the user has a reservation already.
+     */
     public boolean addLocationReservationIfStillRoomAtomically(LocationReservation reservation) throws SQLException {
-        try (Connection conn = connectionProvider.getConnection()) {
-            try {
-                // Try to take a lock (or block) on the database by performing a SELECT FOR UPDATE.
-                // A lock must be taken within a transaction, therefore disabling auto commit.
-                conn.setAutoCommit(false);
-
-                String query = "update timeslots " +
-                        "set reservation_count = reservation_count + 1 " +
-                        "where sequence_number = ?;";
+        int timeslotSeqnr = reservation.getTimeslot().getTimeslotSeqnr();
+        String userId = reservation.getUser().getUserId();
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(RESERVE_IF_STILL_ROOM)) {
+            stmt.setInt(1, timeslotSeqnr);
+            stmt.setInt(2, timeslotSeqnr);
+            stmt.setString(3, userId);
+            stmt.setString(4, userId);
+            stmt.setString(5, reservation.getState());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            // Error codes that start with "23" are constraint violations, e.g. a concurrent duplicate.
+            // The statement is atomic, so the counter was not incremented either.
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                return false;
+            }
+            // This is a real db error. Rethrowing it.
+            throw e;
+        }
+    }
 
-                PreparedStatement stmt = conn.prepareStatement(query);
-                stmt.setInt(1, reservation.getTimeslot().getTimeslotSeqnr());
-                int change = stmt.executeUpdate();
+    /**
+     * Stores every reservation for which the timeslot still has a seat, in a single round trip. Reservations for
+     * the same timeslot get the remaining seats in the order of the list. A reservation of a user that already
+     * has one for the timeslot is skipped.
+     * @return : The reservations that were stored.
+     */
+    public List<LocationReservation> addLocationReservationsIfStillRoomAtomically(List<LocationReservation> reservations) throws SQLException {
+        if (reservations.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] userIds = new String[reservations.size()];
+        Integer[] timeslotSeqnrs = new Integer[reservations.size()];
+        String[] states = new String[reservations.size()];
+        for (int i = 0; i < reservations.size(); i++) {
+            LocationReservation reservation = reservations.get(i);
+            userIds[i] = reservation.getUser().getUserId();
+            timeslotSeqnrs[i] = reservation.getTimeslot().getTimeslotSeqnr();
+            states[i] = reservation.getState();
+        }
 
-                // Double checking the change for insurance (and also compiler check)
-                if(change != 1) {
-                    return false;
+        Set<LocationReservation.LocationReservationId> stored = new HashSet<>();
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(RESERVE_BATCH_IF_STILL_ROOM)) {
+            stmt.setArray(1, conn.createArrayOf("text", userIds));
+            stmt.setArray(2, conn.createArrayOf("integer", timeslotSeqnrs));
+            stmt.setArray(3, conn.createArrayOf("text", states));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.add(new LocationReservation.LocationReservationId(rs.getInt(1), rs.getString(2)));
                 }
+            }
+        }
 
-                // If this operation succeeds, the reservation can proceed
-                query = "insert into public.location_reservations (user_id, timeslot_sequence_number, state) " +
-                        "values (?, ?, ?);";
-
-                PreparedStatement pstmt = conn.prepareStatement(query);
-                pstmt.setString(1, reservation.getUser().getUserId());
-                pstmt.setInt(2, reservation.getTimeslot().getTimeslotSeqnr());
-                pstmt.setString(3, reservation.getState());
-                pstmt.execute();
-
-                return true;
+        List<LocationReservation> result = new ArrayList<>();
+        for (LocationReservation reservation : reservations) {
+            if (stored.remove(new LocationReservation.LocationReservationId(
+                    reservation.getTimeslot().getTimeslotSeqnr(), reservation.getUser().getUserId()))) {
+                result.add(reservation);
+            }
+        }
+        return result;
+    }
 
-            } catch (SQLException e) {
-                conn.rollback();
-                // Error codes that start with "23" are constraint violations.
-                // This means that the entry was probably not unique.
-                if (e.getSQLState().startsWith("23")) {
-                    return false;
-                } else {
-                    // This is a real db error. Rethrowing it.
-                    throw e;
-                }
-            } finally {
-                conn.commit();
+    /**
+     * Sets every approved reservation of the timeslot to absent and frees its seat, in a single round trip.
+     * @param penaltyClass : The class of the penalty that every absent user gets, or null to give no penalties.
+     * @return : The amount of reservations that were set to absent.
+     */
+    public int setNotScannedReservationsAbsent(int timeslotSeqnr, String penaltyClass, int penaltyPoints) throws SQLException {
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SET_NOT_SCANNED_ABSENT)) {
+            // Set explicitly, like the auditing listener of LocationReservation does.
+            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.setInt(2, timeslotSeqnr);
+            stmt.setInt(3, timeslotSeqnr);
+            stmt.setString(4, penaltyClass);
+            stmt.setInt(5, penaltyPoints);
+            stmt.setBoolean(6, penaltyClass != null);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
             }
         }
     }
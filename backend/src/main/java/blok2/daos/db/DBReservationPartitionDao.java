@@ -0,0 +1,73 @@
+package blok2.daos.db;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the partitions of location_reservations, with the functions of V25__Partition_location_reservations.sql.
+ */
+@Service
+public class DBReservationPartitionDao {
+
+    private final ConnectionProvider connectionProvider;
+
+    @Autowired
+    public DBReservationPartitionDao(ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+    }
+
+    /**
+     * Creates partitions of timeslotsPerPartition timeslots, until there are partitionsAhead partitions for the
+     * timeslots that are yet to be created.
+     * @return : The amount of partitions that were created.
+     */
+    public int createPartitions(int timeslotsPerPartition, int partitionsAhead) throws SQLException {
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("select create_location_reservation_partitions(?, ?)")) {
+            stmt.setInt(1, timeslotsPerPartition);
+            stmt.setInt(2, partitionsAhead);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * @return : The first timeslot sequence number that has no partition yet, 0 if there are no partitions.
+     */
+    public long getUpperBound() throws SQLException {
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("select coalesce(max(substring(c.relname from '_(\\d+)$')::bigint), 0) " +
+                     "from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+                     "where i.inhparent = 'public.location_reservations'::regclass");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Moves the partitions of which every timeslot is before the cutoff to the archive schema.
+     * @return : The names of the archived partitions.
+     */
+    public List<String> archivePartitions(LocalDate cutoff) throws SQLException {
+        List<String> archived = new ArrayList<>();
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("select archive_location_reservation_partitions(?)")) {
+            stmt.setDate(1, Date.valueOf(cutoff));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    archived.add(rs.getString(1));
+                }
+            }
+        }
+        return archived;
+    }
+
+}
@@ -0,0 +1,123 @@
+package blok2.daos.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Hands out connections from a pool of its own, so that a statement does not pay for a new TCP connection and
+ * authentication every time. Reused connections also keep the statements that PostgreSQL prepared for them.
+ *
+ * The pool is created on first use, once the properties are bound. Its meters are exposed as hikaricp.connections.*
+ * with the pool name as tag. A connection that is not returned within leakDetectionThresholdMs is logged.
+ */
+public abstract class PooledConnectionProvider implements AutoCloseable {
+
+    private final String poolName;
+    private final MeterRegistry meterRegistry;
+
+    private String url;
+    private String username;
+    private String password;
+
+    private int maximumPoolSize = 10;
+    private int minimumIdle = 2;
+    private long connectionTimeoutMs = 30000;
+    private long leakDetectionThresholdMs = 30000;
+    // Statements are prepared on the server from their prepareThreshold'th execution on a connection (cfr. pgjdbc).
+    private int prepareThreshold = 5;
+    private int preparedStatementCacheQueries = 256;
+
+    private volatile HikariDataSource dataSource;
+
+    protected PooledConnectionProvider(String poolName, MeterRegistry meterRegistry) {
+        this.poolName = poolName;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return : A connection of the pool, closing it returns it to the pool.
+     */
+    public Connection getConnection() throws SQLException {
+        HikariDataSource dataSource = this.dataSource;
+        if (dataSource == null) {
+            dataSource = createDataSource();
+        }
+        return dataSource.getConnection();
+    }
+
+    /**
+     * @return : A new connection that is not part of the pool, for a connection that stays open for a long
+     *           time (e.g. to LISTEN) and would otherwise be reported as leaked and take a connection from the pool.
+     */
+    public Connection getDedicatedConnection() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    private synchronized HikariDataSource createDataSource() {
+        if (dataSource == null) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName(poolName);
+            dataSource.setJdbcUrl(url);
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            dataSource.setMaximumPoolSize(maximumPoolSize);
+            dataSource.setMinimumIdle(Math.min(minimumIdle, maximumPoolSize));
+            dataSource.setConnectionTimeout(connectionTimeoutMs);
+            dataSource.setLeakDetectionThreshold(leakDetectionThresholdMs);
+            dataSource.addDataSourceProperty("prepareThreshold", prepareThreshold);
+            dataSource.addDataSourceProperty("preparedStatementCacheQueries", preparedStatementCacheQueries);
+            dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            this.dataSource = dataSource;
+        }
+        return dataSource;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public void setMinimumIdle(int minimumIdle) {
+        this.minimumIdle = minimumIdle;
+    }
+
+    public void setConnectionTimeoutMs(long connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    public void setLeakDetectionThresholdMs(long leakDetectionThresholdMs) {
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+    }
+
+    public void setPrepareThreshold(int prepareThreshold) {
+        this.prepareThreshold = prepareThreshold;
+    }
+
+    public void setPreparedStatementCacheQueries(int preparedStatementCacheQueries) {
+        this.preparedStatementCacheQueries = preparedStatementCacheQueries;
+    }
+
+}
@@ -0,0 +1,16 @@
+package blok2.daos.db;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read-only method whose reads may be served by the streaming replica (cfr. ReadOnlyRoutingDataSource).
+ * Only use this for reads that tolerate a lag of some seconds, and never for reads of which the result is written
+ * back or handed out as current (e.g. with an ETag).
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadFromReplica {
+}
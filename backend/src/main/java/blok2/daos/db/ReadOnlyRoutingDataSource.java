@@ -0,0 +1,101 @@
+package blok2.daos.db;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends the read-only transactions (@Transactional(readOnly = true)) of methods that are annotated with
+ * @ReadFromReplica to a streaming replica of the database, and all other statements to the primary. Without a
+ * replica, or while the replica is unavailable or lags too much (cfr. ReplicationLagMonitor), everything goes to
+ * the primary.
+ *
+ * Being read-only is not enough: the repositories are read-only themselves (cfr. SimpleJpaRepository), so their
+ * reads in a write path, e.g. the loads of SeatLedger or the read before a save, would see the lagging replica.
+ *
+ * The decision is made when the connection is requested, so this must be wrapped in a LazyConnectionDataSourceProxy:
+ * the transaction manager asks for a connection before the transaction is marked read-only.
+ */
+public class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private final DataSource primary;
+    private final DataSource replica;
+
+    // Set while a method annotated with @ReadFromReplica runs (cfr. DataSourceConfiguration)
+    private static final ThreadLocal<Boolean> replicaAllowed = ThreadLocal.withInitial(() -> false);
+
+    private volatile boolean replicaAvailable = true;
+
+    /**
+     * @param replica : May be null, if there is no replica.
+     */
+    public ReadOnlyRoutingDataSource(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        if (replica != null) {
+            targets.put(REPLICA, replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replica != null && replicaAvailable && replicaAllowed.get()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return REPLICA;
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * Allows or disallows the read-only transactions of the current thread to go to the replica.
+     *
+     * @return : Whether they were allowed before, to restore afterwards.
+     */
+    public static boolean allowReplica(boolean allowed) {
+        boolean previous = replicaAllowed.get();
+        replicaAllowed.set(allowed);
+        return previous;
+    }
+
+    public boolean hasReplica() {
+        return replica != null;
+    }
+
+    /**
+     * @return : The replica, or null if there is none.
+     */
+    public DataSource getReplica() {
+        return replica;
+    }
+
+    public boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    public void setReplicaAvailable(boolean replicaAvailable) {
+        this.replicaAvailable = replicaAvailable;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (primary instanceof Closeable) {
+            ((Closeable) primary).close();
+        }
+        if (replica instanceof Closeable) {
+            ((Closeable) replica).close();
+        }
+    }
+
+}
@@ -1,12 +1,15 @@
 package blok2.daos.repositories;
 
 import blok2.model.reservations.LocationReservation;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface LocationReservationRepository extends JpaRepository<LocationReservation, LocationReservation.LocationReservationId> {
@@ -16,6 +19,13 @@ public interface LocationReservationRepository extends JpaRepository<LocationRes
     @Query("select lr from LocationReservation lr where lr.id.userId = ?1")
     List<LocationReservation> findAllByUserId(String userId);
 
+    /**
+     * Get a page of the reservations of the user, ordered by timeslot, that come after the given timeslot.
+     */
+    @Query("select lr from LocationReservation lr where lr.id.userId = ?1 and lr.id.timeslotSequenceNumber > ?2 " +
+            "order by lr.id.timeslotSequenceNumber")
+    List<LocationReservation> findAllByUserIdAfterTimeslot(String userId, int sequenceNumber, Pageable pageable);
+
     @Query("select lr from LocationReservation lr where lr.id.timeslotSequenceNumber = ?1")
     List<LocationReservation> findAllByTimeslot(int sequenceNumber);
 
@@ -63,7 +73,124 @@ public interface LocationReservationRepository extends JpaRepository<LocationRes
     @Modifying
     void decrementCountByOne(int timeslotId);
 
-    @Query("select lr from LocationReservation lr where lr.state = 'PENDING'")
-    List<LocationReservation> findAllPending();
+    /**
+     * Get the pending reservations of the timeslots on or after the given date. The lowest sequence number of those
+     * timeslots bounds the query, so that only the partitions from that timeslot on are read (cfr. V25).
+     */
+    @Query("select lr from LocationReservation lr where lr.state = 'PENDING' and lr.id.timeslotSequenceNumber >= " +
+            "(select min(t.timeslotSequenceNumber) from Timeslot t where t.timeslotDate >= ?1)")
+    List<LocationReservation> findAllPendingFromDate(LocalDate date);
+
+    /**
+     * Count the pending reservations. In distributed mode, this is the backlog of the reservation queue.
+     * Only the partial index idx_location_reservations_pending is read.
+     */
+    @Query("select count(lr) from LocationReservation lr where lr.state = 'PENDING'")
+    long countPending();
+
+    /**
+     * Stores a pending reservation in a single statement. An existing reservation of the user for the timeslot
+     * is only made pending again if it is neither pending nor approved, e.g. after it was rejected or deleted.
+     *
+     * The existing reservation is read in the snapshot of the statement. One that was stored concurrently is not in
+     * that snapshot, and the upsert left it untouched, so it is pending or approved: it is reported as pending.
+     *
+     * @return : null if the reservation is pending now, otherwise the state of the pending or approved reservation
+     *           that the user already had.
+     */
+    @Transactional
+    @Query(value = "with stored as (" +
+            "    insert into location_reservations (timeslot_sequence_number, user_id, state, updated_at) " +
+            "    values (?1, ?2, 'PENDING', ?3) " +
+            "    on conflict (timeslot_sequence_number, user_id) do update " +
+            "        set state = 'PENDING', updated_at = excluded.updated_at " +
+            "        where location_reservations.state not in ('PENDING', 'APPROVED') " +
+            "    returning state) " +
+            "select case when exists(select 1 from stored) then null " +
+            "    else coalesce((select lr.state from location_reservations lr " +
+            "                   where lr.timeslot_sequence_number = ?1 and lr.user_id = ?2), 'PENDING') end",
+            nativeQuery = true)
+    String insertPending(int sequenceNumber, String userId, LocalDateTime updatedAt);
+
+    /**
+     * Of the given users, get those that still have a pending reservation for the timeslot.
+     */
+    @Query("select lr.id.userId from LocationReservation lr " +
+            "where lr.id.timeslotSequenceNumber = ?1 and lr.id.userId in ?2 and lr.state = 'PENDING'")
+    List<String> findPendingUserIdsOfTimeslot(int sequenceNumber, Collection<String> userIds);
+
+    /**
+     * Sets the state of the pending reservations of the given users for the timeslot in one statement.
+     * Reservations that are no longer pending are not touched.
+     *
+     * Note: this bypasses the auditing listener, therefore updatedAt has to be given explicitly.
+     */
+    @Modifying
+    @Query("update LocationReservation lr set lr.state = ?3, lr.updatedAt = ?4 " +
+            "where lr.id.timeslotSequenceNumber = ?1 and lr.id.userId in ?2 and lr.state = 'PENDING'")
+    int updateStateOfPending(int sequenceNumber, Collection<String> userIds, String state, LocalDateTime updatedAt);
+
+    /**
+     * Same as updateStateOfPending, but returns the users of which the reservation was updated.
+     */
+    @Query(value = "update location_reservations set state = ?3, updated_at = ?4 " +
+            "where timeslot_sequence_number = ?1 and user_id in ?2 and state = 'PENDING' " +
+            "returning user_id", nativeQuery = true)
+    List<String> updateStateOfPendingReturningUserIds(int sequenceNumber, Collection<String> userIds, String state,
+                                                       LocalDateTime updatedAt);
+
+    /**
+     * Get the ids of all pending reservations of the given timeslots.
+     */
+    @Query("select lr.id from LocationReservation lr " +
+            "where lr.id.timeslotSequenceNumber in ?1 and lr.state = 'PENDING'")
+    List<LocationReservation.LocationReservationId> findPendingIdsOfTimeslots(Collection<Integer> sequenceNumbers);
+
+    /**
+     * Sets the state of the given pending reservations, which may belong to different timeslots, in one statement.
+     * Reservations that are no longer pending are not touched.
+     *
+     * Note: this bypasses the auditing listener, therefore updatedAt has to be given explicitly.
+     */
+    @Modifying
+    @Query("update LocationReservation lr set lr.state = ?2, lr.updatedAt = ?3 " +
+            "where lr.id in ?1 and lr.state = 'PENDING'")
+    int updateStateOfPendingIds(Collection<LocationReservation.LocationReservationId> ids, String state, LocalDateTime updatedAt);
+
+    /**
+     * Claims the pending reservations of at most maxTimeslots timeslots of which the random pool closed before the
+     * given moment. The timeslots and reservations stay locked until the end of the transaction. Timeslots and
+     * reservations that are locked by another transaction are skipped, so that several backend instances can claim
+     * work at the same time without waiting for each other.
+     *
+     * Per timeslot, the reservations of the random pool come first in random order, followed by the others in the
+     * order in which they were made. Pending reservations are not updated until they are decided, so updated_at is
+     * the moment at which the reservation was made. A reservation that was made before the timeslot became
+     * reservable is claimed as too early, so that it is rejected instead of taking part in the random pool.
+     *
+     * @return : (timeslot_sequence_number, user_id, updated_at, too_early) of every claimed reservation
+     */
+    @Query(value = "with claimed as ( " +
+            "    select t.sequence_number, t.reservable_from from timeslots t " +
+            "    where t.reservable_from < ?1 " +
+            "    and exists (select 1 from location_reservations p " +
+            "        where p.timeslot_sequence_number = t.sequence_number and p.state = 'PENDING') " +
+            "    order by t.reservable_from, t.sequence_number " +
+            "    limit ?2 " +
+            "    for update of t skip locked) " +
+            "select lr.timeslot_sequence_number, lr.user_id, lr.updated_at, lr.updated_at < c.reservable_from as too_early " +
+            "from location_reservations lr " +
+            "    join claimed c on c.sequence_number = lr.timeslot_sequence_number " +
+            "where lr.state = 'PENDING' " +
+            "order by lr.timeslot_sequence_number, " +
+            "    case when lr.updated_at <= c.reservable_from + interval '10 minutes' then random() end, lr.updated_at " +
+            "for update of lr skip locked", nativeQuery = true)
+    List<Object[]> claimPending(LocalDateTime randomPoolsClosedBefore, int maxTimeslots);
+
+    /**
+     * Signals the listeners on the channel, once the current transaction commits.
+     */
+    @Query(value = "select cast(pg_notify(?1, ?2) as text)", nativeQuery = true)
+    String notify(String channel, String payload);
 
 }
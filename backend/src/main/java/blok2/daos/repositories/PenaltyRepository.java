@@ -1,9 +1,11 @@
 package blok2.daos.repositories;
 
 import blok2.model.penalty.Penalty;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface PenaltyRepository extends JpaRepository<Penalty, Integer> {
@@ -15,4 +17,14 @@ public interface PenaltyRepository extends JpaRepository<Penalty, Integer> {
     List<Penalty> findAllByLocationReservation(String userid, int timeslot_sequence_number);
 
     List<Penalty> findAllByOrderByCreatedAtDesc();
+
+    List<Penalty> findAllByOrderByCreatedAtDescPenaltyIdDesc(Pageable pageable);
+
+    /**
+     * Get a page of the penalties, newest first, that come after the given penalty in that order.
+     * The first condition is redundant, but lets the index on created_at start at the given penalty.
+     */
+    @Query("select p from Penalty p where p.createdAt <= ?1 and (p.createdAt < ?1 or p.penaltyId < ?2) " +
+            "order by p.createdAt desc, p.penaltyId desc")
+    List<Penalty> findAllBefore(LocalDateTime createdAt, int penaltyId, Pageable pageable);
 }
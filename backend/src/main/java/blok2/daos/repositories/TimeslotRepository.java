@@ -3,36 +3,89 @@ package blok2.daos.repositories;
 import blok2.model.calendar.Timeslot;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
+import javax.persistence.LockModeType;
 import javax.transaction.Transactional;
 import java.time.LocalDate;
-import java.time.LocalTime;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface TimeslotRepository extends JpaRepository<Timeslot, Integer> {
     List<Timeslot> getAllByLocationId(Integer locationId);
 
-    @Query("SELECT t FROM Timeslot t where t.locationId = ?1 and t.timeslotDate > ?2")
+    /**
+     * The timeslots before the window of TimeslotIndex are looked up here, in the order of the index.
+     */
+    @Query("SELECT t FROM Timeslot t where t.locationId = ?1 and t.timeslotDate > ?2 " +
+            "order by t.timeslotDate, t.closingHour, t.timeslotSequenceNumber")
     List<Timeslot> getAllByLocationIdAndAfterTimeslotDate(Integer locationId, LocalDate timeslotDate);
 
-    @Query("SELECT t FROM Timeslot t where t.locationId = ?1 and t.timeslotDate = ?2")
+    @Query("SELECT t FROM Timeslot t where t.locationId = ?1 and t.timeslotDate = ?2 " +
+            "order by t.closingHour, t.timeslotSequenceNumber")
     List<Timeslot> getAllByLocationIdAndOnTimeslotDate(Integer locationId, LocalDate timeslotDate);
 
+    /**
+     * Get a page of the timeslots of the location, ordered by date and sequence number, that come after the given
+     * date and sequence number.
+     */
+    @Query("SELECT t FROM Timeslot t where t.locationId = ?1 and t.timeslotDate >= ?2 " +
+            "and (t.timeslotDate > ?2 or t.timeslotSequenceNumber > ?3) " +
+            "order by t.timeslotDate, t.timeslotSequenceNumber")
+    List<Timeslot> getAllByLocationIdAfter(Integer locationId, LocalDate timeslotDate, int sequence_number, Pageable pageable);
+
+    /**
+     * Get the timeslots of the location that are after the first date and before the second date, together with
+     * the timeslots that become reservable after the given moment. These are the timeslots that the tags of a
+     * location are computed from (cfr. LocationService.initializeTags).
+     */
+    @Query("SELECT t FROM Timeslot t where t.locationId = ?1 " +
+            "and ((t.timeslotDate > ?2 and t.timeslotDate < ?3) or (t.reservable = true and t.reservableFrom > ?4)) " +
+            "order by t.timeslotDate, t.timeslotSequenceNumber")
+    List<Timeslot> getAllByLocationIdBetweenOrReservableAfter(Integer locationId, LocalDate after, LocalDate before,
+                                                              LocalDateTime reservableAfter);
+
+    @Query("SELECT t FROM Timeslot t where t.timeslotDate >= ?1")
+    List<Timeslot> getAllFromTimeslotDate(LocalDate timeslotDate);
+
     @Query("SELECT t FROM Timeslot t where t.timeslotSequenceNumber = ?1")
     Timeslot getByTimeslotSeqnr(int sequence_number);
 
+    /**
+     * Gets the timeslot and takes a row lock on it (SELECT ... FOR UPDATE) until the end of the transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Timeslot t where t.timeslotSequenceNumber = ?1")
+    Timeslot lockByTimeslotSeqnr(int sequence_number);
+
+    /**
+     * Gets the timeslots and takes a row lock on them. The rows are locked in the order of their
+     * sequence number, so that concurrent callers can't deadlock each other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Timeslot t where t.timeslotSequenceNumber in ?1 order by t.timeslotSequenceNumber")
+    List<Timeslot> lockAllByTimeslotSeqnrs(Collection<Integer> sequence_numbers);
+
+    @Modifying
+    @Query("update Timeslot t set t.amountOfReservations = t.amountOfReservations + ?2 where t.timeslotSequenceNumber = ?1")
+    int incrementAmountOfReservations(int sequence_number, int amount);
+
+    /**
+     * Increments the reservation count of many timeslots in one statement.
+     * @param sequence_numbers comma separated sequence numbers
+     * @param amounts comma separated amounts, in the same order as the sequence numbers
+     */
+    @Modifying
+    @Query(value = "update timeslots t set reservation_count = t.reservation_count + d.amount " +
+            "from unnest(cast(string_to_array(?1, ',') as int[]), cast(string_to_array(?2, ',') as int[])) as d(seqnr, amount) " +
+            "where t.sequence_number = d.seqnr", nativeQuery = true)
+    int incrementAmountsOfReservations(String sequence_numbers, String amounts);
+
     @Modifying
     @Transactional
     @Query("delete FROM Timeslot t where t.timeslotSequenceNumber = ?1")
     void deleteTimeslotByTimeslotSeqnr(int sequence_number);
-
-    @Query("select t" +
-            "   FROM Timeslot t " +
-            "where t.locationId = ?1 " +
-            "and (t.timeslotDate > ?2 " +
-            "or (t.timeslotDate = ?2 and t.closingHour > ?3))" +
-            "order by t.timeslotDate, t.closingHour")
-    List<Timeslot> getCurrentOrNextTimeslot(int locationId, LocalDate date, LocalTime closingHour, Pageable pageable);
 }
@@ -23,13 +23,15 @@ public class AuthorityService implements IAuthorityDao {
     private final AuthorityRepository authorityRepository;
     private final LocationRepository locationRepository;
     private final UserRepository userRepository;
+    private final DataVersions dataVersions;
 
     @Autowired
     public AuthorityService(AuthorityRepository authorityRepository, LocationRepository locationRepository,
-                            UserRepository userRepository) {
+                            UserRepository userRepository, DataVersions dataVersions) {
         this.authorityRepository = authorityRepository;
         this.locationRepository = locationRepository;
         this.userRepository = userRepository;
+        this.dataVersions = dataVersions;
     }
     
     @Override
@@ -64,11 +66,13 @@ public class AuthorityService implements IAuthorityDao {
     @Override
     public void updateAuthority(Authority authority) {
         authorityRepository.save(authority);
+        dataVersions.locationsChanged();
     }
 
     @Override
     public void deleteAuthority(int authorityId) {
         authorityRepository.deleteById(authorityId);
+        dataVersions.locationsChanged();
     }
 
     @Override
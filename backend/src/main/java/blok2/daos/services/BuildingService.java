@@ -16,12 +16,14 @@ public class BuildingService implements IBuildingDao {
 
     private final BuildingRepository buildingRepository;
     private final LocationRepository locationRepository;
+    private final DataVersions dataVersions;
 
     @Autowired
     public BuildingService(BuildingRepository buildingRepository,
-                           LocationRepository locationRepository) {
+                           LocationRepository locationRepository, DataVersions dataVersions) {
         this.buildingRepository = buildingRepository;
         this.locationRepository = locationRepository;
+        this.dataVersions = dataVersions;
     }
     
     @Override
@@ -49,11 +51,13 @@ public class BuildingService implements IBuildingDao {
     @Override
     public void updateBuilding(Building building) {
         buildingRepository.save(building);
+        dataVersions.locationsChanged();
     }
 
     @Override
     public void deleteBuilding(int buildingId) {
         buildingRepository.deleteById(buildingId);
+        dataVersions.locationsChanged();
     }
     
 }
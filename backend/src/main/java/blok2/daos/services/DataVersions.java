@@ -0,0 +1,258 @@
+package blok2.daos.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions of the data behind the public read endpoints, bumped on every write that changes what they return, once
+ * the transaction of the write has been committed. The endpoints derive their ETag from these versions, so that a
+ * request with an If-None-Match of an unchanged resource is answered with 304 Not Modified without touching the
+ * database (cfr. ETags).
+ *
+ * - locations: every change to the locations, their tags, buildings, authorities or timeslots.
+ * - location: every change to the timeslots or the subscriptions of one location.
+ * - reservations: every change to the amount of reservations of the timeslots of one location, and of all locations.
+ *
+ * The versions and ETags are drawn from the same sequence, and the ETags contain an id of this instance, so that an
+ * ETag is never handed out twice, also not after a restart or by another backend instance.
+ *
+ * The versions are kept per instance. The changes are shared with the other backend instances (cfr.
+ * DataVersionsBroadcaster), and while the changes of the other instances can not be received, no ETag is valid.
+ * The data behind an ETag must be read from the primary, so that it is not older than its versions (cfr.
+ * ReadFromReplica).
+ */
+@Service
+public class DataVersions {
+
+    // Bound on the amount of resources of which the ETag is remembered.
+    private static final int MAX_HANDED_OUT = 10000;
+
+    // The changes, as shared with the other instances.
+    private static final String LOCATIONS = "locations";
+    private static final String LOCATION = "location:";
+    private static final String SUBSCRIPTIONS = "subscriptions:";
+    private static final String RESERVATIONS = "reservations";
+    private static final String RESERVATIONS_OF_LOCATION = "reservations:";
+
+    private final String instance = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private final AtomicLong locations = new AtomicLong(sequence.incrementAndGet());
+    private final AtomicLong reservations = new AtomicLong(sequence.incrementAndGet());
+    private final Map<Integer, Long> locationVersions = new ConcurrentHashMap<>();
+    private volatile long initialLocationVersion = sequence.incrementAndGet();
+    private final Map<Integer, Long> reservationVersions = new ConcurrentHashMap<>();
+    private volatile long initialReservationVersion = sequence.incrementAndGet();
+
+    // The ETags that were handed out, with the versions they were built from and until when they stay valid.
+    private final Map<String, HandedOut> handedOut = new ConcurrentHashMap<>();
+
+    private final boolean shared;
+    // The changes of this instance that still have to be sent to the other instances.
+    private final Set<String> unsent = ConcurrentHashMap.newKeySet();
+    private volatile boolean receiving = false;
+
+    @Autowired
+    public DataVersions(@Value("${custom.dataVersions.broadcast.enabled:true}") boolean shared) {
+        this.shared = shared;
+    }
+
+    public long locations() {
+        return locations.get();
+    }
+
+    public long location(int locationId) {
+        return locationVersions.getOrDefault(locationId, initialLocationVersion);
+    }
+
+    /**
+     * @return : The version of the reservations of all locations.
+     */
+    public long reservations() {
+        return reservations.get();
+    }
+
+    public long reservations(int locationId) {
+        return reservationVersions.getOrDefault(locationId, initialReservationVersion);
+    }
+
+    public void locationsChanged() {
+        changed(LOCATIONS);
+    }
+
+    /**
+     * The location is part of the locations as well, so this changes their version too.
+     */
+    public void locationChanged(int locationId) {
+        changed(LOCATION + locationId);
+    }
+
+    /**
+     * The subscriptions are not part of the locations, unlike the other changes of a location.
+     */
+    public void subscriptionsChanged(int locationId) {
+        changed(SUBSCRIPTIONS + locationId);
+    }
+
+    public void reservationsChanged(int locationId) {
+        changed(RESERVATIONS_OF_LOCATION + locationId);
+    }
+
+    /**
+     * Changes the version of the reservations of every location, e.g. when the location of a timeslot is not known.
+     */
+    public void allReservationsChanged() {
+        changed(RESERVATIONS);
+    }
+
+    /**
+     * Changes every version, e.g. when the database has been replaced.
+     */
+    public void allChanged() {
+        locationVersions.clear();
+        initialLocationVersion = sequence.incrementAndGet();
+        reservationVersions.clear();
+        initialReservationVersion = sequence.incrementAndGet();
+        locations.set(sequence.incrementAndGet());
+        reservations.set(sequence.incrementAndGet());
+        handedOut.clear();
+    }
+
+    /**
+     * Applies a change of another instance, as it was taken from that instance with takeUnsent().
+     */
+    public void receive(String change) {
+        apply(change);
+    }
+
+    /**
+     * @return : The changes of this instance that were not sent to the other instances yet. If they can't be sent,
+     *           they must be handed back with unsent().
+     */
+    public List<String> takeUnsent() {
+        List<String> changes = new ArrayList<>();
+        for (Iterator<String> iterator = unsent.iterator(); iterator.hasNext(); ) {
+            changes.add(iterator.next());
+            iterator.remove();
+        }
+        return changes;
+    }
+
+    public void unsent(Collection<String> changes) {
+        unsent.addAll(changes);
+    }
+
+    /**
+     * Whether the changes of the other instances are received. When they are received again, every version is
+     * changed, because the changes in between were missed.
+     */
+    public void setReceiving(boolean receiving) {
+        if (receiving && !this.receiving) {
+            allChanged();
+        }
+        this.receiving = receiving;
+    }
+
+    /**
+     * @return : A new strong ETag, which has never been handed out before.
+     */
+    public String newEtag() {
+        return "\"" + instance + "-" + sequence.incrementAndGet() + "\"";
+    }
+
+    /**
+     * Remembers the ETag of a response that was built from the given versions. The ETag stays valid until one of
+     * the versions changes, or until validUntil: the response can also depend on the time, e.g. the current
+     * timeslot of a location changes when it closes.
+     * @param resource : The resource, including the parameters of the request that change the response.
+     * @param versions : The versions the response is built from, read before the data is read.
+     * @return : The ETag of the response.
+     */
+    public String handOut(String resource, LocalDateTime validUntil, long... versions) {
+        if (handedOut.size() >= MAX_HANDED_OUT) {
+            handedOut.clear();
+        }
+        String etag = newEtag();
+        handedOut.put(resource, new HandedOut(etag, versions, validUntil));
+        return etag;
+    }
+
+    /**
+     * @param versions : The current versions of the data of the resource.
+     * @return : The ETag that was handed out for the resource, if it is still valid. Null otherwise.
+     */
+    public String currentEtag(String resource, long... versions) {
+        if (shared && !receiving) {
+            return null;
+        }
+        HandedOut last = handedOut.get(resource);
+        if (last == null || !Arrays.equals(last.versions, versions) || !LocalDateTime.now().isBefore(last.validUntil)) {
+            return null;
+        }
+        return last.etag;
+    }
+
+    private void changed(String change) {
+        afterCommit(() -> {
+            apply(change);
+            if (shared) {
+                unsent.add(change);
+            }
+        });
+    }
+
+    private void apply(String change) {
+        if (change.equals(LOCATIONS)) {
+            locations.set(sequence.incrementAndGet());
+        } else if (change.startsWith(LOCATION)) {
+            locationVersions.put(Integer.parseInt(change.substring(LOCATION.length())), sequence.incrementAndGet());
+            locations.set(sequence.incrementAndGet());
+        } else if (change.startsWith(SUBSCRIPTIONS)) {
+            locationVersions.put(Integer.parseInt(change.substring(SUBSCRIPTIONS.length())), sequence.incrementAndGet());
+        } else if (change.startsWith(RESERVATIONS_OF_LOCATION)) {
+            reservationVersions.put(Integer.parseInt(change.substring(RESERVATIONS_OF_LOCATION.length())), sequence.incrementAndGet());
+            reservations.set(sequence.incrementAndGet());
+        } else if (change.equals(RESERVATIONS)) {
+            reservationVersions.clear();
+            initialReservationVersion = sequence.incrementAndGet();
+            reservations.set(sequence.incrementAndGet());
+        } else {
+            // Unknown change, e.g. of a newer instance: nothing can be assumed to be unchanged.
+            allChanged();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static class HandedOut {
+        private final String etag;
+        private final long[] versions;
+        private final LocalDateTime validUntil;
+
+        private HandedOut(String etag, long[] versions, LocalDateTime validUntil) {
+            this.etag = etag;
+            this.versions = versions;
+            this.validUntil = validUntil;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package blok2.daos.services;
+
+import blok2.helpers.View;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservables.Location;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the list of active locations, as GET /locations returns it, in memory. The list is kept serialized
+ * with the View.List view, so that it can be served without any database access or serialization.
+ *
+ * Every change to the locations, their tags, buildings, authorities or timeslots changes the version of the
+ * locations (cfr. DataVersions), after which the catalog is rebuilt by the next request. The current timeslot of
+ * a location also changes when it closes, so the catalog expires when the first current timeslot closes. The
+ * amount of reservations of the current timeslots is not kept up to date, so the catalog expires after maxAgeSeconds
+ * to bound how far it lags.
+ */
+@Service
+public class LocationCatalog {
+
+    private final LocationService locationService;
+    private final ObjectMapper objectMapper;
+    private final DataVersions dataVersions;
+    private final long maxAgeSeconds;
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public LocationCatalog(@Lazy LocationService locationService, ObjectMapper objectMapper, DataVersions dataVersions,
+                           @Value("${custom.locations.catalog.maxAgeSeconds:60}") long maxAgeSeconds) {
+        this.locationService = locationService;
+        this.objectMapper = objectMapper;
+        this.dataVersions = dataVersions;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * @return : The active locations, sorted by name, serialized with the View.List view, and their ETag.
+     */
+    public Snapshot getActiveLocations() {
+        Snapshot current = snapshot;
+        if (isValid(current)) {
+            return current;
+        }
+        // Only one request rebuilds the catalog, the others wait for it.
+        synchronized (this) {
+            current = snapshot;
+            if (isValid(current)) {
+                return current;
+            }
+            long buildVersion = dataVersions.locations();
+            Snapshot built = build(buildVersion, LocalDateTime.now());
+            // A change that was committed while building is not necessarily in the snapshot, the next request rebuilds.
+            if (buildVersion == dataVersions.locations()) {
+                snapshot = built;
+            }
+            return built;
+        }
+    }
+
+    private boolean isValid(Snapshot snapshot) {
+        return snapshot != null && snapshot.version == dataVersions.locations() && LocalDateTime.now().isBefore(snapshot.validUntil);
+    }
+
+    private Snapshot build(long buildVersion, LocalDateTime now) {
+        List<Location> locations = locationService.getAllActiveLocations();
+        locations.sort(Comparator.comparing(Location::getName));
+
+        LocalDateTime validUntil = now.plusSeconds(maxAgeSeconds);
+        for (Location location : locations) {
+            Timeslot timeslot = location.getCurrentTimeslot();
+            if (timeslot == null) {
+                continue;
+            }
+            LocalDateTime closing = timeslot.timeslotDate().atTime(timeslot.getClosingHour());
+            if (closing.isBefore(validUntil)) {
+                validUntil = closing;
+            }
+        }
+
+        try {
+            byte[] json = objectMapper.writerWithView(View.List.class).writeValueAsBytes(locations);
+            return new Snapshot(buildVersion, json, dataVersions.newEtag(), validUntil);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the active locations", e);
+        }
+    }
+
+    public static class Snapshot {
+        private final long version;
+        private final byte[] json;
+        private final String etag;
+        private final LocalDateTime validUntil;
+
+        private Snapshot(long version, byte[] json, String etag, LocalDateTime validUntil) {
+            this.version = version;
+            this.json = json;
+            this.etag = etag;
+            this.validUntil = validUntil;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+}
@@ -9,19 +9,24 @@ import blok2.model.calendar.Timeslot;
 import blok2.model.reservations.LocationReservation;
 import blok2.model.users.User;
 import blok2.scheduling.ReservationManager;
+import blok2.scheduling.SeatLedger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class LocationReservationService implements ILocationReservationDao {
@@ -36,19 +41,26 @@ public class LocationReservationService implements ILocationReservationDao {
     private final DBLocationReservationDao locationReservationDao;
     private final PenaltyService penaltyService;
     private final LocationService locationService;
+    private final SeatLedger seatLedger;
+    private final DataVersions dataVersions;
+    private final TimeslotIndex timeslotIndex;
 
     @Autowired
     public LocationReservationService(LocationReservationRepository locationReservationRepository,
                                       UserRepository userRepository,
                                       ReservationManager reservationManager, DBLocationReservationDao locationReservationDao,
                                       PenaltyService pService,
-                                      LocationService locationService) {
+                                      LocationService locationService,
+                                      SeatLedger seatLedger, DataVersions dataVersions, TimeslotIndex timeslotIndex) {
         this.locationReservationRepository = locationReservationRepository;
         this.userRepository = userRepository;
         this.reservationManager = reservationManager;
         this.locationReservationDao = locationReservationDao;
         this.penaltyService = pService;
         this.locationService = locationService;
+        this.seatLedger = seatLedger;
+        this.dataVersions = dataVersions;
+        this.timeslotIndex = timeslotIndex;
     }
 
     @Override
@@ -56,6 +68,11 @@ public class LocationReservationService implements ILocationReservationDao {
         return locationReservationRepository.findAllByUserId(userId);
     }
 
+    @Override
+    public List<LocationReservation> getLocationReservationsOfUserAfterTimeslot(String userId, int timeslotSeqnr, int limit) {
+        return locationReservationRepository.findAllByUserIdAfterTimeslot(userId, timeslotSeqnr, PageRequest.of(0, limit));
+    }
+
     @Override
     public LocationReservation getLocationReservation(String userId, Timeslot timeslot) {
         LocationReservation.LocationReservationId id = new LocationReservation.LocationReservationId(
@@ -121,12 +138,17 @@ public class LocationReservationService implements ILocationReservationDao {
         LocationReservation.State state = locationReservation.getStateE();
         if (state == LocationReservation.State.APPROVED || state == LocationReservation.State.PRESENT) {
             locationReservationRepository.decrementCountByOne(locationReservation.getTimeslot().getTimeslotSeqnr());
+            seatLedger.release(locationReservation.getTimeslot().getTimeslotSeqnr(), 1);
+            timeslotIndex.reservationsChanged(locationReservation.getTimeslot().getTimeslotSeqnr(), -1);
+            dataVersions.reservationsChanged(locationReservation.getTimeslot().getLocationId());
         }
         LocationReservation temp = locationReservationRepository.getOne(locationReservation.getId());
         System.out.println(locationReservation);
         System.out.println(temp);
         locationReservation.setState(LocationReservation.State.DELETED);
         LocationReservation lr = locationReservationRepository.save(locationReservation);
+        // A pending reservation is no longer a duplicate once it is deleted, the user may make it again.
+        reservationManager.unmarkQueued(locationReservation.getTimeslot().getTimeslotSeqnr(), locationReservation.getId().userId);
         this.penaltyService.notifyOfReservationDeletion(lr);
         /*locationReservationRepository.deleteById(new LocationReservation.LocationReservationId(
                 locationReservation.getTimeslot().getTimeslotSeqnr(), locationReservation.getUser().getUserId()
@@ -152,9 +174,15 @@ public class LocationReservationService implements ILocationReservationDao {
         try {
             if (takesUpSpaceInOldState && !takesUpSpaceInNewState) {
                 locationReservation.getTimeslot().decrementAmountOfReservations();
+                seatLedger.release(timeslot.getTimeslotSeqnr(), 1);
+                timeslotIndex.reservationsChanged(timeslot.getTimeslotSeqnr(), -1);
+                dataVersions.reservationsChanged(timeslot.getLocationId());
             }
             if (takesUpSpaceInNewState && !takesUpSpaceInOldState) {
                 locationReservation.getTimeslot().incrementAmountOfReservations();
+                seatLedger.reserve(timeslot.getTimeslotSeqnr(), 1);
+                timeslotIndex.reservationsChanged(timeslot.getTimeslotSeqnr(), 1);
+                dataVersions.reservationsChanged(timeslot.getLocationId());
             }
             locationReservation.setState(state);
             locationReservation = locationReservationRepository.saveAndFlush(locationReservation);
@@ -179,48 +207,102 @@ public class LocationReservationService implements ILocationReservationDao {
 
     @Override
     public boolean addLocationReservationIfStillRoomAtomically(LocationReservation reservation) throws SQLException {
-        return locationReservationDao.addLocationReservationIfStillRoomAtomically(reservation);
+        // The seat ledger rejects reservations for full timeslots without going to the database.
+        int timeslotSeqnr = reservation.getTimeslot().getTimeslotSeqnr();
+        if (!seatLedger.tryReserve(timeslotSeqnr)) {
+            return false;
+        }
+        boolean stored = false;
+        try {
+            stored = locationReservationDao.addLocationReservationIfStillRoomAtomically(reservation);
+            return stored;
+        } finally {
+            seatLedger.confirm(timeslotSeqnr, stored);
+            if (stored) {
+                timeslotIndex.reservationsChanged(timeslotSeqnr, 1);
+                dataVersions.reservationsChanged(reservation.getTimeslot().getLocationId());
+            }
+        }
+    }
+
+    @Override
+    public List<LocationReservation> addLocationReservationsIfStillRoomAtomically(List<LocationReservation> reservations) throws SQLException {
+        List<LocationReservation> seated = new ArrayList<>();
+        for (LocationReservation reservation : reservations) {
+            if (seatLedger.tryReserve(reservation.getTimeslot().getTimeslotSeqnr())) {
+                seated.add(reservation);
+            }
+        }
+        List<LocationReservation> stored = Collections.emptyList();
+        try {
+            stored = locationReservationDao.addLocationReservationsIfStillRoomAtomically(seated);
+            return stored;
+        } finally {
+            Set<LocationReservation> storedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            storedSet.addAll(stored);
+            for (LocationReservation reservation : seated) {
+                seatLedger.confirm(reservation.getTimeslot().getTimeslotSeqnr(), storedSet.contains(reservation));
+            }
+            Set<Integer> locationIds = new HashSet<>();
+            for (LocationReservation reservation : stored) {
+                timeslotIndex.reservationsChanged(reservation.getTimeslot().getTimeslotSeqnr(), 1);
+                locationIds.add(reservation.getTimeslot().getLocationId());
+            }
+            locationIds.forEach(dataVersions::reservationsChanged);
+        }
     }
 
+    /**
+     * Stores the reservation as pending and queues it. A reservation that is still queued on this instance is a
+     * duplicate and is answered from memory, otherwise the reservation is stored with a single statement which
+     * leaves pending and approved reservations untouched, and returns the state of such a duplicate.
+     */
     @Override
-    public boolean addLocationReservationToReservationQueue(LocationReservation reservation) {
+    public LocationReservation.State addLocationReservationToReservationQueue(LocationReservation reservation) {
+        int timeslotSeqnr = reservation.getTimeslot().getTimeslotSeqnr();
+        String userId = reservation.getId().userId;
+        if (!reservationManager.markQueued(timeslotSeqnr, userId)) {
+            return LocationReservation.State.PENDING; // Duplicate, the reservation is queued already.
+        }
         try {
-            Optional<LocationReservation> optLocRes = locationReservationRepository.findById(reservation.getId());
-            if (optLocRes.isPresent()) {
-                reservation = optLocRes.get();
-                if (reservation.getStateE() == LocationReservation.State.PENDING || reservation.getStateE() == LocationReservation.State.APPROVED) {
-                    System.out.println("RESERVATIONS: duplicate reservation made!");
-                    return true;
-                }
+            String existing = locationReservationRepository.insertPending(timeslotSeqnr, userId, LocalDateTime.now());
+            if (existing != null) {
+                // Duplicate, the reservation is pending or approved already.
+                reservationManager.unmarkQueued(timeslotSeqnr, userId);
+                return LocationReservation.State.valueOf(existing);
             }
             reservation.setState(LocationReservation.State.PENDING);
-            locationReservationRepository.save(reservation);
             reservationManager.addReservationToQueue(reservation);
-            return true;
+            return LocationReservation.State.PENDING;
         } catch (DataAccessException ex) { // TODO(ydndonck): Propagate error instead?
-            return false;
+            reservationManager.unmarkQueued(timeslotSeqnr, userId);
+            return null;
         }
     }
 
+    /**
+     * Sets the attendance of every reservation that wasn't scanned to absent and frees its seat, so that other
+     * students are able to make use of the freed spot. If the location uses penalty points, the absent students
+     * are penalized like PenaltyService.notifyOfReservationAttendance does. This is a single statement, however
+     * many reservations the timeslot has.
+     */
     @Override
     public void setNotScannedStudentsToUnattended(Timeslot timeslot) {
-        List<LocationReservation> locationReservations = locationReservationRepository.findAllUnknownAttendanceByTimeslot(
-                timeslot.getTimeslotSeqnr()
-        );
-
         boolean usesPenaltyPoints = locationService.getLocationById(timeslot.getLocationId()).isUsesPenaltyPoints();
 
-        // for each unattended reservation, set the attendance to false and decrement the reservation count
-        // so that other students are able to make use of the freed spot
-        locationReservations.forEach((LocationReservation lr) -> {
-            lr.setState(LocationReservation.State.ABSENT);
-            lr.getTimeslot().decrementAmountOfReservations();
-            if (usesPenaltyPoints) {
-                this.penaltyService.notifyOfReservationAttendance(lr);
-            }
-        });
-        
-        locationReservationRepository.saveAll(locationReservations);
+        int absent;
+        try {
+            absent = locationReservationDao.setNotScannedReservationsAbsent(timeslot.getTimeslotSeqnr(),
+                    usesPenaltyPoints ? PenaltyService.NOT_ATTENDED_CLASS : null, PenaltyService.NON_ATTENDANCE);
+        } catch (SQLException e) {
+            logger.error("Could not set the reservations of timeslot " + timeslot.getTimeslotSeqnr() + " to absent", e);
+            throw new RuntimeException(e);
+        }
+        seatLedger.release(timeslot.getTimeslotSeqnr(), absent);
+        timeslotIndex.reservationsChanged(timeslot.getTimeslotSeqnr(), -absent);
+        if (absent > 0) {
+            dataVersions.reservationsChanged(timeslot.getLocationId());
+        }
     }
 
     @Override
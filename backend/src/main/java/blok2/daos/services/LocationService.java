@@ -1,6 +1,7 @@
 package blok2.daos.services;
 
 import blok2.daos.ILocationDao;
+import blok2.daos.db.ReadFromReplica;
 import blok2.daos.repositories.LocationRepository;
 import blok2.helpers.exceptions.NoSuchDatabaseObjectException;
 import blok2.helpers.orm.LocationNameAndNextReservableFrom;
@@ -9,6 +10,7 @@ import blok2.model.reservables.Location;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
@@ -22,17 +24,22 @@ import java.util.*;
 public class LocationService implements ILocationDao {
 
     private final LocationRepository locationRepository;
+    private final DataVersions dataVersions;
+    private final TimeslotIndex timeslotIndex;
 
     @Autowired
     @Lazy
     private TimeslotService timeslotService;
 
     @Autowired
-    public LocationService(LocationRepository locationRepository) {
+    public LocationService(LocationRepository locationRepository, DataVersions dataVersions, TimeslotIndex timeslotIndex) {
         this.locationRepository = locationRepository;
+        this.dataVersions = dataVersions;
+        this.timeslotIndex = timeslotIndex;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Location getLocationById(int locationId) {
         Location l = locationRepository.findById(locationId)
                 .orElseThrow(() -> new NoSuchDatabaseObjectException(
@@ -42,6 +49,7 @@ public class LocationService implements ILocationDao {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Location getLocationByName(String locationName) {
         Location l = locationRepository.findLocationByName(locationName)
                 .orElseThrow(() -> new NoSuchDatabaseObjectException(
@@ -51,18 +59,31 @@ public class LocationService implements ILocationDao {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<Location> getAllActiveLocations() {
         List<Location> locs = locationRepository.findAllActiveLocations();
-        locs.forEach(this::initializeCurrentTimeslot);
+        // The timeslots are looked up in memory (cfr. TimeslotIndex).
+        List<Integer> locationIds = new ArrayList<>();
+        for (Location location : locs) {
+            locationIds.add(location.getLocationId());
+        }
+        Map<Integer, Timeslot> currentTimeslots = timeslotService.getCurrentOrNextTimeslots(locationIds);
+        for (Location location : locs) {
+            location.setCurrentTimeslot(currentTimeslots.get(location.getLocationId()));
+        }
         return locs;
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @ReadFromReplica
     public List<Location> getAllUnapprovedLocations() {
         return locationRepository.findAllByApprovedFalse();
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @ReadFromReplica
     public List<LocationNameAndNextReservableFrom> getNextReservationMomentsOfAllLocations() {
         return locationRepository.getNextReservationMomentsOfAllLocations();
     }
@@ -70,7 +91,9 @@ public class LocationService implements ILocationDao {
     @Override
     public Location addLocation(Location location) {
         location.setApproved(true);
-        return locationRepository.saveAndFlush(location);
+        Location added = locationRepository.saveAndFlush(location);
+        dataVersions.locationsChanged();
+        return added;
     }
 
     @Override
@@ -88,20 +111,27 @@ public class LocationService implements ILocationDao {
         originalLocation.setReminderDutch(location.getReminderDutch());
         originalLocation.setReminderEnglish(location.getReminderEnglish());
         locationRepository.save(originalLocation);
+        dataVersions.locationsChanged();
     }
 
     @Override
     public void deleteLocation(int locationId) {
         locationRepository.deleteById(locationId);
+        // The timeslots of the location are deleted with it.
+        timeslotIndex.locationDeleted(locationId);
+        dataVersions.locationChanged(locationId);
     }
 
     @Override
     public void approveLocation(Location location, boolean approval) {
         location.setApproved(approval);
         locationRepository.save(location);
+        dataVersions.locationsChanged();
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @ReadFromReplica
     public Map<String, String[]> getOpeningOverviewOfWeek(int year, int isoWeek) {
         // The SQL query that will be used requires the dates of a monday and following sunday
         // of a week for which the opening hours will be calculated. However, the week number
@@ -137,18 +167,65 @@ public class LocationService implements ILocationDao {
         return overview;
     }
 
+    /**
+     * @param location : A location of which the tags are initialized.
+     * @return : Until when the current timeslot and the tags of the location stay the same, if nothing is changed.
+     */
+    public static LocalDateTime unchangedUntil(Location location) {
+        LocalDateTime until = LocalDate.now().plusDays(1).atStartOfDay();
+        Timeslot current = location.getCurrentTimeslot();
+        if (current != null && current.timeslotDate().atTime(current.getClosingHour()).isBefore(until)) {
+            until = current.timeslotDate().atTime(current.getClosingHour());
+        }
+        Optional<Timeslot> nextReservable = location.getOptionalNextUpcomingReservableTimeslot();
+        if (nextReservable != null && nextReservable.isPresent() && nextReservable.get().getReservableFrom().isBefore(until)) {
+            until = nextReservable.get().getReservableFrom();
+        }
+        return until;
+    }
+
     private void initializeCurrentTimeslot(Location location) {
         location.setCurrentTimeslot(timeslotService.getCurrentOrNextTimeslot(location.getLocationId()).orElse(null));
     }
 
+    @Transactional(readOnly = true)
     public void initializeTags(Location location) {
-        List<Timeslot> timeslotsOfLocation = this.timeslotService.getTimeslotsOfLocation(location.getLocationId());
         LocalDate date = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+        // Only the timeslots of the coming week, and those that still have to become reservable, ordered by date.
+        List<Timeslot> timeslots = this.timeslotService.getTimeslotsOfLocationInWeekOrReservableAfter(location.getLocationId(), date, now);
+
+        boolean tomorrowStillAvailable = false;
+        boolean openDuringWeek = false;
+        boolean openDuringWeekend = false;
+        boolean openDuringEvening = false;
+        Timeslot nextUpcomingReservable = null;
+        for (Timeslot timeslot : timeslots) {
+            LocalDate timeslotDate = timeslot.timeslotDate();
+            if (timeslotDate.isAfter(date) && timeslotDate.isBefore(date.plusDays(8))) {
+                if (timeslotDate.isEqual(date.plusDays(1)) && timeslot.getAmountOfReservations() < timeslot.getSeatCount()) {
+                    tomorrowStillAvailable = true;
+                }
+                DayOfWeek day = timeslotDate.getDayOfWeek();
+                if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+                    openDuringWeekend = true;
+                } else {
+                    openDuringWeek = true;
+                }
+                if (!timeslot.getClosingHour().isBefore(LocalTime.of(20, 0))) {
+                    openDuringEvening = true;
+                }
+            }
+            if (nextUpcomingReservable == null && timeslot.isReservable() && timeslot.getReservableFrom() != null
+                    && timeslot.getReservableFrom().isAfter(now)) {
+                nextUpcomingReservable = timeslot;
+            }
+        }
 
-        location.setTomorrowStillAvailable(timeslotsOfLocation.stream().filter(timeslot -> timeslot.timeslotDate().isEqual(LocalDate.now().plusDays(1))).anyMatch(timeslot -> timeslot.getAmountOfReservations() < timeslot.getSeatCount()));
-        location.setOpenDuringWeek(timeslotsOfLocation.stream().filter(timeslot -> timeslot.timeslotDate().isAfter(date) && timeslot.timeslotDate().isBefore(date.plusDays(8))).anyMatch(timeslot -> timeslot.timeslotDate().getDayOfWeek() != DayOfWeek.SATURDAY && timeslot.timeslotDate().getDayOfWeek() != DayOfWeek.SUNDAY));
-        location.setOpenDuringWeekend(timeslotsOfLocation.stream().filter(timeslot -> timeslot.timeslotDate().isAfter(date) && timeslot.timeslotDate().isBefore(date.plusDays(8))).anyMatch(timeslot -> timeslot.timeslotDate().getDayOfWeek() == DayOfWeek.SATURDAY || timeslot.timeslotDate().getDayOfWeek() == DayOfWeek.SUNDAY));
-        location.setOpenDuringEvening(timeslotsOfLocation.stream().filter(timeslot -> timeslot.timeslotDate().isAfter(date) && timeslot.timeslotDate().isBefore(date.plusDays(8))).anyMatch(timeslot -> !timeslot.getClosingHour().isBefore(LocalTime.of(20, 0))));
-        location.setOptionalNextUpcomingReservableTimeslot(timeslotsOfLocation.stream().filter(timeslot -> timeslot.isReservable() && timeslot.getReservableFrom().isAfter(LocalDateTime.now())).min(Comparator.comparing(Timeslot::timeslotDate)));
+        location.setTomorrowStillAvailable(tomorrowStillAvailable);
+        location.setOpenDuringWeek(openDuringWeek);
+        location.setOpenDuringWeekend(openDuringWeekend);
+        location.setOpenDuringEvening(openDuringEvening);
+        location.setOptionalNextUpcomingReservableTimeslot(Optional.ofNullable(nextUpcomingReservable));
     }
 }
@@ -18,12 +18,14 @@ public class LocationTagService implements ILocationTagDao {
 
     private final LocationTagRepository locationTagRepository;
     private final LocationRepository locationRepository;
+    private final DataVersions dataVersions;
 
     @Autowired
     public LocationTagService(LocationTagRepository locationTagRepository,
-                              LocationRepository locationRepository) {
+                              LocationRepository locationRepository, DataVersions dataVersions) {
         this.locationTagRepository = locationTagRepository;
         this.locationRepository = locationRepository;
+        this.dataVersions = dataVersions;
     }
 
     @Override
@@ -67,11 +69,13 @@ public class LocationTagService implements ILocationTagDao {
     @Override
     public void updateLocationTag(LocationTag tag) {
         locationTagRepository.save(tag);
+        dataVersions.locationsChanged();
     }
 
     @Override
     public void deleteLocationTag(int tagId) {
         locationTagRepository.deleteById(tagId);
+        dataVersions.locationsChanged();
     }
 
     @Override
@@ -86,6 +90,7 @@ public class LocationTagService implements ILocationTagDao {
 
         location.getAssignedTags().add(tag);
         locationRepository.save(location);
+        dataVersions.locationsChanged();
     }
 
     @Override
@@ -98,6 +103,7 @@ public class LocationTagService implements ILocationTagDao {
 
         location.addAllLocationTags(tags);
         locationRepository.save(location);
+        dataVersions.locationsChanged();
     }
 
     @Override
@@ -112,6 +118,7 @@ public class LocationTagService implements ILocationTagDao {
 
         location.removeLocationTag(tag);
         locationRepository.save(location);
+        dataVersions.locationsChanged();
     }
 
     @Override
@@ -122,6 +129,7 @@ public class LocationTagService implements ILocationTagDao {
 
         location.clearAllLocationTags();
         locationRepository.save(location);
+        dataVersions.locationsChanged();
     }
 
     @Override
@@ -135,6 +143,7 @@ public class LocationTagService implements ILocationTagDao {
         locations.forEach((Location location) -> location.removeLocationTag(tag));
 
         locationRepository.saveAll(locations);
+        dataVersions.locationsChanged();
     }
 
 }
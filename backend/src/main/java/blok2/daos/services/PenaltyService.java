@@ -5,6 +5,7 @@ import blok2.daos.repositories.PenaltyRepository;
 import blok2.model.penalty.Penalty;
 import blok2.model.reservations.LocationReservation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -17,10 +18,10 @@ public class PenaltyService implements IPenaltyDao {
 
     private int PENALTY_OFFSET = 20;
     private String EARLY_DELETE_CLASS = "profile.penalties.table.late.delete";
-    private String NOT_ATTENDED_CLASS = "profile.penalties.table.not.attended";
+    static final String NOT_ATTENDED_CLASS = "profile.penalties.table.not.attended";
     private int EARLY_DELETE_LIMIT = 4;
     private int EARLY_DELETE_COST = 20;
-    private int NON_ATTENDANCE = 50;
+    static final int NON_ATTENDANCE = 50;
 
     /**
      * Update this variable every exam period to clear the penalty count.
@@ -43,6 +44,14 @@ public class PenaltyService implements IPenaltyDao {
         return penaltyRepository.findAllByOrderByCreatedAtDesc();
     }
 
+    @Override
+    public List<Penalty> getPenaltiesBefore(LocalDateTime createdAt, int penaltyId, int limit) {
+        if (createdAt == null) {
+            return penaltyRepository.findAllByOrderByCreatedAtDescPenaltyIdDesc(PageRequest.of(0, limit));
+        }
+        return penaltyRepository.findAllBefore(createdAt, penaltyId, PageRequest.of(0, limit));
+    }
+
     @Override
     public Penalty addPenalty(Penalty penalty) {
         return penaltyRepository.saveAndFlush(penalty);
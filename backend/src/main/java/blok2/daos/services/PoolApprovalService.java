@@ -0,0 +1,309 @@
+package blok2.daos.services;
+
+import blok2.daos.repositories.LocationReservationRepository;
+import blok2.daos.repositories.TimeslotRepository;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservations.LocationReservation;
+import blok2.scheduling.PoolDecision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
+
+/**
+ * Decides a whole pool of reservations of one timeslot at once. Instead of loading and saving every
+ * reservation and its timeslot separately, the timeslot is locked once, the pending reservations are
+ * loaded in bulk, the winners are decided in memory and the result is written with bulk updates.
+ */
+@Service
+public class PoolApprovalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolApprovalService.class);
+
+    // Upper bound on the amount of ids that are bound in a single IN clause.
+    private static final int MAX_IDS_PER_STATEMENT = 1000;
+
+    private final LocationReservationRepository reservationRepository;
+    private final TimeslotRepository timeslotRepository;
+    private final DataVersions dataVersions;
+    private final TimeslotIndex timeslotIndex;
+
+    @Autowired
+    public PoolApprovalService(LocationReservationRepository reservationRepository, TimeslotRepository timeslotRepository,
+                               DataVersions dataVersions, TimeslotIndex timeslotIndex) {
+        this.reservationRepository = reservationRepository;
+        this.timeslotRepository = timeslotRepository;
+        this.dataVersions = dataVersions;
+        this.timeslotIndex = timeslotIndex;
+    }
+
+    /**
+     * Approves or rejects all reservations of the pool, which must all belong to the given timeslot.
+     * Reservations are approved in the order of the pool for as long as there are seats left.
+     * Reservations that are no longer pending (e.g. deleted in the meantime) are left untouched.
+     */
+    @Transactional
+    public PoolDecision approvePool(int timeslotSeqnr, List<LocationReservation> pool) {
+        PoolDecision decision = new PoolDecision(timeslotSeqnr);
+
+        // Locking the timeslot serializes this pool with every other writer of reservation_count.
+        Timeslot timeslot = timeslotRepository.lockByTimeslotSeqnr(timeslotSeqnr);
+        if (timeslot == null) {
+            return decision; // Timeslot has been deleted, and its reservations with it.
+        }
+
+        Set<String> pending = findPendingUserIds(timeslotSeqnr, pool);
+        LocalDateTime now = LocalDateTime.now();
+        decide(timeslot, pool, pending, now, decision);
+
+        updateStateOfPending(timeslotSeqnr, decision.getApproved(), LocationReservation.State.APPROVED, now);
+        updateStateOfPending(timeslotSeqnr, decision.getRejected(), LocationReservation.State.REJECTED, now);
+        if (!decision.getApproved().isEmpty()) {
+            timeslotRepository.incrementAmountOfReservations(timeslotSeqnr, decision.getApproved().size());
+            timeslotIndex.reservationsChanged(timeslotSeqnr, decision.getApproved().size());
+            dataVersions.reservationsChanged(timeslot.getLocationId());
+        }
+        return decision;
+    }
+
+    /**
+     * Approves or rejects the pools of many timeslots at once, e.g. all random pools that close at the same
+     * moment. All timeslots are locked and all pending reservations are read up front, the pools are decided
+     * in memory like in approvePool() and the result is written with a handful of bulk statements.
+     * @param pools : The pools per timeslot sequence number.
+     */
+    @Transactional
+    public List<PoolDecision> approveWave(Map<Integer, List<LocationReservation>> pools) {
+        List<Integer> seqnrs = new ArrayList<>(pools.keySet());
+        Collections.sort(seqnrs);
+
+        Map<Integer, Timeslot> timeslots = new HashMap<>();
+        Map<Integer, Set<String>> pending = new HashMap<>();
+        for (List<Integer> chunk : chunks(seqnrs)) {
+            for (Timeslot timeslot : timeslotRepository.lockAllByTimeslotSeqnrs(chunk)) {
+                timeslots.put(timeslot.getTimeslotSeqnr(), timeslot);
+            }
+            for (LocationReservation.LocationReservationId id : reservationRepository.findPendingIdsOfTimeslots(chunk)) {
+                pending.computeIfAbsent(id.timeslotSequenceNumber, seqnr -> new HashSet<>()).add(id.userId);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<PoolDecision> decisions = new ArrayList<>();
+        List<LocationReservation.LocationReservationId> approved = new ArrayList<>();
+        List<LocationReservation.LocationReservationId> rejected = new ArrayList<>();
+        StringJoiner incrementedSeqnrs = new StringJoiner(",");
+        StringJoiner increments = new StringJoiner(",");
+        for (Map.Entry<Integer, List<LocationReservation>> pool : pools.entrySet()) {
+            Timeslot timeslot = timeslots.get(pool.getKey());
+            if (timeslot == null) {
+                continue; // Timeslot has been deleted, and its reservations with it.
+            }
+            PoolDecision decision = new PoolDecision(pool.getKey());
+            decide(timeslot, pool.getValue(), pending.getOrDefault(pool.getKey(), new HashSet<>()), now, decision);
+            decisions.add(decision);
+
+            for (String userId : decision.getApproved()) {
+                approved.add(new LocationReservation.LocationReservationId(pool.getKey(), userId));
+            }
+            for (String userId : decision.getRejected()) {
+                rejected.add(new LocationReservation.LocationReservationId(pool.getKey(), userId));
+            }
+            if (!decision.getApproved().isEmpty()) {
+                incrementedSeqnrs.add(String.valueOf(pool.getKey()));
+                increments.add(String.valueOf(decision.getApproved().size()));
+                timeslotIndex.reservationsChanged(pool.getKey(), decision.getApproved().size());
+                dataVersions.reservationsChanged(timeslot.getLocationId());
+            }
+        }
+
+        for (List<LocationReservation.LocationReservationId> chunk : chunks(approved)) {
+            reservationRepository.updateStateOfPendingIds(chunk, LocationReservation.State.APPROVED.name(), now);
+        }
+        for (List<LocationReservation.LocationReservationId> chunk : chunks(rejected)) {
+            reservationRepository.updateStateOfPendingIds(chunk, LocationReservation.State.REJECTED.name(), now);
+        }
+        if (increments.length() > 0) {
+            timeslotRepository.incrementAmountsOfReservations(incrementedSeqnrs.toString(), increments.toString());
+        }
+        return decisions;
+    }
+
+    /**
+     * Claims the pending reservations of timeslots of which the random pool closed and decides them together,
+     * like a release wave. Timeslots that are being decided by another transaction, e.g. on another backend
+     * instance, are skipped: several instances can work through the pending reservations at the same time.
+     * Because the claimed timeslots stay locked until the decisions are stored, no timeslot is oversubscribed.
+     * Reservations that were made before their timeslot became reservable are rejected as too early.
+     * @param maxTimeslots : The maximum amount of timeslots to claim.
+     * @return : The decisions, empty if there was nothing to claim.
+     */
+    @Transactional
+    public List<PoolDecision> approvePending(int maxTimeslots) {
+        LocalDateTime randomPoolsClosedBefore = LocalDateTime.now().minusMinutes(RANDOM_RESERVATION_DURATION_MINS);
+        Map<Integer, List<LocationReservation>> pools = new LinkedHashMap<>();
+        Map<Integer, List<String>> tooEarly = new LinkedHashMap<>();
+        for (Object[] row : reservationRepository.claimPending(randomPoolsClosedBefore, maxTimeslots)) {
+            int timeslotSeqnr = ((Number) row[0]).intValue();
+            if ((Boolean) row[3]) {
+                tooEarly.computeIfAbsent(timeslotSeqnr, seqnr -> new ArrayList<>()).add((String) row[1]);
+                continue;
+            }
+            LocationReservation reservation = new LocationReservation();
+            reservation.setId(new LocationReservation.LocationReservationId(timeslotSeqnr, (String) row[1]));
+            LocalDateTime madeAt = ((Timestamp) row[2]).toLocalDateTime();
+            reservation.setUpdatedAt(madeAt);
+            reservation.setEnqueuedAt(madeAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            pools.computeIfAbsent(timeslotSeqnr, seqnr -> new ArrayList<>()).add(reservation);
+        }
+        if (pools.isEmpty() && tooEarly.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // The timeslots are already locked by this transaction, locking them again does not wait.
+        List<PoolDecision> decisions = pools.isEmpty() ? new ArrayList<>() : approveWave(pools);
+
+        // The claimed reservations are locked by this transaction, they are still pending.
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Integer, List<String>> entry : tooEarly.entrySet()) {
+            PoolDecision decision = decisions.stream()
+                    .filter(d -> d.getTimeslotSeqnr() == entry.getKey())
+                    .findFirst()
+                    .orElse(null);
+            if (decision == null) {
+                decision = new PoolDecision(entry.getKey());
+                decisions.add(decision);
+            }
+            updateStateOfPending(entry.getKey(), entry.getValue(), LocationReservation.State.REJECTED, now);
+            for (String userId : entry.getValue()) {
+                decision.reject(userId, PoolDecision.RejectionReason.TOO_EARLY);
+            }
+        }
+        return decisions;
+    }
+
+    /**
+     * Persists a decision that was already made in memory (cfr. SeatLedger). Only the reservations that
+     * are still pending are updated, reservation_count is bumped once with the amount of approvals.
+     * The memory does not know which reservations are still pending: the seat of an approval that is no
+     * longer pending goes to the first user that was rejected because the timeslot was full, as approvePool()
+     * would have decided.
+     * @return : The decision as it was stored, without the reservations that were no longer pending.
+     */
+    @Transactional
+    public PoolDecision applyDecision(PoolDecision decision) {
+        int timeslotSeqnr = decision.getTimeslotSeqnr();
+        LocalDateTime now = LocalDateTime.now();
+        PoolDecision applied = new PoolDecision(timeslotSeqnr);
+
+        List<String> full = decision.getRejected(PoolDecision.RejectionReason.FULL);
+        List<String> toApprove = decision.getApproved();
+        int nextOfFull = 0;
+        while (!toApprove.isEmpty()) {
+            Set<String> approved = updatePending(timeslotSeqnr, toApprove, LocationReservation.State.APPROVED, now);
+            toApprove.stream().filter(approved::contains).forEach(applied::approve);
+            int freed = toApprove.size() - approved.size();
+            toApprove = full.subList(nextOfFull, Math.min(full.size(), nextOfFull + freed));
+            nextOfFull += toApprove.size();
+        }
+
+        for (PoolDecision.RejectionReason reason : PoolDecision.RejectionReason.values()) {
+            List<String> rejected = reason == PoolDecision.RejectionReason.FULL
+                    ? full.subList(nextOfFull, full.size())
+                    : decision.getRejected(reason);
+            Set<String> updated = updatePending(timeslotSeqnr, rejected, LocationReservation.State.REJECTED, now);
+            rejected.stream().filter(updated::contains).forEach(userId -> applied.reject(userId, reason));
+        }
+
+        int approved = applied.getApproved().size();
+        if (approved > 0) {
+            timeslotRepository.incrementAmountOfReservations(timeslotSeqnr, approved);
+            timeslotIndex.reservationsChanged(timeslotSeqnr, approved);
+            // The decision does not know the location, the index nearly always does.
+            Optional<Integer> locationId = timeslotIndex.locationOf(timeslotSeqnr);
+            if (locationId.isPresent()) {
+                dataVersions.reservationsChanged(locationId.get());
+            } else {
+                dataVersions.allReservationsChanged();
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Decides the pool of a locked timeslot in memory. Reservations are approved in the order of the pool
+     * for as long as there are seats left. Only the users in pending are decided.
+     */
+    private void decide(Timeslot timeslot, List<LocationReservation> pool, Set<String> pending, LocalDateTime now,
+                        PoolDecision decision) {
+        PoolDecision.RejectionReason poolRejection = PoolDecision.poolRejection(timeslot.isReservable(),
+                timeslot.getReservableFrom(), now);
+        if (poolRejection != null) {
+            logger.warn(String.format("Invalid state. Pool of timeslot %d rejected: %s", timeslot.getTimeslotSeqnr(), poolRejection));
+        }
+
+        int freeSeats = timeslot.getSeatCount() - timeslot.getAmountOfReservations();
+        for (LocationReservation reservation : pool) {
+            // Removing the user makes sure a user that occurs twice in the pool is only decided once.
+            String userId = reservation.getId().userId;
+            if (!pending.remove(userId)) {
+                continue;
+            }
+            if (poolRejection != null) {
+                decision.reject(userId, poolRejection);
+            } else if (freeSeats > 0) {
+                decision.approve(userId);
+                freeSeats--;
+            } else {
+                decision.reject(userId, PoolDecision.RejectionReason.FULL);
+            }
+        }
+    }
+
+    private Set<String> findPendingUserIds(int timeslotSeqnr, List<LocationReservation> pool) {
+        List<String> userIds = new ArrayList<>();
+        for (LocationReservation reservation : pool) {
+            userIds.add(reservation.getId().userId);
+        }
+        Set<String> pending = new HashSet<>();
+        for (List<String> chunk : chunks(userIds)) {
+            pending.addAll(reservationRepository.findPendingUserIdsOfTimeslot(timeslotSeqnr, chunk));
+        }
+        return pending;
+    }
+
+    private int updateStateOfPending(int timeslotSeqnr, List<String> userIds, LocationReservation.State state, LocalDateTime now) {
+        int updated = 0;
+        for (List<String> chunk : chunks(userIds)) {
+            updated += reservationRepository.updateStateOfPending(timeslotSeqnr, chunk, state.name(), now);
+        }
+        return updated;
+    }
+
+    /**
+     * @return : The users of which the reservation was still pending, and is updated.
+     */
+    private Set<String> updatePending(int timeslotSeqnr, List<String> userIds, LocationReservation.State state, LocalDateTime now) {
+        Set<String> updated = new HashSet<>();
+        for (List<String> chunk : chunks(userIds)) {
+            updated.addAll(reservationRepository.updateStateOfPendingReturningUserIds(timeslotSeqnr, chunk, state.name(), now));
+        }
+        return updated;
+    }
+
+    private static <T> List<List<T>> chunks(List<T> ids) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += MAX_IDS_PER_STATEMENT) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + MAX_IDS_PER_STATEMENT)));
+        }
+        return chunks;
+    }
+
+}
@@ -0,0 +1,495 @@
+package blok2.daos.services;
+
+import blok2.daos.repositories.TimeslotRepository;
+import blok2.model.calendar.Timeslot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the timeslots of the locations in memory, per location sorted by date, closing hour and sequence number.
+ * The current or next timeslot of a location, and its timeslots on or after a date, are looked up in O(log n)
+ * without going to the database.
+ *
+ * Only the timeslots of the window are kept: those from windowDays ago onwards. Older timeslots are only looked up
+ * in the past, callers check whether a date is in the window with covers() and ask the database otherwise. The
+ * window moves along with every reconcile, which drops the dates that fell out of it.
+ *
+ * The timeslots of the window are loaded at startup, so that a lookup never has to take a database connection while
+ * its request may hold one already. They are kept up to date by every write once its transaction commits: TimeslotService for
+ * the timeslots, LocationService for the deletion of a location and every path that changes reservation_count for
+ * the amount of reservations (cfr. SeatLedger). A location of which the timeslots change while they are being loaded
+ * is not kept, it is picked up by the next reconcile.
+ *
+ * The database stays the source of truth: the index is reconciled against it regularly, which also picks up the
+ * writes of other backend instances. A change of the amount of reservations that is stored outside of a transaction
+ * is applied right away, a location that is loaded at that very moment may count it twice until the next reconcile.
+ */
+@Service
+public class TimeslotIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeslotIndex.class);
+
+    private static final Comparator<Timeslot> ORDER = Comparator.comparing(Timeslot::timeslotDate)
+            .thenComparing(Timeslot::getClosingHour, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Timeslot::getTimeslotSeqnr);
+
+    private final TimeslotRepository timeslotRepository;
+    private final DataVersions dataVersions;
+    private final int windowDays;
+    // The index is loaded from the primary, in a transaction of its own. This only happens at startup and while
+    // reconciling, never within a request.
+    private final TransactionTemplate primary;
+
+    // The timeslots of every location that has any, sorted by ORDER. The timeslots are never modified once they
+    // are in the index, a change replaces them.
+    private final Map<Integer, NavigableMap<Timeslot, Timeslot>> locations = new ConcurrentHashMap<>();
+    private final Map<Integer, Timeslot> timeslots = new ConcurrentHashMap<>();
+    // Only changed while holding this. Every timeslot on or after this date is in the index, none before it.
+    private volatile LocalDate windowStart;
+
+    // Guarded by this. Changes of the amount of reservations of a timeslot of which the transaction has not completed yet.
+    private final Map<Integer, Integer> pending = new HashMap<>();
+    // Guarded by this. While the database is being read, the moment at which a timeslot or location last changed.
+    private final Map<Integer, Long> changedTimeslots = new HashMap<>();
+    private final Map<Integer, Long> changedLocations = new HashMap<>();
+    private long changes = 0;
+    private int readers = 0;
+
+    @Autowired
+    public TimeslotIndex(TimeslotRepository timeslotRepository, DataVersions dataVersions,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${custom.timeslots.index.windowDays:14}") int windowDays) {
+        this.timeslotRepository = timeslotRepository;
+        this.dataVersions = dataVersions;
+        this.windowDays = windowDays;
+        this.windowStart = LocalDate.now().minusDays(windowDays);
+        this.primary = new TransactionTemplate(transactionManager);
+        this.primary.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.load();
+    }
+
+    /**
+     * @return : Whether the timeslots on and after the given date are in the index.
+     */
+    public boolean covers(LocalDate date) {
+        return !date.isBefore(windowStart);
+    }
+
+    /**
+     * @return : The timeslot of the location that is open at the given moment, or else the first one that opens after it.
+     *           The moment must be in the window (cfr. covers()).
+     */
+    public Optional<Timeslot> getCurrentOrNextTimeslot(int locationId, LocalDateTime now) {
+        // The first timeslot that closes after now, no timeslot has Integer.MAX_VALUE as sequence number.
+        Map.Entry<Timeslot, Timeslot> entry = timeslotsOf(locationId)
+                .ceilingEntry(probe(now.toLocalDate(), now.toLocalTime(), Integer.MAX_VALUE));
+        return entry == null ? Optional.empty() : Optional.of(copyOf(entry.getValue()));
+    }
+
+    /**
+     * @return : The timeslots of the location on the given date, ordered by closing hour. Empty for a date before
+     *           the window (cfr. covers()).
+     */
+    public List<Timeslot> getTimeslotsOnDate(int locationId, LocalDate date) {
+        return copiesOf(timeslotsOf(locationId).subMap(firstOf(date), true, firstOf(date.plusDays(1)), false));
+    }
+
+    /**
+     * @return : The timeslots of the location after the given date, ordered by date and closing hour. Only those
+     *           in the window (cfr. covers()).
+     */
+    public List<Timeslot> getTimeslotsAfterDate(int locationId, LocalDate date) {
+        return copiesOf(timeslotsOf(locationId).tailMap(firstOf(date.plusDays(1)), true));
+    }
+
+    /**
+     * @return : The location of the timeslot, if the timeslot is in the index.
+     */
+    public Optional<Integer> locationOf(int timeslotSeqnr) {
+        Timeslot timeslot = timeslots.get(timeslotSeqnr);
+        return timeslot == null ? Optional.empty() : Optional.of(timeslot.getLocationId());
+    }
+
+    /**
+     * Adds the timeslot to the index, or replaces it, once the transaction commits. The amount of reservations
+     * of a timeslot that is already in the index is kept, that one is kept up to date by reservationsChanged().
+     * A timeslot that is moved before the window leaves the index.
+     */
+    public void timeslotSaved(Timeslot timeslot) {
+        Timeslot saved = copyOf(timeslot);
+        afterCommit(() -> {
+            changedLocation(saved.getLocationId());
+            Timeslot previous = timeslots.get(saved.getTimeslotSeqnr());
+            if (previous != null) {
+                changedLocation(previous.getLocationId());
+                saved.setAmountOfReservations(previous.getAmountOfReservations());
+            }
+            if (saved.timeslotDate() != null && covers(saved.timeslotDate())) {
+                put(saved);
+            } else if (previous != null) {
+                timeslots.remove(previous.getTimeslotSeqnr());
+                drop(previous);
+            }
+        });
+    }
+
+    public void timeslotDeleted(int timeslotSeqnr) {
+        afterCommit(() -> {
+            changedTimeslot(timeslotSeqnr);
+            Timeslot previous = timeslots.remove(timeslotSeqnr);
+            if (previous != null) {
+                changedLocation(previous.getLocationId());
+                drop(previous);
+            }
+        });
+    }
+
+    /**
+     * The timeslots of a location are deleted with it.
+     */
+    public void locationDeleted(int locationId) {
+        afterCommit(() -> {
+            changedLocation(locationId);
+            NavigableMap<Timeslot, Timeslot> deleted = locations.remove(locationId);
+            if (deleted != null) {
+                deleted.values().forEach(timeslot -> timeslots.remove(timeslot.getTimeslotSeqnr()));
+            }
+        });
+    }
+
+    /**
+     * Registers a change of the amount of reservations of the timeslot (reservation_count). If called within a
+     * transaction, the index is only updated once the transaction commits.
+     */
+    public void reservationsChanged(int timeslotSeqnr, int amount) {
+        if (amount == 0) {
+            return;
+        }
+        Runnable change = () -> {
+            changedTimeslot(timeslotSeqnr);
+            Timeslot current = timeslots.get(timeslotSeqnr);
+            if (current != null) {
+                Timeslot changed = copyOf(current);
+                changed.setAmountOfReservations(current.getAmountOfReservations() + amount);
+                put(changed);
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (this) {
+                change.run();
+            }
+            return;
+        }
+        // The timeslot is not loaded while the change is pending, the database may or may not contain it yet.
+        synchronized (this) {
+            pending.merge(timeslotSeqnr, 1, Integer::sum);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (TimeslotIndex.this) {
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        change.run();
+                    }
+                    pending.computeIfPresent(timeslotSeqnr, (seqnr, count) -> count == 1 ? null : count - 1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops all timeslots from the index and loads the window again, e.g. when the database has been reset.
+     */
+    public void reload() {
+        synchronized (this) {
+            locations.clear();
+            timeslots.clear();
+            windowStart = LocalDate.now().minusDays(windowDays);
+        }
+        load();
+    }
+
+    private void load() {
+        long since = startReading();
+        try {
+            LocalDate from = windowStart;
+            Map<Integer, NavigableMap<Timeslot, Timeslot>> read = sorted(readFromPrimary(() -> timeslotRepository.getAllFromTimeslotDate(from)));
+            synchronized (this) {
+                read.forEach((locationId, locationTimeslots) -> {
+                    if (!locations.containsKey(locationId) && unchangedSince(since, locationId, locationTimeslots.values())) {
+                        install(locationId, locationTimeslots);
+                    }
+                });
+            }
+            logger.info(String.format("Timeslot index loaded with %d timeslots of %d locations", timeslots.size(), locations.size()));
+        } finally {
+            stopReading();
+        }
+    }
+
+    /**
+     * Moves the window up to windowDays ago, then compares the index against the database and corrects it when it
+     * drifted away, e.g. because another backend instance changed the timeslots. Locations that changed while the
+     * database was being read are skipped.
+     */
+    @Scheduled(fixedDelayString = "${custom.timeslots.index.reconcileIntervalMs:60000}")
+    public void reconcile() {
+        reconcile(LocalDate.now().minusDays(windowDays));
+    }
+
+    /**
+     * reconcile(), with the window starting at the given date. The window only moves forward.
+     */
+    public void reconcile(LocalDate from) {
+        long since = startReading();
+        try {
+            LocalDate start = from.isAfter(windowStart) ? from : windowStart;
+            Map<Integer, NavigableMap<Timeslot, Timeslot>> read = sorted(readFromPrimary(() -> timeslotRepository.getAllFromTimeslotDate(start)));
+
+            synchronized (this) {
+                moveWindow(start);
+                Set<Integer> locationIds = new HashSet<>(locations.keySet());
+                locationIds.addAll(read.keySet());
+                for (Integer locationId : locationIds) {
+                    NavigableMap<Timeslot, Timeslot> current = locations.getOrDefault(locationId, new ConcurrentSkipListMap<>(ORDER));
+                    NavigableMap<Timeslot, Timeslot> expected = read.getOrDefault(locationId, new ConcurrentSkipListMap<>(ORDER));
+                    if (!unchangedSince(since, locationId, expected.values())) {
+                        continue;
+                    }
+                    boolean sameTimeslots = sameTimeslots(current, expected);
+                    if (sameTimeslots && sameAmountsOfReservations(current, expected)) {
+                        continue;
+                    }
+                    logger.warn(String.format("Timeslot index drifted for location %d, reloaded it from the database", locationId));
+                    install(locationId, expected);
+                    // The responses that were built from the index have changed as well.
+                    if (sameTimeslots) {
+                        dataVersions.reservationsChanged(locationId);
+                    } else {
+                        dataVersions.locationChanged(locationId);
+                    }
+                }
+            }
+        } finally {
+            stopReading();
+        }
+    }
+
+    /**
+     * Drops the timeslots before the new start of the window, and the locations that have none left.
+     */
+    private void moveWindow(LocalDate start) {
+        if (!start.isAfter(windowStart)) {
+            return;
+        }
+        windowStart = start;
+        for (NavigableMap<Timeslot, Timeslot> location : locations.values()) {
+            NavigableMap<Timeslot, Timeslot> before = location.headMap(firstOf(start), false);
+            before.values().forEach(timeslot -> timeslots.remove(timeslot.getTimeslotSeqnr()));
+            before.clear();
+        }
+        locations.values().removeIf(Map::isEmpty);
+    }
+
+    /**
+     * Every location that has timeslots in the window is in the index, a location that is not has none.
+     */
+    private NavigableMap<Timeslot, Timeslot> timeslotsOf(int locationId) {
+        return locations.getOrDefault(locationId, Collections.emptyNavigableMap());
+    }
+
+    private <T> T readFromPrimary(Supplier<T> read) {
+        return primary.execute(status -> read.get());
+    }
+
+    private synchronized long startReading() {
+        readers++;
+        return changes;
+    }
+
+    private synchronized void stopReading() {
+        // The moments of the changes only matter to the readers that started before them.
+        if (--readers == 0) {
+            changedTimeslots.clear();
+            changedLocations.clear();
+        }
+    }
+
+    private void changedTimeslot(int timeslotSeqnr) {
+        if (readers > 0) {
+            changedTimeslots.put(timeslotSeqnr, ++changes);
+        }
+    }
+
+    private void changedLocation(int locationId) {
+        if (readers > 0) {
+            changedLocations.put(locationId, ++changes);
+        }
+    }
+
+    /**
+     * @param read : The timeslots of the location, as they were read from the database since the given moment.
+     * @return : Whether the timeslots were not changed since, so that they are still up to date.
+     */
+    private boolean unchangedSince(long since, int locationId, Collection<Timeslot> read) {
+        if (changedLocations.getOrDefault(locationId, 0L) > since) {
+            return false;
+        }
+        for (Timeslot timeslot : read) {
+            int seqnr = timeslot.getTimeslotSeqnr();
+            if (pending.containsKey(seqnr) || changedTimeslots.getOrDefault(seqnr, 0L) > since) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void install(int locationId, NavigableMap<Timeslot, Timeslot> read) {
+        NavigableMap<Timeslot, Timeslot> previous = locations.put(locationId, read);
+        if (previous != null) {
+            previous.values().forEach(timeslot -> timeslots.remove(timeslot.getTimeslotSeqnr()));
+        }
+        read.values().forEach(timeslot -> timeslots.put(timeslot.getTimeslotSeqnr(), timeslot));
+    }
+
+    private void put(Timeslot timeslot) {
+        Timeslot previous = timeslots.remove(timeslot.getTimeslotSeqnr());
+        locations.computeIfAbsent(timeslot.getLocationId(), locationId -> new ConcurrentSkipListMap<>(ORDER))
+                .put(timeslot, timeslot);
+        timeslots.put(timeslot.getTimeslotSeqnr(), timeslot);
+        // The previous one is only dropped now, so that the timeslot is never missing while it is replaced.
+        if (previous != null && (previous.getLocationId() != timeslot.getLocationId()
+                || ORDER.compare(previous, timeslot) != 0)) {
+            drop(previous);
+        }
+    }
+
+    private void drop(Timeslot timeslot) {
+        NavigableMap<Timeslot, Timeslot> location = locations.get(timeslot.getLocationId());
+        if (location != null) {
+            location.remove(timeslot);
+        }
+    }
+
+    private void afterCommit(Runnable change) {
+        Runnable synchronizedChange = () -> {
+            synchronized (this) {
+                change.run();
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronizedChange.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                synchronizedChange.run();
+            }
+        });
+    }
+
+    /**
+     * @return : The timeslots by location, sorted by ORDER. Timeslots without a date can't be ordered and are left out.
+     */
+    private static Map<Integer, NavigableMap<Timeslot, Timeslot>> sorted(List<Timeslot> read) {
+        Map<Integer, NavigableMap<Timeslot, Timeslot>> sorted = new HashMap<>();
+        for (Timeslot timeslot : read) {
+            if (timeslot.timeslotDate() == null) {
+                continue;
+            }
+            Timeslot copy = copyOf(timeslot);
+            sorted.computeIfAbsent(copy.getLocationId(), locationId -> new ConcurrentSkipListMap<>(ORDER)).put(copy, copy);
+        }
+        return sorted;
+    }
+
+    private static boolean sameTimeslots(NavigableMap<Timeslot, Timeslot> current, NavigableMap<Timeslot, Timeslot> expected) {
+        if (current.size() != expected.size()) {
+            return false;
+        }
+        Iterator<Timeslot> expectedTimeslots = expected.values().iterator();
+        for (Timeslot timeslot : current.values()) {
+            Timeslot other = expectedTimeslots.next();
+            if (!Objects.equals(timeslot.getTimeslotSeqnr(), other.getTimeslotSeqnr())
+                    || !Objects.equals(timeslot.timeslotDate(), other.timeslotDate())
+                    || !Objects.equals(timeslot.getOpeningHour(), other.getOpeningHour())
+                    || !Objects.equals(timeslot.getClosingHour(), other.getClosingHour())
+                    || !Objects.equals(timeslot.getSeatCount(), other.getSeatCount())
+                    || timeslot.isReservable() != other.isReservable()
+                    || !Objects.equals(timeslot.getReservableFrom(), other.getReservableFrom())
+                    || !Objects.equals(timeslot.getTimeslotGroup(), other.getTimeslotGroup())
+                    || timeslot.isRepeatable() != other.isRepeatable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only called for the same timeslots (cfr. sameTimeslots), in the same order.
+     */
+    private static boolean sameAmountsOfReservations(NavigableMap<Timeslot, Timeslot> current, NavigableMap<Timeslot, Timeslot> expected) {
+        Iterator<Timeslot> expectedTimeslots = expected.values().iterator();
+        for (Timeslot timeslot : current.values()) {
+            if (timeslot.getAmountOfReservations() != expectedTimeslots.next().getAmountOfReservations()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Timeslot> copiesOf(NavigableMap<Timeslot, Timeslot> timeslots) {
+        List<Timeslot> copies = new ArrayList<>(timeslots.size());
+        for (Timeslot timeslot : timeslots.values()) {
+            copies.add(copyOf(timeslot));
+        }
+        return copies;
+    }
+
+    /**
+     * The timeslots in the index are shared between requests, callers get a copy of their own.
+     */
+    private static Timeslot copyOf(Timeslot timeslot) {
+        Timeslot copy = new Timeslot(timeslot.getTimeslotSeqnr(), timeslot.timeslotDate(), timeslot.getOpeningHour(),
+                timeslot.getClosingHour(), timeslot.isReservable(), timeslot.getReservableFrom(),
+                timeslot.getSeatCount(), timeslot.getLocationId());
+        copy.setAmountOfReservations(timeslot.getAmountOfReservations());
+        copy.setTimeslotGroup(timeslot.getTimeslotGroup());
+        copy.setRepeatable(timeslot.isRepeatable());
+        return copy;
+    }
+
+    /**
+     * @return : A timeslot to look up a position in the index with, it is only compared by ORDER.
+     */
+    private static Timeslot probe(LocalDate date, LocalTime closingHour, int timeslotSeqnr) {
+        return new Timeslot(timeslotSeqnr, date, null, closingHour, false, null, 0, 0);
+    }
+
+    /**
+     * @return : A probe that comes before every timeslot on the date, a null closing hour comes first.
+     */
+    private static Timeslot firstOf(LocalDate date) {
+        return probe(date, null, Integer.MIN_VALUE);
+    }
+
+}
@@ -5,14 +5,19 @@ import blok2.daos.repositories.TimeslotRepository;
 import blok2.helpers.exceptions.InvalidRequestParametersException;
 import blok2.model.calendar.Timeslot;
 import blok2.model.reservables.Location;
+import blok2.scheduling.ReservationPartitionMaintenance;
+import blok2.scheduling.SeatLedger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -21,29 +26,62 @@ public class TimeslotService implements ITimeslotDao {
 
     private final TimeslotRepository timeslotRepository;
     private final LocationService locationService;
+    private final SeatLedger seatLedger;
+    private final DataVersions dataVersions;
+    private final TimeslotIndex timeslotIndex;
+    private final ReservationPartitionMaintenance partitionMaintenance;
 
     @Autowired
-    public TimeslotService(TimeslotRepository repo, LocationService locationService) {
+    public TimeslotService(TimeslotRepository repo, LocationService locationService, SeatLedger seatLedger,
+                           DataVersions dataVersions, TimeslotIndex timeslotIndex,
+                           ReservationPartitionMaintenance partitionMaintenance) {
         this.timeslotRepository = repo;
         this.locationService = locationService;
+        this.seatLedger = seatLedger;
+        this.dataVersions = dataVersions;
+        this.timeslotIndex = timeslotIndex;
+        this.partitionMaintenance = partitionMaintenance;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<Timeslot> getTimeslotsOfLocation(int locationId) {
         return this.timeslotRepository.getAllByLocationId(locationId);
     }
 
     @Override
     public List<Timeslot> getTimeslotsOfLocationAfterTimeslotDate(int locationId, LocalDate timeslotDate) {
+        if (this.timeslotIndex.covers(timeslotDate.plusDays(1))) {
+            return this.timeslotIndex.getTimeslotsAfterDate(locationId, timeslotDate);
+        }
         return this.timeslotRepository.getAllByLocationIdAndAfterTimeslotDate(locationId, timeslotDate);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Timeslot> getTimeslotsOfLocationAfter(int locationId, LocalDate timeslotDate, int timeslotSeqnr, int limit) {
+        return this.timeslotRepository.getAllByLocationIdAfter(locationId, timeslotDate, timeslotSeqnr, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Get the timeslots of the location in the week after the given date, and the timeslots of the location that
+     * become reservable after the given moment. Ordered by date.
+     */
+    @Transactional(readOnly = true)
+    public List<Timeslot> getTimeslotsOfLocationInWeekOrReservableAfter(int locationId, LocalDate date, LocalDateTime reservableAfter) {
+        return this.timeslotRepository.getAllByLocationIdBetweenOrReservableAfter(locationId, date, date.plusDays(8), reservableAfter);
+    }
+
     @Override
     public List<Timeslot> getTimeslotsOfLocationOnTimeslotDate(int locationId, LocalDate timeslotDate) {
+        if (this.timeslotIndex.covers(timeslotDate)) {
+            return this.timeslotIndex.getTimeslotsOnDate(locationId, timeslotDate);
+        }
         return this.timeslotRepository.getAllByLocationIdAndOnTimeslotDate(locationId, timeslotDate);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Timeslot getTimeslot(int timeslotSeqNr) {
         return timeslotRepository.getByTimeslotSeqnr(timeslotSeqNr);
     }
@@ -61,7 +99,16 @@ public class TimeslotService implements ITimeslotDao {
             }
 
         }
-        return timeslotRepository.saveAll(timeslot);
+        List<Timeslot> added = timeslotRepository.saveAll(timeslot);
+        int lastSeqnr = 0;
+        for (Timeslot t : added) {
+            timeslotIndex.timeslotSaved(t);
+            dataVersions.locationChanged(t.getLocationId());
+            lastSeqnr = Math.max(lastSeqnr, t.getTimeslotSeqnr());
+        }
+        // A bulk of timeslots may need partitions that the nightly maintenance did not create yet.
+        partitionMaintenance.timeslotCreated(lastSeqnr);
+        return added;
     }
 
     @Override
@@ -71,17 +118,25 @@ public class TimeslotService implements ITimeslotDao {
         if (timeslot.getTimeslotGroup() == null) {
             timeslot.setTimeslotGroup(UUID.randomUUID());
         }
-        return timeslotRepository.save(timeslot);
+        Timeslot added = timeslotRepository.save(timeslot);
+        timeslotIndex.timeslotSaved(added);
+        dataVersions.locationChanged(added.getLocationId());
+        partitionMaintenance.timeslotCreated(added.getTimeslotSeqnr());
+        return added;
     }
 
     @Override
     public void deleteTimeslot(Timeslot timeslot) {
         timeslotRepository.deleteTimeslotByTimeslotSeqnr(timeslot.getTimeslotSeqnr());
+        seatLedger.invalidate(timeslot.getTimeslotSeqnr());
+        timeslotIndex.timeslotDeleted(timeslot.getTimeslotSeqnr());
+        dataVersions.locationChanged(timeslot.getLocationId());
     }
 
     @Override
     public Timeslot updateTimeslot(Timeslot timeslot) {
         Timeslot original = timeslotRepository.getByTimeslotSeqnr(timeslot.getTimeslotSeqnr());
+        int previousLocationId = original.getLocationId();
 
         original.setTimeslotDate(timeslot.timeslotDate());
         original.setOpeningHour(timeslot.getOpeningHour());
@@ -91,12 +146,30 @@ public class TimeslotService implements ITimeslotDao {
         original.setReservable(timeslot.isReservable());
         original.setReservableFrom(timeslot.getReservableFrom());
 
-        return timeslotRepository.save(original);
+        Timeslot updated = timeslotRepository.save(original);
+        seatLedger.timeslotChanged(updated);
+        timeslotIndex.timeslotSaved(updated);
+        dataVersions.locationChanged(previousLocationId);
+        dataVersions.locationChanged(updated.getLocationId());
+        return updated;
     }
 
     @Override
     public Optional<Timeslot> getCurrentOrNextTimeslot(int locationId) {
-        LocalDateTime time = LocalDateTime.now();
-        return this.timeslotRepository.getCurrentOrNextTimeslot(locationId, time.toLocalDate(), LocalTime.from(time), PageRequest.of(0, 1)).stream().findFirst();
+        return this.timeslotIndex.getCurrentOrNextTimeslot(locationId, LocalDateTime.now());
+    }
+
+    /**
+     * Get the current or next timeslot of each of the locations, from the index.
+     * @return : The timeslots by location id. Locations without a current or next timeslot have no entry.
+     */
+    public Map<Integer, Timeslot> getCurrentOrNextTimeslots(Collection<Integer> locationIds) {
+        Map<Integer, Timeslot> timeslots = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Integer locationId : locationIds) {
+            this.timeslotIndex.getCurrentOrNextTimeslot(locationId, now)
+                    .ifPresent(timeslot -> timeslots.put(locationId, timeslot));
+        }
+        return timeslots;
     }
 }
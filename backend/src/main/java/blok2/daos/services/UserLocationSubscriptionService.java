@@ -14,19 +14,24 @@ import java.util.stream.Collectors;
 public class UserLocationSubscriptionService implements IUserLocationSubscriptionDao {
 
     private final UserLocationSubscriptionRepository userLocationSubscriptionRepository;
+    private final DataVersions dataVersions;
 
-    public UserLocationSubscriptionService(UserLocationSubscriptionRepository userLocationSubscriptionRepository) {
+    public UserLocationSubscriptionService(UserLocationSubscriptionRepository userLocationSubscriptionRepository,
+                                           DataVersions dataVersions) {
         this.userLocationSubscriptionRepository = userLocationSubscriptionRepository;
+        this.dataVersions = dataVersions;
     }
 
     @Override
     public void subscribeToLocation(Location location, User user) {
         userLocationSubscriptionRepository.save(new UserLocationSubscription(user, location));
+        dataVersions.subscriptionsChanged(location.getLocationId());
     }
 
     @Override
     public void unsubscribeFromLocation(Location location, User user) {
         userLocationSubscriptionRepository.deleteByLocationAndUser(location, user);
+        dataVersions.subscriptionsChanged(location.getLocationId());
     }
 
     @Override
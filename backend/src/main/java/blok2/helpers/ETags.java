@@ -0,0 +1,61 @@
+package blok2.helpers;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Conditional GET requests. The ETags of the public read endpoints are handed out by DataVersions: a request of which
+ * the If-None-Match header contains the ETag that the resource still has, is answered with 304 Not Modified, without
+ * reading or serializing the resource.
+ *
+ * The responses are sent with Cache-Control: no-cache, so that clients keep them and revalidate them on every use,
+ * instead of the no-store that is sent by default.
+ */
+public class ETags {
+
+    /**
+     * @param ifNoneMatch : The If-None-Match header of the request, null if absent.
+     * @param etag : The current ETag of the resource, null if it is not known without building the resource.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match uses the weak comparison.
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return : The ETag of the variant of a response for one user, e.g. with whether the user is subscribed.
+     */
+    public static String forUser(String etag, String userId) {
+        if (etag == null || userId == null) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + "-" + Integer.toHexString(userId.hashCode()) + "\"";
+    }
+
+    public static ResponseEntity.BodyBuilder ok(String etag) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache());
+    }
+
+    public static <T> ResponseEntity<T> withEtag(ResponseEntity<T> response, String etag) {
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+                .eTag(etag).cacheControl(CacheControl.noCache()).body(response.getBody());
+    }
+
+    public static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+    }
+
+}
@@ -0,0 +1,76 @@
+package blok2.helpers;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset pagination of list endpoints. A page continues after the sort key of the last item of the previous page,
+ * so that every page costs the same, however far the client pages. The sort key of the last item is handed to the
+ * client as an opaque token: the items of the page are the body of the response, the token of the next page is
+ * the X-Next-Page-Token header. The header is absent on the last page.
+ */
+public class KeysetPage {
+
+    public static final String NEXT_PAGE_TOKEN_HEADER = "X-Next-Page-Token";
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * @param limit : The page size that the client asked for, null for the largest page size.
+     */
+    public static int pageSize(Integer limit) {
+        if (limit == null) {
+            return MAX_PAGE_SIZE;
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The limit must be positive.");
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    public static String encode(Object... sortKey) {
+        StringBuilder token = new StringBuilder();
+        for (Object part : sortKey) {
+            if (token.length() > 0) {
+                token.append(SEPARATOR);
+            }
+            token.append(part);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param parser : Parses the parts of the sort key that were given to encode().
+     */
+    public static <K> K decode(String token, Function<String[], K> parser) {
+        try {
+            String sortKey = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            return parser.apply(sortKey.split(SEPARATOR, -1));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page token.");
+        }
+    }
+
+    /**
+     * @param items : The items of the page, fetched with one more than pageSize to know whether there is a next page.
+     * @param sortKeyOf : The token of the next page, if it would continue after the given item.
+     */
+    public static <T> ResponseEntity<List<T>> response(List<T> items, int pageSize, Function<T, String> sortKeyOf) {
+        if (items.size() <= pageSize) {
+            return ResponseEntity.ok(items);
+        }
+        List<T> page = items.subList(0, pageSize);
+        return ResponseEntity.ok()
+                .header(NEXT_PAGE_TOKEN_HEADER, sortKeyOf.apply(page.get(pageSize - 1)))
+                .body(page);
+    }
+
+}
@@ -54,6 +54,11 @@ public class LocationReservation {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    // The moment (epoch millis) at which the reservation was put in the reservation queue.
+    @Transient
+    @JsonIgnore
+    private long enqueuedAt;
+
     public LocationReservation() {
     }
     
@@ -129,6 +134,16 @@ public class LocationReservation {
         this.updatedAt = updatedAt;
     }
 
+    @JsonIgnore
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    @JsonIgnore
+    public void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+
     //</editor-fold>
 
     @Override
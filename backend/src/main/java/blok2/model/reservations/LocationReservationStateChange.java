@@ -0,0 +1,33 @@
+package blok2.model.reservations;
+
+/**
+ * Pushed to a user when one of their reservations got decided.
+ */
+public class LocationReservationStateChange {
+
+    private final int timeslotSeqnr;
+
+    private final LocationReservation.State state;
+
+    // Why the reservation was rejected, null if it was approved.
+    private final String reason;
+
+    public LocationReservationStateChange(int timeslotSeqnr, LocationReservation.State state, String reason) {
+        this.timeslotSeqnr = timeslotSeqnr;
+        this.state = state;
+        this.reason = reason;
+    }
+
+    public int getTimeslotSeqnr() {
+        return timeslotSeqnr;
+    }
+
+    public LocationReservation.State getState() {
+        return state;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+}
@@ -0,0 +1,68 @@
+package blok2.model.stats;
+
+/**
+ * The thresholds and the current state of the admission control of the reservation queue.
+ */
+public class AdmissionStat {
+
+    private final boolean enabled;
+
+    private final int maxQueueDepth;
+
+    private final long maxLagMs;
+
+    private final int queueDepth;
+
+    private final long lagMs;
+
+    private final double decisionsPerSecond;
+
+    private final long rejectedOnQueueDepth;
+
+    private final long rejectedOnLag;
+
+    public AdmissionStat(boolean enabled, int maxQueueDepth, long maxLagMs, int queueDepth, long lagMs,
+                         double decisionsPerSecond, long rejectedOnQueueDepth, long rejectedOnLag) {
+        this.enabled = enabled;
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxLagMs = maxLagMs;
+        this.queueDepth = queueDepth;
+        this.lagMs = lagMs;
+        this.decisionsPerSecond = decisionsPerSecond;
+        this.rejectedOnQueueDepth = rejectedOnQueueDepth;
+        this.rejectedOnLag = rejectedOnLag;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getMaxLagMs() {
+        return maxLagMs;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getLagMs() {
+        return lagMs;
+    }
+
+    public double getDecisionsPerSecond() {
+        return decisionsPerSecond;
+    }
+
+    public long getRejectedOnQueueDepth() {
+        return rejectedOnQueueDepth;
+    }
+
+    public long getRejectedOnLag() {
+        return rejectedOnLag;
+    }
+
+}
@@ -0,0 +1,182 @@
+package blok2.scheduling;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free multi-producer/single-consumer queue that is drained as a whole. Elements are stored in
+ * array-backed chunks, so only one chunk is allocated per chunkSize elements instead of one node per
+ * element. Drained elements come out in the order in which they were added (FIFO).
+ *
+ * add() may be called from any thread. drainTo() may only be called by one thread at a time.
+ */
+public class ChunkedMpscQueue<T> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    // Marks a chunk that was taken by the consumer. Producers that claim a slot in it afterwards
+    // will see an index past the end of the chunk and move on to the current tail.
+    private static final int CLOSED = Integer.MAX_VALUE / 2;
+
+    private final int chunkSize;
+    private final int capacity;
+
+    // The chunk producers are currently adding to.
+    private final AtomicReference<Chunk<T>> tail;
+    // The first chunk that was not drained yet. Only used by the consumer.
+    private Chunk<T> head;
+
+    // Only kept up to date if the queue is bounded.
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    public ChunkedMpscQueue() {
+        this(DEFAULT_CHUNK_SIZE, UNBOUNDED);
+    }
+
+    public ChunkedMpscQueue(int chunkSize) {
+        this(chunkSize, UNBOUNDED);
+    }
+
+    public ChunkedMpscQueue(int chunkSize, int capacity) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, got " + chunkSize);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        this.chunkSize = chunkSize;
+        this.capacity = capacity;
+        this.head = new Chunk<>(chunkSize, 0);
+        this.tail = new AtomicReference<>(head);
+    }
+
+    /**
+     * Adds an element to the queue and returns the amount of elements currently stored
+     * in the queue. If the queue is bounded and full, the element is not added.
+     * @return : The amount of elements currently stored in the queue (1 if the queue was empty),
+     *           or 0 if the queue is full.
+     * NON-BLOCKING
+     */
+    public int add(T element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements are not supported");
+        }
+        if (capacity != UNBOUNDED && !reserveCapacity()) {
+            return 0;
+        }
+        while (true) {
+            Chunk<T> chunk = tail.get();
+            int index = chunk.claimed.getAndIncrement();
+            if (index < chunkSize) {
+                chunk.slots.lazySet(index, element);
+                return chunk.offset + index + 1;
+            }
+            if (index < CLOSED) {
+                // The chunk is full, help moving the tail to the next chunk.
+                Chunk<T> next = chunk.next.get();
+                if (next == null) {
+                    chunk.next.compareAndSet(null, new Chunk<>(chunkSize, chunk.offset + chunkSize));
+                    next = chunk.next.get();
+                }
+                tail.compareAndSet(chunk, next);
+            }
+            // Else the chunk was drained in the meantime. A new tail is already in place.
+        }
+    }
+
+    /**
+     * Moves all elements of the queue into the batch, in the order in which they were added.
+     * @return : The amount of elements that were moved.
+     */
+    public int drainTo(Collection<? super T> batch) {
+        Chunk<T> first = head;
+        if (first == tail.get() && first.claimed.get() == 0) {
+            return 0;
+        }
+        Chunk<T> fresh = new Chunk<>(chunkSize, 0);
+        Chunk<T> last = tail.getAndSet(fresh);
+        head = fresh;
+
+        int drained = 0;
+        Chunk<T> chunk = first;
+        while (true) {
+            // Every chunk before the last one is full. The last one is closed, so no slots can be claimed anymore.
+            int claimed = chunk == last ? chunk.claimed.getAndSet(CLOSED) : chunk.claimed.get();
+            int count = Math.min(claimed, chunkSize);
+            for (int i = 0; i < count; i++) {
+                batch.add(await(chunk, i));
+            }
+            drained += count;
+            if (chunk == last) {
+                break;
+            }
+            chunk = chunk.next.get();
+        }
+        if (capacity != UNBOUNDED) {
+            size.addAndGet(-drained);
+        }
+        return drained;
+    }
+
+    /**
+     * Estimates the amount of elements in the queue. The result is only exact if no elements are being
+     * added or drained at the same time.
+     */
+    public int size() {
+        if (capacity != UNBOUNDED) {
+            return size.get();
+        }
+        Chunk<T> chunk = tail.get();
+        return chunk.offset + Math.min(chunk.claimed.get(), chunkSize);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private boolean reserveCapacity() {
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A producer may have claimed a slot without having written to it yet. It does so right away,
+     * so waiting for it never takes long.
+     */
+    private static <T> T await(Chunk<T> chunk, int index) {
+        T element;
+        while ((element = chunk.slots.get(index)) == null) {
+            Thread.yield();
+        }
+        return element;
+    }
+
+    private static class Chunk<T> {
+        final AtomicReferenceArray<T> slots;
+        // The amount of slots claimed by producers. Can exceed the size of the chunk when it is full.
+        final AtomicInteger claimed = new AtomicInteger(0);
+        final AtomicReference<Chunk<T>> next = new AtomicReference<>();
+        // The amount of elements in the chunks before this one, since the queue was last drained.
+        final int offset;
+
+        Chunk(int chunkSize, int offset) {
+            this.slots = new AtomicReferenceArray<>(chunkSize);
+            this.offset = offset;
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package blok2.scheduling;
+
+import blok2.daos.db.ConnectionProvider;
+import blok2.daos.repositories.LocationReservationRepository;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * In distributed mode, the PENDING rows of location_reservations are the reservation queue, so that several
+ * backend instances can share the processing of reservations (cfr. PoolApprovalService.approvePending).
+ * New reservations are signalled to every instance with a PostgreSQL NOTIFY on the pending channel.
+ */
+@Service
+public class DistributedReservationQueue {
+
+    public static final String PENDING_CHANNEL = "location_reservations_pending";
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedReservationQueue.class);
+
+    private final LocationReservationRepository reservationRepository;
+    private final ConnectionProvider connectionProvider;
+    private final boolean enabled;
+
+    @Autowired
+    public DistributedReservationQueue(LocationReservationRepository reservationRepository, ConnectionProvider connectionProvider,
+                                       @Value("${custom.reservations.distributed.enabled:false}") boolean enabled) {
+        this.reservationRepository = reservationRepository;
+        this.connectionProvider = connectionProvider;
+        this.enabled = enabled;
+        if (enabled) {
+            logger.info("Reservations are processed in distributed mode, the in-memory reservation queue is not used");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Signals every instance that a pending reservation was stored for the timeslot.
+     * The reservation must be committed already, or be part of the current transaction.
+     */
+    public void signal(int timeslotSeqnr) {
+        reservationRepository.notify(PENDING_CHANNEL, String.valueOf(timeslotSeqnr));
+    }
+
+    /**
+     * @return : The amount of pending reservations of every instance, the reservations that wait to be decided.
+     */
+    public long countPending() {
+        return reservationRepository.countPending();
+    }
+
+    /**
+     * Opens a dedicated connection that listens on the pending channel. The connection is not taken from
+     * the pool, because it stays open for as long as the listener lives.
+     */
+    public Listener listen() throws SQLException {
+        return new Listener(connectionProvider.getDedicatedConnection());
+    }
+
+    public static class Listener implements AutoCloseable {
+
+        private final Connection connection;
+        private final PGConnection pgConnection;
+
+        private Listener(Connection connection) throws SQLException {
+            this.connection = connection;
+            try {
+                this.pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + PENDING_CHANNEL);
+                }
+            } catch (SQLException ex) {
+                connection.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Waits until a signal arrives, or the timeout expires.
+         * @return : Whether at least one signal arrived.
+         */
+        public boolean await(int timeoutMillis) throws SQLException {
+            PGNotification[] notifications = pgConnection.getNotifications(timeoutMillis);
+            return notifications != null && notifications.length > 0;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package blok2.scheduling;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
+
+/**
+ * The outcome of processing the pool of a single timeslot: which users got a seat
+ * and which users were rejected, and why.
+ */
+public class PoolDecision {
+
+    public enum RejectionReason {
+        NOT_RESERVABLE,
+        TOO_EARLY,
+        FULL
+    }
+
+    private final int timeslotSeqnr;
+    private final List<String> approved = new ArrayList<>();
+    private final Map<RejectionReason, List<String>> rejected = new EnumMap<>(RejectionReason.class);
+
+    public PoolDecision(int timeslotSeqnr) {
+        this.timeslotSeqnr = timeslotSeqnr;
+    }
+
+    /**
+     * Determines whether the pool of a timeslot must be rejected as a whole.
+     * @return : The reason to reject every reservation of the pool, or null if the pool can be processed.
+     */
+    public static RejectionReason poolRejection(boolean reservable, LocalDateTime reservableFrom, LocalDateTime now) {
+        if (!reservable) {
+            return RejectionReason.NOT_RESERVABLE;
+        }
+        if (!now.isAfter(reservableFrom.plusMinutes(RANDOM_RESERVATION_DURATION_MINS))) {
+            return RejectionReason.TOO_EARLY;
+        }
+        return null;
+    }
+
+    public void approve(String userId) {
+        approved.add(userId);
+    }
+
+    public void reject(String userId, RejectionReason reason) {
+        rejected.computeIfAbsent(reason, r -> new ArrayList<>()).add(userId);
+    }
+
+    public int getTimeslotSeqnr() {
+        return timeslotSeqnr;
+    }
+
+    /**
+     * The approved users, in the order in which they were approved.
+     */
+    public List<String> getApproved() {
+        return Collections.unmodifiableList(approved);
+    }
+
+    /**
+     * All rejected users, regardless of the reason.
+     */
+    public List<String> getRejected() {
+        List<String> all = new ArrayList<>();
+        rejected.values().forEach(all::addAll);
+        return all;
+    }
+
+    public List<String> getRejected(RejectionReason reason) {
+        return Collections.unmodifiableList(rejected.getOrDefault(reason, Collections.emptyList()));
+    }
+
+    public boolean isEmpty() {
+        return approved.isEmpty() && rejected.isEmpty();
+    }
+
+}
@@ -4,11 +4,15 @@ import blok2.config.PoolProcessor;
 import blok2.model.calendar.Timeslot;
 import blok2.model.reservations.LocationReservation;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
 
@@ -19,13 +23,30 @@ import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
  */
 public class PoolQueue {
 
-    private final Map<Timeslot, LockFreeClearQueue<LocationReservation>> randomPools = new ConcurrentHashMap<>();
-    private final LockFreeClearQueue<LocationReservation> fcfsPool = new LockFreeClearQueue<>();
-    private final ConcurrentLinkedQueue<List<LocationReservation>> randomPoolQueue = new ConcurrentLinkedQueue<>();
+    // Random pools only live for a couple of minutes and there can be one for every timeslot, so they get smaller chunks.
+    private static final int RANDOM_POOL_CHUNK_SIZE = 32;
+
+    private final Map<Timeslot, ChunkedMpscQueue<LocationReservation>> randomPools = new ConcurrentHashMap<>();
+    private final ChunkedMpscQueue<LocationReservation> fcfsPool = new ChunkedMpscQueue<>();
+    private final ConcurrentLinkedQueue<ReservationPool> randomPoolQueue = new ConcurrentLinkedQueue<>();
+
+    // Holds one entry per random pool, which becomes available at the moment the pool must be released.
+    private final DelayQueue<RandomPoolRelease> randomPoolReleases = new DelayQueue<>();
 
     // This semaphore indicates the amount of pools currently available.
     private final Semaphore poolSemaphore = new Semaphore(0);
 
+    // Whether the random pools that close at the same moment are popped together, as a release wave.
+    private final boolean releaseWaves;
+
+    public PoolQueue() {
+        this(false);
+    }
+
+    public PoolQueue(boolean releaseWaves) {
+        this.releaseWaves = releaseWaves;
+    }
+
     /**
      * Push a reservation into one of the pools. It is expected that
      * the reservation is ready to be put into the queue.
@@ -38,10 +59,21 @@ public class PoolQueue {
             return; // Ignore, too early.
         }
         // As long as the there still exists a randompool for the timeslot, schedule it in there
-        // regardless of the time.
-        if (now.isBefore(timeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS)) || randomPools.containsKey(reservation.getTimeslot())) {
-            randomPools.computeIfAbsent(timeslot, timeslotIgnore -> new LockFreeClearQueue<>());
-            randomPools.get(timeslot).add(reservation);
+        // regardless of the time. The reservation is added while the entry is locked, so that it cannot
+        // end up in a pool that releaseRandomPool() just removed.
+        boolean randomPoolOpen = now.isBefore(timeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS));
+        ChunkedMpscQueue<LocationReservation> randomPool = randomPools.compute(timeslot, (timeslotIgnore, pool) -> {
+            if (pool == null) {
+                if (!randomPoolOpen) {
+                    return null;
+                }
+                randomPoolReleases.add(new RandomPoolRelease(timeslot));
+                pool = new ChunkedMpscQueue<>(RANDOM_POOL_CHUNK_SIZE);
+            }
+            pool.add(reservation);
+            return pool;
+        });
+        if (randomPool != null) {
             // NOTE: No semaphore release here, because the pre-reservation timer needs to expire first.
             return;
         }
@@ -51,52 +83,120 @@ public class PoolQueue {
     }
 
     /**
-     * Moves the pools of random reservations that are ready to be scheduled
-     * into the poolqueue. This method is meant to be called somewhat
-     * regularly to make sure the random pools are processed in due time.
-     * NON-BLOCKING
+     * Waits until the random pool of which the pre-reservation timer expires first is due, and
+     * moves it into the poolqueue. With release waves, all random pools that are due at that
+     * moment are moved into the poolqueue together, as a single pool.
+     * This method does not return until a random pool was due.
+     * BLOCKING
+     *
+     * @return : The sizes of the random pools that were released.
      */
-    public void scheduleRandomPools() {
-        LocalDateTime now = LocalDateTime.now();
-        Set<Timeslot> timeslots = randomPools.keySet();
-        for (Timeslot timeslot : timeslots) {
-            if (now.isAfter(timeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS))) {
-                LockFreeClearQueue<LocationReservation> timeslotRandomQueue = randomPools.remove(timeslot);
-                if (timeslotRandomQueue == null) {
-                    continue;
-                }
-                List<LocationReservation> reservations = timeslotRandomQueue.clear();
-                if (reservations.size() != 0) {
-                    Collections.shuffle(reservations);
-                    randomPoolQueue.add(reservations);
-                    poolSemaphore.release();
-                }
+    public List<Integer> releaseRandomPool() throws InterruptedException {
+        List<RandomPoolRelease> releases = new ArrayList<>();
+        releases.add(randomPoolReleases.take());
+        if (releaseWaves) {
+            // Every pool that closed at the same moment (or before) is due as well.
+            randomPoolReleases.drainTo(releases);
+        }
+
+        List<LocationReservation> wave = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (RandomPoolRelease release : releases) {
+            // Removing locks the entry like pushReservation() does, every reservation added before is drained below.
+            ChunkedMpscQueue<LocationReservation> timeslotRandomQueue = randomPools.remove(release.timeslot);
+            if (timeslotRandomQueue == null) {
+                continue;
             }
+            List<LocationReservation> reservations = new ArrayList<>();
+            timeslotRandomQueue.drainTo(reservations);
+            Collections.shuffle(reservations);
+            wave.addAll(reservations);
+            sizes.add(reservations.size());
+        }
+        if (wave.size() != 0) {
+            randomPoolQueue.add(new ReservationPool(releaseWaves ? ReservationPool.Kind.RELEASE_WAVE : ReservationPool.Kind.RANDOM, wave));
+            poolSemaphore.release();
+        }
+        return sizes;
+    }
+
+    /**
+     * The amount of random pools of which the pre-reservation timer did not expire yet.
+     */
+    public int getRandomPoolCount() {
+        return randomPools.size();
+    }
+
+    /**
+     * The amount of reservations in the random pools of which the pre-reservation timer did not expire yet.
+     */
+    public int getRandomPoolReservationCount() {
+        int count = 0;
+        for (ChunkedMpscQueue<LocationReservation> randomPool : randomPools.values()) {
+            count += randomPool.size();
         }
+        return count;
+    }
+
+    /**
+     * The amount of reservations in the first come first serve pool.
+     */
+    public int getFirstComeFirstServeSize() {
+        return fcfsPool.size();
     }
 
     /**
      * Pops a pool of reservations from the pool queue. Doesn't return
-     * until there is such a pool available
+     * until there is such a pool available. The first come first serve
+     * pool is returned in the order in which the reservations were pushed.
      * BLOCKING
      */
-    public List<LocationReservation> popPool() {
+    public ReservationPool popPool() {
         try {
             poolSemaphore.acquire();
-            List<LocationReservation> randomPool = randomPoolQueue.poll();
+            ReservationPool randomPool = randomPoolQueue.poll();
             if (randomPool == null) {
-                List<LocationReservation> reservations = fcfsPool.clear();
+                List<LocationReservation> reservations = new ArrayList<>();
+                fcfsPool.drainTo(reservations);
                 if (reservations.size() == 0) {
                     throw new RuntimeException("Invalid state. No empty pools should be in the queue.");
                 }
-                return reservations;
+                return new ReservationPool(ReservationPool.Kind.FIRST_COME_FIRST_SERVE, reservations);
             }
             if (randomPool.size() == 0) {
                 throw new RuntimeException("Invalid state. No empty pools should be in the queue.");
             }
             return randomPool;
         } catch (InterruptedException ex) {
-            return new ArrayList<>();
+            return new ReservationPool(ReservationPool.Kind.FIRST_COME_FIRST_SERVE, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Becomes available right after the pre-reservation timer of the timeslot expired. Pools are
+     * only processed once that moment has strictly passed (cfr. PoolDecision.poolRejection), hence
+     * the extra millisecond.
+     */
+    private static class RandomPoolRelease implements Delayed {
+        private final Timeslot timeslot;
+        private final LocalDateTime releaseAt;
+
+        RandomPoolRelease(Timeslot timeslot) {
+            this.timeslot = timeslot;
+            this.releaseAt = timeslot.getReservableFrom().plusMinutes(RANDOM_RESERVATION_DURATION_MINS).plusNanos(1_000_000);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(LocalDateTime.now(), releaseAt).toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof RandomPoolRelease) {
+                return releaseAt.compareTo(((RandomPoolRelease) other).releaseAt);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
         }
     }
 
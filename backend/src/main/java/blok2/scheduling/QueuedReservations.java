@@ -0,0 +1,70 @@
+package blok2.scheduling;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
+
+/**
+ * Remembers per timeslot which users have a reservation in the reservation pipeline: queued, or waiting in
+ * a pool, but not decided yet. Repeated requests for such a reservation can be answered without going to
+ * the database. This is only a shortcut: the database stays responsible for refusing duplicates, so losing
+ * an entry merely costs a database statement.
+ */
+public class QueuedReservations {
+
+    // An entry is forgotten after this long, in case it never reaches a pool (e.g. the queue thread failed).
+    private static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(RANDOM_RESERVATION_DURATION_MINS + 5);
+
+    // timeslot sequence number -> user id -> the moment (epoch millis) at which the reservation was queued
+    private final Map<Integer, Map<String, Long>> queued = new ConcurrentHashMap<>();
+
+    /**
+     * Remembers the reservation as queued, unless it already was.
+     * @return : true if the reservation was not queued yet.
+     */
+    public boolean add(int timeslotSeqnr, String userId) {
+        long now = System.currentTimeMillis();
+        Map<String, Long> users = queued.computeIfAbsent(timeslotSeqnr, seqnr -> new ConcurrentHashMap<>());
+        Long queuedAt = users.putIfAbsent(userId, now);
+        if (queuedAt == null) {
+            return true;
+        }
+        // An entry that is too old is taken over, only one of the concurrent requests will succeed in doing so.
+        return now - queuedAt > MAX_AGE_MILLIS && users.replace(userId, queuedAt, now);
+    }
+
+    public boolean contains(int timeslotSeqnr, String userId) {
+        Map<String, Long> users = queued.get(timeslotSeqnr);
+        if (users == null) {
+            return false;
+        }
+        Long queuedAt = users.get(userId);
+        return queuedAt != null && System.currentTimeMillis() - queuedAt <= MAX_AGE_MILLIS;
+    }
+
+    public void remove(int timeslotSeqnr, String userId) {
+        Map<String, Long> users = queued.get(timeslotSeqnr);
+        if (users != null) {
+            users.remove(userId);
+            queued.computeIfPresent(timeslotSeqnr, (seqnr, remaining) -> remaining.isEmpty() ? null : remaining);
+        }
+    }
+
+    public void removeAll(int timeslotSeqnr, Collection<String> userIds) {
+        Map<String, Long> users = queued.get(timeslotSeqnr);
+        if (users != null) {
+            for (String userId : userIds) {
+                users.remove(userId);
+            }
+            queued.computeIfPresent(timeslotSeqnr, (seqnr, remaining) -> remaining.isEmpty() ? null : remaining);
+        }
+    }
+
+    public void clear() {
+        queued.clear();
+    }
+
+}
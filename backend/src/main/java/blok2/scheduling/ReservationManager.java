@@ -3,8 +3,12 @@ package blok2.scheduling;
 import blok2.daos.repositories.LocationReservationRepository;
 import blok2.model.calendar.Timeslot;
 import blok2.model.reservations.LocationReservation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -12,24 +16,87 @@ import java.util.Optional;
 @Service
 public class ReservationManager {
 
-    private final PoolQueue poolQueue = new PoolQueue();
+    private final PoolQueue poolQueue;
     private final ReservationQueue reservationQueue = new ReservationQueue();
+    private final QueuedReservations queuedReservations = new QueuedReservations();
 
     private final LocationReservationRepository reservationRepository;
+    private final ReservationMetrics reservationMetrics;
+    private final DistributedReservationQueue distributedQueue;
 
-    public ReservationManager(LocationReservationRepository reservationRepository) {
+    public ReservationManager(LocationReservationRepository reservationRepository, ReservationMetrics reservationMetrics,
+                              DistributedReservationQueue distributedQueue, MeterRegistry meterRegistry,
+                              @Value("${custom.reservations.releaseWaves:true}") boolean releaseWaves) {
         this.reservationRepository = reservationRepository;
+        this.reservationMetrics = reservationMetrics;
+        this.distributedQueue = distributedQueue;
+        this.poolQueue = new PoolQueue(releaseWaves);
+        this.registerGauges(meterRegistry);
         this.scheduleOnInitialize();
     }
 
     /**
-     * Adds a reservation to the reservation-queue.
+     * Adds a reservation to the reservation-queue. In distributed mode, the stored pending
+     * reservation is the queue entry, the instances are only signalled.
      * NON-BLOCKING
      */
     public void addReservationToQueue(LocationReservation reservation) {
+        if (distributedQueue.isEnabled()) {
+            distributedQueue.signal(reservation.getTimeslot().getTimeslotSeqnr());
+            return;
+        }
+        reservation.setEnqueuedAt(System.currentTimeMillis());
         reservationQueue.push(reservation);
     }
 
+    /**
+     * Remembers that a reservation of the user for the timeslot is about to be queued. In distributed mode,
+     * the reservation may be decided by another instance, so nothing is remembered and the database
+     * refuses the duplicates.
+     * NON-BLOCKING
+     *
+     * @return : false if such a reservation is queued already, in which case the request can be
+     *           answered without going to the database.
+     */
+    public boolean markQueued(int timeslotSeqnr, String userId) {
+        if (distributedQueue.isEnabled()) {
+            return true;
+        }
+        return queuedReservations.add(timeslotSeqnr, userId);
+    }
+
+    /**
+     * Forgets a reservation that was marked as queued, but was not queued after all.
+     */
+    public void unmarkQueued(int timeslotSeqnr, String userId) {
+        queuedReservations.remove(timeslotSeqnr, userId);
+    }
+
+    /**
+     * Forgets the reservations that were decided, so that a rejected user can try again.
+     */
+    public void reservationsDecided(PoolDecision decision) {
+        queuedReservations.removeAll(decision.getTimeslotSeqnr(), decision.getApproved());
+        queuedReservations.removeAll(decision.getTimeslotSeqnr(), decision.getRejected());
+    }
+
+    /**
+     * Forgets the reservations of a pool that was processed, whether or not it could be decided. A reservation
+     * that is still pending afterwards is refused as a duplicate by the database instead.
+     */
+    public void reservationsProcessed(List<LocationReservation> reservations) {
+        for (LocationReservation reservation : reservations) {
+            queuedReservations.remove(reservation.getTimeslot().getTimeslotSeqnr(), reservation.getId().userId);
+        }
+    }
+
+    /**
+     * Forgets all reservations that were marked as queued, e.g. when the database was reset.
+     */
+    public void clearQueuedReservations() {
+        queuedReservations.clear();
+    }
+
     /**
      * Moves the reservations from the reservation-queue into the
      * pool-queue. This is method does not return until there are
@@ -52,6 +119,8 @@ public class ReservationManager {
                 System.out.println("WARNING: location rejected because of too early");
                 dbRes.setState(LocationReservation.State.REJECTED);
                 reservationRepository.save(dbRes);
+                reservationMetrics.recordRejected(PoolDecision.RejectionReason.TOO_EARLY);
+                queuedReservations.remove(timeslot.getTimeslotSeqnr(), reservation.getId().userId);
                 continue;
             }
             poolQueue.pushReservation(reservation);
@@ -59,13 +128,14 @@ public class ReservationManager {
     }
 
     /**
-     * Moves the random-pools into the pool-queue if they are ready to be scheduled.
-     * This method is meant to be called somewhat regularly, to make sure the random-pools are processed
-     * in due time.
-     * NON-BLOCKING
+     * Moves the next random-pool into the pool-queue as soon as its pre-reservation timer expires.
+     * This method does not return until a random-pool was due.
+     * BLOCKING
      */
-    public void scheduleRandomPools() {
-        poolQueue.scheduleRandomPools();
+    public void releaseRandomPool() throws InterruptedException {
+        for (int size : poolQueue.releaseRandomPool()) {
+            reservationMetrics.recordRandomPoolSize(size);
+        }
     }
 
     /**
@@ -73,18 +143,50 @@ public class ReservationManager {
      * return until such a pool is available.
      * BLOCKING
      *
-     * @return : A list of reservations that is ready to be processed.
+     * @return : A pool of reservations that is ready to be processed.
      */
-    public List<LocationReservation> getPool() {
+    public ReservationPool getPool() {
         return poolQueue.popPool();
     }
 
     /**
-     * Add all pending reservations in the database to the reservation queue.
+     * The amount of reservations that are waiting to be handed to the PoolProcessor. Reservations that
+     * wait for their random pool to be scheduled are not included, they are expected to wait.
+     */
+    public int getQueueDepth() {
+        return reservationQueue.size() + poolQueue.getFirstComeFirstServeSize();
+    }
+
+    /**
+     * Add the pending reservations in the database of the timeslots from today on to the reservation queue.
      * Useful if the application is restarted when not all reservations in the queue were processed yet.
+     * In distributed mode, the pending reservations are claimed from the database instead.
      */
     private void scheduleOnInitialize() {
-        reservationRepository.findAllPending().forEach(this::addReservationToQueue);
+        if (distributedQueue.isEnabled()) {
+            return;
+        }
+        for (LocationReservation reservation : reservationRepository.findAllPendingFromDate(LocalDate.now())) {
+            queuedReservations.add(reservation.getTimeslot().getTimeslotSeqnr(), reservation.getId().userId);
+            addReservationToQueue(reservation);
+        }
+    }
+
+    private void registerGauges(MeterRegistry meterRegistry) {
+        Gauge.builder("reservations.queue.size", reservationQueue, ReservationQueue::size)
+                .description("Reservations that wait to be handed to the pool processor")
+                .tag("queue", "reservation")
+                .register(meterRegistry);
+        Gauge.builder("reservations.queue.size", poolQueue, PoolQueue::getFirstComeFirstServeSize)
+                .description("Reservations that wait to be handed to the pool processor")
+                .tag("queue", "first_come_first_serve")
+                .register(meterRegistry);
+        Gauge.builder("reservations.random.pools.waiting", poolQueue, PoolQueue::getRandomPoolCount)
+                .description("Random pools of which the pre-reservation timer did not expire yet")
+                .register(meterRegistry);
+        Gauge.builder("reservations.random.pools.reservations", poolQueue, PoolQueue::getRandomPoolReservationCount)
+                .description("Reservations in the random pools of which the pre-reservation timer did not expire yet")
+                .register(meterRegistry);
     }
 
 }
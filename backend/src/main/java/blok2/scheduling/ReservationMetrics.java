@@ -0,0 +1,97 @@
+package blok2.scheduling;
+
+import blok2.model.reservations.LocationReservation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The meters of the reservation pipeline, from the moment a reservation is queued until it is decided.
+ * The gauges on the queues are registered by the components that own them. Everything is exposed
+ * on the Prometheus endpoint of the actuator (/api/actuator/prometheus).
+ */
+@Component
+public class ReservationMetrics {
+
+    private final Counter approved;
+    private final Map<PoolDecision.RejectionReason, Counter> rejected = new EnumMap<>(PoolDecision.RejectionReason.class);
+    private final Timer decisionLatency;
+    private final Map<ReservationPool.Kind, Timer> poolDuration = new EnumMap<>(ReservationPool.Kind.class);
+    private final DistributionSummary randomPoolSize;
+
+    @Autowired
+    public ReservationMetrics(MeterRegistry meterRegistry) {
+        this.approved = Counter.builder("reservations.decisions")
+                .description("Reservations that were decided")
+                .tag("outcome", "approved")
+                .tag("reason", "none")
+                .register(meterRegistry);
+        for (PoolDecision.RejectionReason reason : PoolDecision.RejectionReason.values()) {
+            rejected.put(reason, Counter.builder("reservations.decisions")
+                    .description("Reservations that were decided")
+                    .tag("outcome", "rejected")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.decisionLatency = Timer.builder("reservations.decision.latency")
+                .description("Time from queueing a reservation until it is decided, including the wait for its random pool to close")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(15))
+                .register(meterRegistry);
+        this.randomPoolSize = DistributionSummary.builder("reservations.random.pool.size")
+                .description("Amount of reservations in a random pool when it is released")
+                .baseUnit("reservations")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        for (ReservationPool.Kind kind : ReservationPool.Kind.values()) {
+            poolDuration.put(kind, Timer.builder("reservations.pool.duration")
+                    .description("Time to decide the pool of a single timeslot")
+                    .tag("kind", kind.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    public void recordDecision(PoolDecision decision) {
+        approved.increment(decision.getApproved().size());
+        for (Map.Entry<PoolDecision.RejectionReason, Counter> entry : rejected.entrySet()) {
+            entry.getValue().increment(decision.getRejected(entry.getKey()).size());
+        }
+    }
+
+    public void recordRejected(PoolDecision.RejectionReason reason) {
+        rejected.get(reason).increment();
+    }
+
+    /**
+     * Records how long the reservations waited since they were queued.
+     */
+    public void recordDecided(List<LocationReservation> reservations, long decidedAt) {
+        for (LocationReservation reservation : reservations) {
+            if (reservation.getEnqueuedAt() > 0) {
+                decisionLatency.record(decidedAt - reservation.getEnqueuedAt(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Records how long it took to process the pool of a single timeslot, per kind of pool it came from.
+     */
+    public void recordPoolDuration(ReservationPool.Kind kind, long nanos) {
+        poolDuration.get(kind).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRandomPoolSize(int size) {
+        randomPoolSize.record(size);
+    }
+
+}
@@ -0,0 +1,104 @@
+package blok2.scheduling;
+
+import blok2.daos.db.DBReservationPartitionDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Maintains the partitions of location_reservations (cfr. V25__Partition_location_reservations.sql).
+ *
+ * Every partition holds the reservations of timeslotsPerPartition consecutive timeslots. There must always be a
+ * partition for the timeslots that are created next, so new partitions are created at startup, every night and
+ * when timeslots are created up to the last partition (cfr. TimeslotService), until partitionsAhead partitions
+ * are left. Partitions of which every timeslot is older than retentionMonths
+ * are moved to the archive schema, so that the queries on location_reservations no longer touch them.
+ */
+@Component
+public class ReservationPartitionMaintenance {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationPartitionMaintenance.class);
+
+    private final DBReservationPartitionDao partitionDao;
+    private final int timeslotsPerPartition;
+    private final int partitionsAhead;
+    private final int retentionMonths;
+
+    // The first timeslot sequence number without a partition, as far as known. Guarded by this.
+    private long upperBound = 0;
+
+    @Autowired
+    public ReservationPartitionMaintenance(DBReservationPartitionDao partitionDao,
+                                           @Value("${custom.reservations.partitions.timeslotsPerPartition:5000}") int timeslotsPerPartition,
+                                           @Value("${custom.reservations.partitions.partitionsAhead:2}") int partitionsAhead,
+                                           @Value("${custom.reservations.partitions.retentionMonths:24}") int retentionMonths) {
+        this.partitionDao = partitionDao;
+        this.timeslotsPerPartition = timeslotsPerPartition;
+        this.partitionsAhead = partitionsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createPartitionsOnStartup() {
+        createPartitions();
+    }
+
+    @Scheduled(cron = "${custom.reservations.partitions.maintenanceCron:0 30 3 * * *}")
+    public void maintainPartitions() {
+        createPartitions();
+        archivePartitions();
+    }
+
+    /**
+     * Creates the partitions ahead of the given timeslot, if it is in the last partition. Without the database,
+     * except when partitions have to be created.
+     */
+    public synchronized void timeslotCreated(int timeslotSeqnr) {
+        if (timeslotSeqnr >= upperBound - timeslotsPerPartition) {
+            createPartitions();
+        }
+    }
+
+    /**
+     * Forgets which partitions exist, e.g. when the database has been reset.
+     */
+    public synchronized void clear() {
+        upperBound = 0;
+    }
+
+    private synchronized void createPartitions() {
+        try {
+            int created = partitionDao.createPartitions(timeslotsPerPartition, partitionsAhead);
+            if (created > 0) {
+                logger.info(String.format("Created %d partitions of location_reservations", created));
+            }
+            upperBound = partitionDao.getUpperBound();
+        } catch (SQLException e) {
+            logger.error("Could not create the partitions of location_reservations", e);
+        }
+    }
+
+    private void archivePartitions() {
+        if (retentionMonths <= 0) {
+            return; // Nothing is archived.
+        }
+        try {
+            List<String> archived = partitionDao.archivePartitions(LocalDate.now().minusMonths(retentionMonths));
+            if (!archived.isEmpty()) {
+                logger.info(String.format("Moved the partitions %s of location_reservations to the archive", archived));
+            }
+        } catch (SQLException e) {
+            logger.error("Could not archive the partitions of location_reservations", e);
+        }
+    }
+
+}
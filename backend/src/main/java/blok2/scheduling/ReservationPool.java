@@ -0,0 +1,41 @@
+package blok2.scheduling;
+
+import blok2.model.reservations.LocationReservation;
+
+import java.util.List;
+
+/**
+ * A pool of reservations popped from the PoolQueue, together with the way it was formed.
+ */
+public class ReservationPool {
+
+    public enum Kind {
+        // Reservations in the order in which they arrived, after the random pools closed.
+        FIRST_COME_FIRST_SERVE,
+        // The shuffled random pool of a single timeslot.
+        RANDOM,
+        // The shuffled random pools of all timeslots that closed at the same moment.
+        RELEASE_WAVE
+    }
+
+    private final Kind kind;
+    private final List<LocationReservation> reservations;
+
+    public ReservationPool(Kind kind, List<LocationReservation> reservations) {
+        this.kind = kind;
+        this.reservations = reservations;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public List<LocationReservation> getReservations() {
+        return reservations;
+    }
+
+    public int size() {
+        return reservations.size();
+    }
+
+}
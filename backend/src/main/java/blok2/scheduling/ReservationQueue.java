@@ -8,12 +8,12 @@ import java.util.concurrent.Semaphore;
 
 /**
  * Implements a thread-safe queue of reservations. Reservations are pushed and popped
- * from the queue. This class is a thin wrapper around LockFreeClearQueue that adds
+ * from the queue. This class is a thin wrapper around ChunkedMpscQueue that adds
  * a semaphore to prevent spin-clearing on the clear() method.
  */
 public class ReservationQueue {
 
-    private final LockFreeClearQueue<LocationReservation> queue = new LockFreeClearQueue<>();
+    private final ChunkedMpscQueue<LocationReservation> queue = new ChunkedMpscQueue<>();
 
     // Semaphore indicates whether there are reservations in the queue. It should be non-zero if there are.
     // It does not need to guarantee to be zero if there are no reservations in the queue. These somewhat
@@ -30,10 +30,18 @@ public class ReservationQueue {
         semaphore.release();
     }
 
+    /**
+     * The amount of reservations in the queue. Only an estimate if reservations are being pushed at the same time.
+     */
+    public int size() {
+        return queue.size();
+    }
+
     /**
      * Drains the current queue of all reservations. The queue is
-     * left empty. The drained reservations are returned. This
-     * method does not return until there are reservations to drain.
+     * left empty. The drained reservations are returned in the order
+     * in which they were pushed. This method does not return until
+     * there are reservations to drain.
      * BLOCKING
      */
     public List<LocationReservation> clear() {
@@ -44,7 +52,9 @@ public class ReservationQueue {
         }
         // NOTE: Order of the following 2 statements is important. Permits should be drained first.
         semaphore.drainPermits();
-        return queue.clear();
+        List<LocationReservation> reservations = new ArrayList<>();
+        queue.drainTo(reservations);
+        return reservations;
     }
 
 }
@@ -0,0 +1,55 @@
+package blok2.scheduling;
+
+import blok2.config.WebSocketConfiguration;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.reservations.LocationReservationStateChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pushes the outcome of a pool to the users over STOMP, so that clients don't need to poll
+ * their reservations to find out whether they got a seat.
+ */
+@Component
+public class ReservationStatePublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationStatePublisher.class);
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    @Autowired
+    public ReservationStatePublisher(SimpMessageSendingOperations messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * Sends every user of the decision the new state of their reservation. Should only be called
+     * once the decision is stored, so that clients that reload their reservations see the same state.
+     * Users that are not connected are skipped by the broker.
+     */
+    public void publish(PoolDecision decision) {
+        int timeslotSeqnr = decision.getTimeslotSeqnr();
+        try {
+            for (String userId : decision.getApproved()) {
+                send(userId, new LocationReservationStateChange(timeslotSeqnr, LocationReservation.State.APPROVED, null));
+            }
+            for (PoolDecision.RejectionReason reason : PoolDecision.RejectionReason.values()) {
+                for (String userId : decision.getRejected(reason)) {
+                    send(userId, new LocationReservationStateChange(timeslotSeqnr, LocationReservation.State.REJECTED, reason.name()));
+                }
+            }
+        } catch (MessagingException ex) {
+            // The decision is stored, clients can still find it by reloading their reservations.
+            logger.warn(String.format("Could not push the decision of timeslot %d", timeslotSeqnr), ex);
+        }
+    }
+
+    private void send(String userId, LocationReservationStateChange change) {
+        messagingTemplate.convertAndSendToUser(userId, WebSocketConfiguration.RESERVATIONS_QUEUE, change);
+    }
+
+}
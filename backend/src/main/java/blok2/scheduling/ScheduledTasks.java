@@ -29,7 +29,6 @@ public class ScheduledTasks {
     private final ILocationReservationDao locationReservationDao;
     private final MailService mailService;
     private final ILocationDao locationDao;
-    private final ReservationManager reservationManager;
 
     private final String[] recipients;
 
@@ -37,12 +36,11 @@ public class ScheduledTasks {
 
     @Autowired
     public ScheduledTasks(ILocationReservationDao locationReservationDao, ILocationDao locationDao,
-                          MailService mailService, Environment env, ReservationManager reservationManager) {
+                          MailService mailService, Environment env) {
         this.locationReservationDao = locationReservationDao;
         this.mailService = mailService;
         this.locationDao = locationDao;
         recipients = env.getProperty("custom.mailing.recipientsOpeningHoursOverview", String[].class);
-        this.reservationManager = reservationManager;
     }
 
     /**
@@ -242,13 +240,5 @@ public class ScheduledTasks {
         }
     }
 
-    /**
-     * Schedules the 'Random' reservation pools to be processed every minute.
-     */
-    @Scheduled(cron = "0 * * * * *")
-    public void scheduleRandomPools() {
-        reservationManager.scheduleRandomPools();
-    }
-
 
 }
@@ -0,0 +1,377 @@
+package blok2.scheduling;
+
+import blok2.daos.repositories.TimeslotRepository;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservations.LocationReservation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Keeps the amount of reserved seats of timeslots in memory, so that the decision whether there is
+ * still room for a reservation can be made without a round trip to the database.
+ *
+ * The counters are loaded from the timeslots in the database (seat_count and reservation_count), which
+ * stays the source of truth: the check constraint on reservation_count still guards against
+ * oversubscription. The ledger is loaded at startup and reconciled against the database regularly. Every
+ * path that changes reservation_count must keep the ledger in sync (cfr. LocationReservationService).
+ */
+@Service
+public class SeatLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeatLedger.class);
+
+    // Upper bound on the amount of timeslots that are fetched in a single query while reconciling.
+    private static final int MAX_IDS_PER_STATEMENT = 1000;
+
+    private final TimeslotRepository timeslotRepository;
+    private final boolean enabled;
+
+    // Writes the decisions to the database. Writes of the same timeslot are done in order.
+    private final TimeslotShardedExecutor writers;
+
+    private final Map<Integer, Seats> ledger = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SeatLedger(TimeslotRepository timeslotRepository,
+                      @Value("${custom.reservations.seatLedger.enabled:true}") boolean enabled,
+                      @Value("${custom.reservations.seatLedger.writers:4}") int writerCount,
+                      @Value("${custom.reservations.distributed.enabled:false}") boolean distributed) {
+        this.timeslotRepository = timeslotRepository;
+        // The counters of one instance do not know about the seats that other instances hand out.
+        this.enabled = enabled && !distributed;
+        this.writers = new TimeslotShardedExecutor("seat-writer", writerCount);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Load the timeslots that can still be reserved, so that the first wave of reservations
+     * does not need to go to the database to fill the ledger.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        List<Timeslot> timeslots = timeslotRepository.getAllFromTimeslotDate(LocalDate.now());
+        for (Timeslot timeslot : timeslots) {
+            ledger.put(timeslot.getTimeslotSeqnr(), new Seats(timeslot));
+        }
+        logger.info(String.format("Seat ledger loaded with %d timeslots", timeslots.size()));
+    }
+
+    /**
+     * Try to take a seat for a single reservation. Every successful call must be followed by
+     * a call to confirm() once it is known whether the reservation was stored in the database.
+     * @return : Whether there was still a seat available.
+     */
+    public boolean tryReserve(int timeslotSeqnr) {
+        if (!enabled) {
+            return true;
+        }
+        Seats seats = seatsOf(timeslotSeqnr);
+        if (seats == null) {
+            return true; // Unknown timeslot, let the database decide.
+        }
+        return seats.tryTake();
+    }
+
+    /**
+     * Confirms a seat that was taken with tryReserve(). If the reservation was not stored, the seat is freed again.
+     */
+    public void confirm(int timeslotSeqnr, boolean stored) {
+        if (!enabled) {
+            return;
+        }
+        Seats seats = ledger.get(timeslotSeqnr);
+        if (seats == null) {
+            return;
+        }
+        seats.confirm(1, stored ? 1 : 0);
+    }
+
+    /**
+     * Registers reservations that started taking up a seat in the database, e.g. because their state changed
+     * to APPROVED. If called within a transaction, the ledger is only updated once the transaction commits.
+     */
+    public void reserve(int timeslotSeqnr, int amount) {
+        if (!enabled || amount <= 0) {
+            return;
+        }
+        afterCommit(() -> {
+            Seats seats = ledger.get(timeslotSeqnr);
+            if (seats != null) {
+                seats.add(amount);
+            }
+        });
+    }
+
+    /**
+     * Registers reservations that no longer take up a seat in the database, e.g. because they were deleted.
+     * If called within a transaction, the ledger is only updated once the transaction commits.
+     */
+    public void release(int timeslotSeqnr, int amount) {
+        if (!enabled || amount <= 0) {
+            return;
+        }
+        afterCommit(() -> {
+            Seats seats = ledger.get(timeslotSeqnr);
+            if (seats != null) {
+                seats.release(amount);
+            }
+        });
+    }
+
+    /**
+     * Decides the pool of a timeslot in memory. Reservations are approved in the order of the pool for as long
+     * as there are seats left. The decision must be stored with writeThrough(). Whether the reservations are still
+     * pending is only known when the decision is stored, which hands the seats of the others to the users that
+     * were rejected as full (cfr. PoolApprovalService.applyDecision).
+     */
+    public PoolDecision decide(int timeslotSeqnr, List<LocationReservation> pool) {
+        PoolDecision decision = new PoolDecision(timeslotSeqnr);
+        Seats seats = seatsOf(timeslotSeqnr);
+        if (seats == null) {
+            return decision; // Timeslot has been deleted, and its reservations with it.
+        }
+
+        PoolDecision.RejectionReason poolRejection = PoolDecision.poolRejection(seats.reservable,
+                seats.reservableFrom, LocalDateTime.now());
+        if (poolRejection != null) {
+            logger.warn(String.format("Invalid state. Pool of timeslot %d rejected: %s", timeslotSeqnr, poolRejection));
+        }
+
+        Set<String> decided = new HashSet<>();
+        for (LocationReservation reservation : pool) {
+            String userId = reservation.getId().userId;
+            if (!decided.add(userId)) {
+                continue;
+            }
+            if (poolRejection != null) {
+                decision.reject(userId, poolRejection);
+            } else if (seats.tryTake()) {
+                decision.approve(userId);
+            } else {
+                decision.reject(userId, PoolDecision.RejectionReason.FULL);
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * Stores a decision of decide() in the background. The write returns the amount of approvals that were
+     * actually stored (reservations may have been deleted in the meantime), the difference is freed again.
+     * If the write fails, the timeslot is dropped from the ledger and the fallback is run instead.
+     * NON-BLOCKING
+     */
+    public void writeThrough(PoolDecision decision, ToIntFunction<PoolDecision> write, Runnable fallback) {
+        int timeslotSeqnr = decision.getTimeslotSeqnr();
+        int approved = decision.getApproved().size();
+        writers.execute(timeslotSeqnr, () -> {
+            Seats seats = ledger.get(timeslotSeqnr);
+            int stored;
+            try {
+                stored = write.applyAsInt(decision);
+            } catch (RuntimeException ex) {
+                logger.error(String.format("Could not store decision of timeslot %d, falling back on the database", timeslotSeqnr), ex);
+                ledger.remove(timeslotSeqnr);
+                fallback.run();
+                return;
+            }
+            if (seats != null) {
+                seats.confirm(approved, stored);
+            }
+        });
+    }
+
+    /**
+     * Updates the configuration of a timeslot (seat count, reservable, ...) after it has been changed.
+     */
+    public void timeslotChanged(Timeslot timeslot) {
+        Seats seats = ledger.get(timeslot.getTimeslotSeqnr());
+        if (seats != null) {
+            seats.refresh(timeslot);
+        }
+    }
+
+    /**
+     * Drops the timeslot from the ledger. It will be loaded from the database on next use.
+     */
+    public void invalidate(int timeslotSeqnr) {
+        ledger.remove(timeslotSeqnr);
+    }
+
+    /**
+     * Drops all timeslots from the ledger, e.g. when the database has been reset.
+     */
+    public void clear() {
+        ledger.clear();
+    }
+
+    /**
+     * Compares the ledger against the database and corrects it when it drifted away. Timeslots with decisions
+     * that are not stored yet are skipped, as are timeslots that changed while the database was being read.
+     * Timeslots that are deleted or in the past are dropped from the ledger.
+     */
+    @Scheduled(fixedDelayString = "${custom.reservations.seatLedger.reconcileIntervalMs:60000}")
+    public void reconcile() {
+        if (!enabled || ledger.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> expected = new HashMap<>();
+        ledger.forEach((seqnr, seats) -> {
+            int reserved = seats.confirmedReserved();
+            if (reserved >= 0) {
+                expected.put(seqnr, reserved);
+            }
+        });
+
+        Map<Integer, Timeslot> timeslots = new HashMap<>();
+        List<Integer> seqnrs = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < seqnrs.size(); i += MAX_IDS_PER_STATEMENT) {
+            for (Timeslot timeslot : timeslotRepository.findAllById(seqnrs.subList(i, Math.min(seqnrs.size(), i + MAX_IDS_PER_STATEMENT)))) {
+                timeslots.put(timeslot.getTimeslotSeqnr(), timeslot);
+            }
+        }
+
+        LocalDate today = LocalDate.now();
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            Timeslot timeslot = timeslots.get(entry.getKey());
+            if (timeslot == null || timeslot.timeslotDate().isBefore(today)) {
+                ledger.remove(entry.getKey());
+                continue;
+            }
+            Seats seats = ledger.get(entry.getKey());
+            if (seats == null) {
+                continue;
+            }
+            seats.refresh(timeslot);
+            int inDatabase = timeslot.getAmountOfReservations();
+            if (inDatabase != entry.getValue() && seats.correct(entry.getValue(), inDatabase)) {
+                logger.warn(String.format("Seat ledger drifted for timeslot %d: %d reserved in ledger, %d in database",
+                        entry.getKey(), entry.getValue(), inDatabase));
+            }
+        }
+    }
+
+    private Seats seatsOf(int timeslotSeqnr) {
+        Seats seats = ledger.get(timeslotSeqnr);
+        if (seats != null) {
+            return seats;
+        }
+        // NOTE: Not using computeIfAbsent, the database should not be queried while holding a lock on the map.
+        Timeslot timeslot = timeslotRepository.getByTimeslotSeqnr(timeslotSeqnr);
+        if (timeslot == null) {
+            return null;
+        }
+        Seats loaded = new Seats(timeslot);
+        seats = ledger.putIfAbsent(timeslotSeqnr, loaded);
+        return seats == null ? loaded : seats;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * The counters of a timeslot. Both counters are changed under the lock of the Seats, so that reconcile() can
+     * never see a seat that is taken but not yet counted as unconfirmed, and free it again.
+     */
+    private static class Seats {
+        private int reserved;
+        // Seats that were handed out, but of which the outcome is not yet stored in the database.
+        private int unconfirmed = 0;
+
+        private volatile int seatCount;
+        private volatile boolean reservable;
+        private volatile LocalDateTime reservableFrom;
+
+        Seats(Timeslot timeslot) {
+            this.reserved = timeslot.getAmountOfReservations();
+            refresh(timeslot);
+        }
+
+        void refresh(Timeslot timeslot) {
+            this.seatCount = timeslot.getSeatCount();
+            this.reservable = timeslot.isReservable();
+            this.reservableFrom = timeslot.getReservableFrom();
+        }
+
+        /**
+         * Takes a seat of which the outcome is not stored yet, cfr. confirm().
+         * @return : Whether there was still a seat available.
+         */
+        synchronized boolean tryTake() {
+            if (reserved >= seatCount) {
+                return false;
+            }
+            reserved++;
+            unconfirmed++;
+            return true;
+        }
+
+        /**
+         * Confirms seats that were taken with tryTake(). The seats that were not stored are freed again.
+         */
+        synchronized void confirm(int taken, int stored) {
+            reserved = Math.max(0, reserved - (taken - stored));
+            unconfirmed -= taken;
+        }
+
+        synchronized void add(int amount) {
+            reserved += amount;
+        }
+
+        synchronized void release(int amount) {
+            if (amount > 0) {
+                reserved = Math.max(0, reserved - amount);
+            }
+        }
+
+        /**
+         * @return : The amount of reserved seats, or -1 if some seats are not confirmed yet.
+         */
+        synchronized int confirmedReserved() {
+            return unconfirmed == 0 ? reserved : -1;
+        }
+
+        /**
+         * Replaces the amount of reserved seats by the amount in the database, unless seats were taken or freed
+         * since it was read with confirmedReserved().
+         * @return : Whether the amount was replaced.
+         */
+        synchronized boolean correct(int expected, int inDatabase) {
+            if (unconfirmed != 0 || reserved != expected) {
+                return false;
+            }
+            reserved = inDatabase;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package blok2.scheduling;
+
+import blok2.model.reservations.LocationReservation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Processes pools of reservations on a fixed amount of worker threads. A pool is split up per timeslot
+ * and every timeslot is always handled by the same worker. This way, reservations of one timeslot are
+ * processed in the order in which they were dispatched, while reservations of different timeslots (and
+ * therefore also different locations) are processed in parallel.
+ */
+public class TimeslotShardedExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeslotShardedExecutor.class);
+
+    // NOTE: Every worker is a single threaded executor. Its queue is what guarantees the ordering
+    // of the reservations within a timeslot, even across consecutive pools.
+    private final ExecutorService[] workers;
+
+    public TimeslotShardedExecutor(int workerCount) {
+        this("pool-worker", workerCount);
+    }
+
+    public TimeslotShardedExecutor(String name, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one worker is required, got " + workerCount);
+        }
+        workers = new ExecutorService[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            final String threadName = name + "-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Splits the pool per timeslot (keeping the order of the pool) and hands every part to the
+     * worker that is responsible for that timeslot.
+     * NON-BLOCKING
+     */
+    public void dispatch(List<LocationReservation> pool, Consumer<List<LocationReservation>> handler) {
+        Map<Integer, List<LocationReservation>> perTimeslot = new LinkedHashMap<>();
+        for (LocationReservation reservation : pool) {
+            perTimeslot.computeIfAbsent(reservation.getTimeslot().getTimeslotSeqnr(), seqnr -> new ArrayList<>())
+                    .add(reservation);
+        }
+        for (Map.Entry<Integer, List<LocationReservation>> entry : perTimeslot.entrySet()) {
+            List<LocationReservation> reservations = entry.getValue();
+            execute(entry.getKey(), () -> handler.accept(reservations));
+        }
+    }
+
+    /**
+     * Runs the task on the worker that is responsible for the timeslot, after all tasks
+     * for that timeslot that were handed over before.
+     * NON-BLOCKING
+     */
+    public void execute(int timeslotSeqnr, Runnable task) {
+        workers[shardOf(timeslotSeqnr)].execute(() -> {
+            // Catch all exceptions, a failing timeslot must not take the worker down with it.
+            try {
+                task.run();
+            } catch (Exception ex) {
+                logger.error(String.format("Could not process task of timeslot %d", timeslotSeqnr), ex);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new pools and waits until the pools that were already dispatched are processed.
+     * @return : Whether all workers finished within the given time.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService worker : workers) {
+            if (!worker.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int shardOf(int timeslotSeqnr) {
+        return Math.floorMod(timeslotSeqnr, workers.length);
+    }
+
+}
@@ -1,33 +1,61 @@
 package blok2.stadgent.controllers;
 
+import blok2.daos.services.DataVersions;
 import blok2.daos.services.LocationService;
 import blok2.daos.services.TimeslotService;
+import blok2.helpers.ETags;
+import blok2.model.reservables.Location;
 import blok2.stadgent.model.StadGentLocation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("stadgent")
 public class StadGentLocationController {
+    private static final String RESOURCE = "stadgent/locations";
+
     private final TimeslotService ts;
+    private final DataVersions dataVersions;
 
     @Autowired
-    public StadGentLocationController(Environment env, TimeslotService ts) {
+    public StadGentLocationController(Environment env, TimeslotService ts, DataVersions dataVersions) {
         StadGentLocation.baseUrl = env.getProperty("custom.stadgent.url");
         this.ts = ts;
+        this.dataVersions = dataVersions;
     }
 
     @Autowired
     private LocationService locationService;
 
     @GetMapping("/locations")
-    public List<StadGentLocation> getLocations() {
-        return this.locationService.getAllActiveLocations().stream().map(t -> StadGentLocation.fromLocation(t, ts, locationService)).collect(Collectors.toList());
+    public ResponseEntity<List<StadGentLocation>> getLocations(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Whether the locations changed is known without going to the database (cfr. DataVersions).
+        long[] versions = {dataVersions.locations(), dataVersions.reservations()};
+        String etag = dataVersions.currentEtag(RESOURCE, versions);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ETags.notModified(etag);
+        }
+
+        List<StadGentLocation> locations = new ArrayList<>();
+        LocalDateTime unchangedUntil = LocalDateTime.MAX;
+        for (Location location : this.locationService.getAllActiveLocations()) {
+            locations.add(StadGentLocation.fromLocation(location, ts, locationService));
+            LocalDateTime locationUnchangedUntil = LocationService.unchangedUntil(location);
+            if (locationUnchangedUntil.isBefore(unchangedUntil)) {
+                unchangedUntil = locationUnchangedUntil;
+            }
+        }
+        etag = dataVersions.handOut(RESOURCE, unchangedUntil, versions);
+        return ETags.ok(etag).body(locations);
     }
 }
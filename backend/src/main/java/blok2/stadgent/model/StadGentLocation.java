@@ -187,8 +187,7 @@ public class StadGentLocation {
         boolean hasFutureTimeslots = loc.getCurrentTimeslot() != null;
 
         LocalDate date = LocalDate.now();
-        List<Timeslot> timeslotsOfLocation = ts.getTimeslotsOfLocation(loc.getLocationId());
-        Stream<Timeslot> l = timeslotsOfLocation.stream().filter(t -> t.timeslotDate().isEqual(date));
+        Stream<Timeslot> l = ts.getTimeslotsOfLocationOnTimeslotDate(loc.getLocationId(), date).stream();
 
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
         String hours = l.map(t -> t.getOpeningHour().format(formatter) + " - " + t.getClosingHour().format(formatter)).collect(Collectors.joining(","));
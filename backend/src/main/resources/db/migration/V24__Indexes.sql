@@ -0,0 +1,48 @@
+-- Indexes for the access paths of the repositories. Apart from the primary keys, none of the tables had
+-- an index yet, so every lookup other than by primary key scanned the whole table.
+-- The queries that must use them are checked by TestQueryPlans.
+
+-- LocationReservationRepository.findAllByUserId, and the reservations of a user that is deleted
+CREATE INDEX IF NOT EXISTS idx_location_reservations_user
+    ON public.location_reservations (user_id);
+
+-- findAllPending, claimPending and findPendingIdsOfTimeslots: only a handful of reservations is pending at once
+CREATE INDEX IF NOT EXISTS idx_location_reservations_pending
+    ON public.location_reservations (timeslot_sequence_number, updated_at)
+    WHERE state = 'PENDING';
+
+-- findAllUnattendedByDate and findAllUnattendedByDateAnd21PMRestriction
+CREATE INDEX IF NOT EXISTS idx_location_reservations_absent
+    ON public.location_reservations (timeslot_sequence_number, updated_at)
+    WHERE state = 'ABSENT';
+
+-- findAllCreatedAndApprovedAfterDateTime
+CREATE INDEX IF NOT EXISTS idx_location_reservations_approved_updated_at
+    ON public.location_reservations (updated_at)
+    WHERE state = 'APPROVED';
+
+-- TimeslotRepository.getCurrentOrNextTimeslot, getAllByLocationId* and the reservations of a location
+-- between two dates (findAllByLocationIdAndDateFromTo)
+CREATE INDEX IF NOT EXISTS idx_timeslots_location_date
+    ON public.timeslots (location_id, timeslot_date, closing_hour);
+
+-- The timeslots of a date over all locations (getAllFromTimeslotDate, findAllUnattendedByDate, findAllByDateRange)
+CREATE INDEX IF NOT EXISTS idx_timeslots_date
+    ON public.timeslots (timeslot_date);
+
+-- claimPending: the timeslots of which the random pool closed
+CREATE INDEX IF NOT EXISTS idx_timeslots_reservable_from
+    ON public.timeslots (reservable_from);
+
+-- PenaltyRepository.findAllByDesignee and findAllByLocationReservation, and the cascade of
+-- fk_penalty_to_reservation when a reservation is deleted
+CREATE INDEX IF NOT EXISTS idx_penalty_points_user_timeslot
+    ON public.penalty_points (user_id, timeslot_sequence_number);
+
+-- PenaltyRepository.findAllByOrderByCreatedAtDesc
+CREATE INDEX IF NOT EXISTS idx_penalty_points_created_at
+    ON public.penalty_points (created_at DESC);
+
+-- UserLocationSubscriptionRepository.findAllByUser and existsByLocationAndUser
+CREATE INDEX IF NOT EXISTS idx_user_location_subscription_user_location
+    ON public.user_location_subscription (user_id, location_id);
@@ -0,0 +1,165 @@
+-- Partitions location_reservations by range of timeslot_sequence_number. Timeslots get their sequence number when
+-- they are created, so every partition holds the reservations of the timeslots that were created in the same
+-- period, and a query for a timeslot only touches the partition of that timeslot.
+--
+-- The reservations can't be partitioned by the date of their timeslot directly: that date is not a column of
+-- location_reservations, and the partition key must be part of the primary key that penalty_points refers to.
+--
+-- Partitions are named location_reservations_<from>_<to>. New partitions are created ahead of the sequence by
+-- create_location_reservation_partitions, partitions of which every timeslot is past the retention are moved to
+-- the archive schema by archive_location_reservation_partitions. Both are called by ReservationPartitionMaintenance.
+
+CREATE SCHEMA IF NOT EXISTS archive;
+
+ALTER TABLE public.penalty_points
+    DROP CONSTRAINT fk_penalty_to_reservation;
+
+ALTER TABLE public.location_reservations
+    RENAME TO location_reservations_unpartitioned;
+ALTER TABLE public.location_reservations_unpartitioned
+    RENAME CONSTRAINT pk_location_reservations TO pk_location_reservations_unpartitioned;
+
+CREATE TABLE public.location_reservations
+(
+    timeslot_sequence_number integer     NOT NULL,
+    user_id                  text        NOT NULL,
+    state                    VARCHAR(20) NOT NULL DEFAULT 'APPROVED',
+    created_at               TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    updated_at               TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+
+    constraint pk_location_reservations
+        primary key (timeslot_sequence_number, user_id),
+
+    constraint fk_location_reservations_to_timeslot
+        foreign key (timeslot_sequence_number)
+            references public.timeslots (sequence_number)
+            on update cascade
+            on delete cascade,
+
+    constraint fk_location_reservations_to_users
+        foreign key (user_id)
+            references public.users (user_id)
+            on delete cascade
+            on update cascade
+) PARTITION BY RANGE (timeslot_sequence_number);
+
+-- Creates partitions of timeslots_per_partition sequence numbers, until the next partitions_ahead partitions
+-- after the last handed out sequence number exist. Returns the amount of partitions that were created.
+--
+-- PostgreSQL 12 doesn't support row triggers that run before an update on a partitioned table, so the trigger that
+-- keeps updated_at current (set_timestamp_location_reservations of V1, dropped together with the old table) is
+-- created on every partition instead.
+CREATE OR REPLACE FUNCTION public.create_location_reservation_partitions(timeslots_per_partition integer,
+                                                                         partitions_ahead integer)
+    RETURNS integer AS
+$$
+DECLARE
+    upper_bound bigint;
+    target      bigint;
+    created     integer := 0;
+    part_name   text;
+BEGIN
+    SELECT max(substring(c.relname FROM '_(\d+)$')::bigint)
+    INTO upper_bound
+    FROM pg_inherits i
+             JOIN pg_class c ON c.oid = i.inhrelid
+    WHERE i.inhparent = 'public.location_reservations'::regclass;
+
+    SELECT last_value + partitions_ahead::bigint * timeslots_per_partition
+    INTO target
+    FROM public.timeslot_id_seq;
+
+    IF upper_bound IS NULL THEN
+        -- The first partition also takes the sequence numbers from before the sequence existed.
+        part_name := 'location_reservations_0_' || timeslots_per_partition;
+        EXECUTE format('CREATE TABLE public.%I PARTITION OF public.location_reservations FOR VALUES FROM (MINVALUE) TO (%s)',
+                       part_name, timeslots_per_partition);
+        EXECUTE format('CREATE TRIGGER set_timestamp_location_reservations BEFORE UPDATE ON public.%I ' ||
+                       'FOR EACH ROW EXECUTE PROCEDURE trigger_set_timestamp()', part_name);
+        upper_bound := timeslots_per_partition;
+        created := created + 1;
+    END IF;
+
+    WHILE upper_bound < target LOOP
+        part_name := 'location_reservations_' || upper_bound || '_' || (upper_bound + timeslots_per_partition);
+        EXECUTE format('CREATE TABLE public.%I PARTITION OF public.location_reservations FOR VALUES FROM (%s) TO (%s)',
+                       part_name, upper_bound, upper_bound + timeslots_per_partition);
+        EXECUTE format('CREATE TRIGGER set_timestamp_location_reservations BEFORE UPDATE ON public.%I ' ||
+                       'FOR EACH ROW EXECUTE PROCEDURE trigger_set_timestamp()', part_name);
+        upper_bound := upper_bound + timeslots_per_partition;
+        created := created + 1;
+    END LOOP;
+
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Moves the partitions of which every sequence number has been handed out, and of which every timeslot is before
+-- the cutoff, to the archive schema. The penalties of the archived reservations are kept, but no longer refer to
+-- their reservation. Returns the names of the archived partitions.
+CREATE OR REPLACE FUNCTION public.archive_location_reservation_partitions(cutoff date)
+    RETURNS SETOF text AS
+$$
+DECLARE
+    part        record;
+    last_seqnr  bigint;
+BEGIN
+    SELECT last_value INTO last_seqnr FROM public.timeslot_id_seq;
+
+    FOR part IN
+        SELECT c.relname,
+               substring(c.relname FROM '_(\d+)_\d+$')::bigint AS lower_bound,
+               substring(c.relname FROM '_(\d+)$')::bigint     AS upper_bound
+        FROM pg_inherits i
+                 JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'public.location_reservations'::regclass
+        ORDER BY 3
+    LOOP
+        CONTINUE WHEN part.upper_bound > last_seqnr;
+        CONTINUE WHEN EXISTS(SELECT 1
+                             FROM public.timeslots t
+                             WHERE t.sequence_number >= part.lower_bound
+                               AND t.sequence_number < part.upper_bound
+                               AND t.timeslot_date >= cutoff);
+
+        EXECUTE format('UPDATE public.penalty_points p SET timeslot_sequence_number = NULL ' ||
+                       'FROM public.%I lr ' ||
+                       'WHERE p.user_id = lr.user_id AND p.timeslot_sequence_number = lr.timeslot_sequence_number',
+                       part.relname);
+        EXECUTE format('ALTER TABLE public.location_reservations DETACH PARTITION public.%I', part.relname);
+        EXECUTE format('ALTER TABLE public.%I SET SCHEMA archive', part.relname);
+        RETURN NEXT part.relname;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT public.create_location_reservation_partitions(5000, 2);
+
+INSERT INTO public.location_reservations (timeslot_sequence_number, user_id, state, created_at, updated_at)
+SELECT timeslot_sequence_number, user_id, state, created_at, updated_at
+FROM public.location_reservations_unpartitioned;
+
+DROP TABLE public.location_reservations_unpartitioned;
+
+-- The indexes of V24__Indexes.sql, now on every partition.
+CREATE INDEX idx_location_reservations_user
+    ON public.location_reservations (user_id);
+
+CREATE INDEX idx_location_reservations_pending
+    ON public.location_reservations (timeslot_sequence_number, updated_at)
+    WHERE state = 'PENDING';
+
+CREATE INDEX idx_location_reservations_absent
+    ON public.location_reservations (timeslot_sequence_number, updated_at)
+    WHERE state = 'ABSENT';
+
+CREATE INDEX idx_location_reservations_approved_updated_at
+    ON public.location_reservations (updated_at)
+    WHERE state = 'APPROVED';
+
+ALTER TABLE public.penalty_points
+    ADD CONSTRAINT fk_penalty_to_reservation
+        FOREIGN KEY (user_id, timeslot_sequence_number)
+            REFERENCES public.location_reservations (user_id, timeslot_sequence_number)
+            ON DELETE CASCADE
+            ON UPDATE CASCADE;
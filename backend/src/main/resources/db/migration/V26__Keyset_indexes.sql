@@ -0,0 +1,12 @@
+-- The paged endpoints (cfr. KeysetPage) read the rows in the order of these indexes, and start reading at the
+-- last row of the previous page.
+
+-- LocationReservationRepository.findAllByUserIdAfterTimeslot
+DROP INDEX IF EXISTS public.idx_location_reservations_user;
+CREATE INDEX idx_location_reservations_user
+    ON public.location_reservations (user_id, timeslot_sequence_number);
+
+-- PenaltyRepository.findAllBefore
+DROP INDEX IF EXISTS public.idx_penalty_points_created_at;
+CREATE INDEX idx_penalty_points_created_at
+    ON public.penalty_points (created_at DESC, penalty_id DESC);
@@ -1,6 +1,11 @@
 package blok2;
 
 import blok2.daos.db.ConnectionProvider;
+import blok2.daos.services.DataVersions;
+import blok2.daos.services.TimeslotIndex;
+import blok2.scheduling.ReservationManager;
+import blok2.scheduling.ReservationPartitionMaintenance;
+import blok2.scheduling.SeatLedger;
 import config.CustomFlywayConfig;
 import org.flywaydb.test.FlywayTestExecutionListener;
 import org.flywaydb.test.annotation.FlywayTest;
@@ -28,6 +33,21 @@ public abstract class BaseTest {
     @Autowired
     protected ConnectionProvider connectionProvider;
 
+    @Autowired
+    protected SeatLedger seatLedger;
+
+    @Autowired
+    protected ReservationManager reservationManager;
+
+    @Autowired
+    protected DataVersions dataVersions;
+
+    @Autowired
+    protected TimeslotIndex timeslotIndex;
+
+    @Autowired
+    protected ReservationPartitionMaintenance partitionMaintenance;
+
     /**
      * Wil be ran before every test to provide a fresh populated database
      */
@@ -36,6 +56,12 @@ public abstract class BaseTest {
     @Before
     @FlywayTest // Executes for a class or for a method. Combining with 'before' executes before every test.
     public void setup() throws SQLException {
+        // The database has just been reset, drop what the application still remembers of it.
+        seatLedger.clear();
+        reservationManager.clearQueuedReservations();
+        dataVersions.allChanged();
+        timeslotIndex.reload();
+        partitionMaintenance.clear();
         System.out.println("populating");
         populateDatabase();
     }
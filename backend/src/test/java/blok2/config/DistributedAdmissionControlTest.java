@@ -0,0 +1,73 @@
+package blok2.config;
+
+import blok2.scheduling.DistributedReservationQueue;
+import blok2.scheduling.ReservationManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * In distributed mode, the queue depth is the amount of pending reservations in the database.
+ */
+public class DistributedAdmissionControlTest {
+
+    private final ReservationManager reservationManager = mock(ReservationManager.class);
+    private final PoolProcessor poolProcessor = mock(PoolProcessor.class);
+    private final DistributedReservationQueue distributedQueue = mock(DistributedReservationQueue.class);
+
+    private AdmissionControl admissionControl;
+
+    @Before
+    public void setup() {
+        when(distributedQueue.isEnabled()).thenReturn(true);
+        admissionControl = new AdmissionControl(reservationManager, poolProcessor, distributedQueue,
+                new SimpleMeterRegistry(), true, 20, 30000, 60);
+    }
+
+    @Test
+    public void queueDepthIsPendingCountTest() {
+        // Nothing is queued in memory, the backlog is in the database.
+        when(reservationManager.getQueueDepth()).thenReturn(0);
+        when(poolProcessor.getReservationsInProgress()).thenReturn(0);
+        when(distributedQueue.countPending()).thenReturn(25L);
+        Assert.assertEquals(0, admissionControl.getQueueDepth());
+
+        admissionControl.countPending();
+        Assert.assertEquals(25, admissionControl.getQueueDepth());
+        Assert.assertTrue(admissionControl.retryAfterSeconds() > 0);
+
+        when(distributedQueue.countPending()).thenReturn(5L);
+        admissionControl.countPending();
+        Assert.assertEquals(5, admissionControl.getQueueDepth());
+        Assert.assertEquals(0, admissionControl.retryAfterSeconds());
+    }
+
+    @Test
+    public void failedCountKeepsLastCountTest() {
+        when(distributedQueue.countPending()).thenReturn(25L);
+        admissionControl.countPending();
+
+        when(distributedQueue.countPending()).thenThrow(new QueryTimeoutException("timeout"));
+        admissionControl.countPending();
+        Assert.assertEquals(25, admissionControl.getQueueDepth());
+    }
+
+    @Test
+    public void inProcessModeDoesNotCountTest() {
+        when(distributedQueue.isEnabled()).thenReturn(false);
+        when(reservationManager.getQueueDepth()).thenReturn(3);
+        when(poolProcessor.getReservationsInProgress()).thenReturn(2);
+
+        admissionControl.countPending();
+        verify(distributedQueue, never()).countPending();
+        Assert.assertEquals(5, admissionControl.getQueueDepth());
+    }
+
+}
@@ -0,0 +1,59 @@
+package blok2.config;
+
+import blok2.model.users.User;
+import blok2.security.config.JwtAuthenticationToken;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StompAuthenticationInterceptorTest {
+
+    private final AuthenticationManager authManager = mock(AuthenticationManager.class);
+    private final StompAuthenticationInterceptor interceptor = new StompAuthenticationInterceptor(authManager);
+
+    @Test
+    public void connectWithTokenIsBoundToUserIdTest() {
+        User user = new User();
+        user.setUserId("001");
+        when(authManager.authenticate(any(JwtAuthenticationToken.class)))
+                .thenReturn(new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+
+        Message<?> message = interceptor.preSend(frame(StompCommand.CONNECT, "token"), mock(MessageChannel.class));
+        Assert.assertEquals("001", StompHeaderAccessor.wrap(message).getUser().getName());
+    }
+
+    @Test
+    public void connectWithoutTokenKeepsHandshakeUserTest() {
+        Message<?> message = interceptor.preSend(frame(StompCommand.CONNECT, null), mock(MessageChannel.class));
+        Assert.assertNull(StompHeaderAccessor.wrap(message).getUser());
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void connectWithInvalidTokenIsRefusedTest() {
+        when(authManager.authenticate(any(JwtAuthenticationToken.class))).thenThrow(new BadCredentialsException("invalid"));
+        interceptor.preSend(frame(StompCommand.CONNECT, "invalid"), mock(MessageChannel.class));
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String token) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        if (token != null) {
+            accessor.setNativeHeader(StompAuthenticationInterceptor.AUTH_HEADER, token);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+}
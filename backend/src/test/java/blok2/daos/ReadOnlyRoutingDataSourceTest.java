@@ -0,0 +1,80 @@
+package blok2.daos;
+
+import blok2.daos.db.ReadOnlyRoutingDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReadOnlyRoutingDataSourceTest {
+
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replicaConnection = mock(Connection.class);
+
+    @After
+    public void resetReadOnly() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReadOnlyRoutingDataSource.allowReplica(false);
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToReplicaTest() throws SQLException {
+        ReadOnlyRoutingDataSource dataSource = routingDataSource(dataSource(replicaConnection));
+
+        Assert.assertSame(primaryConnection, dataSource.getConnection());
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReadOnlyRoutingDataSource.allowReplica(true);
+        Assert.assertSame(replicaConnection, dataSource.getConnection());
+
+        // A lagging replica is skipped.
+        dataSource.setReplicaAvailable(false);
+        Assert.assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    @Test
+    public void onlyAllowedReadsGoToReplicaTest() throws SQLException {
+        ReadOnlyRoutingDataSource dataSource = routingDataSource(dataSource(replicaConnection));
+
+        // Read-only transactions of the repositories, e.g. in a write path, stay on the primary.
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        Assert.assertSame(primaryConnection, dataSource.getConnection());
+
+        // Writing transactions stay on the primary, even when the reads are allowed on the replica.
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReadOnlyRoutingDataSource.allowReplica(true);
+        Assert.assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    @Test
+    public void withoutReplicaEverythingGoesToPrimaryTest() throws SQLException {
+        ReadOnlyRoutingDataSource dataSource = routingDataSource(null);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReadOnlyRoutingDataSource.allowReplica(true);
+        Assert.assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    private ReadOnlyRoutingDataSource routingDataSource(DataSource replica) {
+        ReadOnlyRoutingDataSource dataSource = new ReadOnlyRoutingDataSource(dataSource(primaryConnection), replica);
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+
+    private static DataSource dataSource(Connection connection) {
+        DataSource dataSource = mock(DataSource.class);
+        try {
+            when(dataSource.getConnection()).thenReturn(connection);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return dataSource;
+    }
+
+}
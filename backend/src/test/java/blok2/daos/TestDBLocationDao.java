@@ -13,6 +13,10 @@ import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.List;
 
 
@@ -173,4 +177,59 @@ public class TestDBLocationDao extends BaseTest {
         Assert.assertNotNull(location.getCurrentTimeslot());
     }
 
+    @Test
+    public void initializeTagsTest() {
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        LocalDateTime now = LocalDateTime.now();
+        int seats = testLocation.getNumberOfSeats();
+        int locationId = testLocation.getLocationId();
+
+        // Open tomorrow in the evening, and already reservable
+        timeslotDAO.addTimeslot(new Timeslot(null, tomorrow, LocalTime.of(8, 0), LocalTime.of(21, 0), true,
+                now.minusDays(3), seats, locationId));
+        // Two weeks from now, the first timeslot that still has to become reservable
+        Timeslot next = timeslotDAO.addTimeslot(new Timeslot(null, LocalDate.now().plusWeeks(2), LocalTime.of(8, 0),
+                LocalTime.of(16, 0), true, now.plusDays(5), seats, locationId));
+        timeslotDAO.addTimeslot(new Timeslot(null, LocalDate.now().plusWeeks(3), LocalTime.of(8, 0),
+                LocalTime.of(16, 0), true, now.plusDays(1), seats, locationId));
+        // A long time ago, which must not matter
+        timeslotDAO.addTimeslot(new Timeslot(null, LocalDate.now().minusYears(1), LocalTime.of(8, 0),
+                LocalTime.of(23, 0), true, now.minusYears(1), seats, locationId));
+
+        Location location = locationDao.getLocationById(locationId);
+        locationDao.initializeTags(location);
+
+        boolean tomorrowInWeekend = tomorrow.getDayOfWeek() == DayOfWeek.SATURDAY || tomorrow.getDayOfWeek() == DayOfWeek.SUNDAY;
+        Assert.assertTrue(location.isTomorrowStillAvailable());
+        Assert.assertTrue(location.isOpenDuringEvening());
+        Assert.assertEquals(!tomorrowInWeekend, location.isOpenDuringWeek());
+        Assert.assertEquals(tomorrowInWeekend, location.isOpenDuringWeekend());
+        Assert.assertTrue(location.getOptionalNextUpcomingReservableTimeslot().isPresent());
+        Assert.assertEquals(next.getTimeslotSeqnr(), location.getOptionalNextUpcomingReservableTimeslot().get().getTimeslotSeqnr());
+    }
+
+    @Test
+    public void currentTimeslotTestForMultipleApprovedLocations() throws SQLException {
+        Location otherLocation = locationDao.addLocation(TestSharedMethods.testLocation2(
+                testLocation.getAuthority().clone(), testLocation.getBuilding()));
+        locationDao.approveLocation(testLocation, true);
+        locationDao.approveLocation(otherLocation, true);
+
+        // only the test location gets upcoming timeslots
+        timeslotDAO.addTimeslots(TestSharedMethods.upcomingCalendarPeriods(testLocation));
+
+        // every location must get its own current timeslot, as if it were fetched on its own
+        List<Location> locations = locationDao.getAllActiveLocations();
+        Assert.assertEquals(2, locations.size());
+        for (Location location : locations) {
+            Location single = locationDao.getLocationById(location.getLocationId());
+            Assert.assertEquals(single.getCurrentTimeslot(), location.getCurrentTimeslot());
+        }
+
+        Location other = locations.stream()
+                .filter(l -> l.getLocationId() == otherLocation.getLocationId())
+                .findFirst().orElseThrow(AssertionError::new);
+        Assert.assertNull(other.getCurrentTimeslot());
+    }
+
 }
@@ -2,6 +2,7 @@ package blok2.daos;
 
 import blok2.BaseTest;
 import blok2.TestSharedMethods;
+import blok2.daos.repositories.LocationReservationRepository;
 import blok2.helpers.exceptions.NoSuchDatabaseObjectException;
 import blok2.model.Authority;
 import blok2.model.calendar.Timeslot;
@@ -16,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.sql.SQLException;
+import java.time.LocalDateTime;
 import java.util.*;
 
 public class TestDBLocationReservationDao extends BaseTest {
@@ -25,6 +27,9 @@ public class TestDBLocationReservationDao extends BaseTest {
     @Autowired
     private ILocationReservationDao locationReservationDao;
 
+    @Autowired
+    private LocationReservationRepository locationReservationRepository;
+
     @Autowired
     private IUserDao userDao;
 
@@ -135,6 +140,52 @@ public class TestDBLocationReservationDao extends BaseTest {
         Assert.assertEquals(0, reservations.size());
     }
 
+    @Test
+    public void addLocationReservationsButFullTest() throws SQLException {
+        User u = userDao.getUserById(testUser.getUserId());
+        User u2 = userDao.getUserById(testUser2.getUserId());
+
+        LocationReservation lr0 = new LocationReservation(u, calendarPeriod1Seat, null);
+        LocationReservation lr1 = new LocationReservation(u2, calendarPeriod1Seat, null);
+        LocationReservation lr2 = new LocationReservation(u2, calendarPeriods.get(0), null);
+
+        // Only the first reservation for the timeslot with a single seat gets it.
+        List<LocationReservation> stored = locationReservationDao.addLocationReservationsIfStillRoomAtomically(Arrays.asList(lr0, lr1, lr2));
+        Assert.assertEquals(Arrays.asList(lr0, lr2), stored);
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(calendarPeriod1Seat.getTimeslotSeqnr()).getAmountOfReservations());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(calendarPeriods.get(0).getTimeslotSeqnr()).getAmountOfReservations());
+
+        // Duplicates and full timeslots are skipped, and do not change the counters.
+        stored = locationReservationDao.addLocationReservationsIfStillRoomAtomically(Arrays.asList(
+                new LocationReservation(u2, calendarPeriods.get(0), null), new LocationReservation(u2, calendarPeriod1Seat, null)));
+        Assert.assertEquals(0, stored.size());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(calendarPeriod1Seat.getTimeslotSeqnr()).getAmountOfReservations());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(calendarPeriods.get(0).getTimeslotSeqnr()).getAmountOfReservations());
+        Assert.assertEquals(0, locationReservationDao.getAllLocationReservationsOfUser(u2.getUserId()).stream()
+                .filter(r -> r.getTimeslot().getTimeslotSeqnr().equals(calendarPeriod1Seat.getTimeslotSeqnr())).count());
+    }
+
+    @Test
+    public void insertPendingTest() {
+        int timeslotSeqnr = calendarPeriod1Seat.getTimeslotSeqnr();
+        String userId = testUser2.getUserId();
+
+        Assert.assertNull(locationReservationRepository.insertPending(timeslotSeqnr, userId, LocalDateTime.now()));
+        // Pending already: nothing changes.
+        Assert.assertEquals("PENDING", locationReservationRepository.insertPending(timeslotSeqnr, userId, LocalDateTime.now()));
+
+        locationReservationDao.addLocationReservation(new LocationReservation(testUser2, calendarPeriod1Seat, LocationReservation.State.APPROVED));
+        Assert.assertEquals("APPROVED", locationReservationRepository.insertPending(timeslotSeqnr, userId, LocalDateTime.now()));
+        Assert.assertEquals(LocationReservation.State.APPROVED,
+                locationReservationDao.getLocationReservation(userId, calendarPeriod1Seat).getStateE());
+
+        // A rejected reservation can be made again.
+        locationReservationDao.addLocationReservation(new LocationReservation(testUser2, calendarPeriod1Seat, LocationReservation.State.REJECTED));
+        Assert.assertNull(locationReservationRepository.insertPending(timeslotSeqnr, userId, LocalDateTime.now()));
+        Assert.assertEquals(LocationReservation.State.PENDING,
+                locationReservationDao.getLocationReservation(userId, calendarPeriod1Seat).getStateE());
+    }
+
     @Test
     public void getLocationReservationsOfUserTest() throws SQLException {
         User u = userDao.getUserById(testUser.getUserId()); // test user from db
@@ -206,6 +257,13 @@ public class TestDBLocationReservationDao extends BaseTest {
         unattendedReservations = locationReservationDao.getUnattendedLocationReservations(t0.timeslotDate());
         Assert.assertEquals(elrs, unattendedReservations);
 
+        // The seat is free again
+        Assert.assertEquals(0, timeslotDAO.getTimeslot(t0.getTimeslotSeqnr()).getAmountOfReservations());
+
+        // Marking the timeslot again doesn't touch the absent reservation
+        locationReservationDao.setNotScannedStudentsToUnattended(t0);
+        Assert.assertEquals(0, timeslotDAO.getTimeslot(t0.getTimeslotSeqnr()).getAmountOfReservations());
+        Assert.assertEquals(elrs, locationReservationDao.getUnattendedLocationReservations(t0.timeslotDate()));
     }
 
     /**
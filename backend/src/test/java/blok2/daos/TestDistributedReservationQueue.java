@@ -0,0 +1,181 @@
+package blok2.daos;
+
+import blok2.BaseTest;
+import blok2.TestSharedMethods;
+import blok2.daos.services.PoolApprovalService;
+import blok2.model.Authority;
+import blok2.model.Building;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservables.Location;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import blok2.scheduling.DistributedReservationQueue;
+import blok2.scheduling.PoolDecision;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestDistributedReservationQueue extends BaseTest {
+
+    private static final int USERS = 120;
+
+    @Autowired
+    private PoolApprovalService poolApprovalService;
+
+    @Autowired
+    private DistributedReservationQueue distributedQueue;
+
+    @Autowired
+    private ILocationReservationDao locationReservationDao;
+
+    @Autowired
+    private IUserDao userDao;
+
+    @Autowired
+    private ILocationDao locationDao;
+
+    @Autowired
+    private IAuthorityDao authorityDao;
+
+    @Autowired
+    private ITimeslotDao timeslotDAO;
+
+    @Autowired
+    private IBuildingDao buildingDao;
+
+    private Timeslot timeslot;
+    private Timeslot timeslot1Seat;
+    private Timeslot openRandomPoolTimeslot;
+    private List<User> users;
+
+    @Override
+    public void populateDatabase() throws SQLException {
+        Authority authority = TestSharedMethods.insertTestAuthority(authorityDao);
+        Building testBuilding = buildingDao.addBuilding(TestSharedMethods.testBuilding());
+
+        Location testLocation = TestSharedMethods.testLocation(authority.clone(), testBuilding);
+        locationDao.addLocation(testLocation);
+        timeslot = timeslotDAO.addTimeslot(TestSharedMethods.upcomingCalendarPeriods(testLocation).get(0));
+
+        Location testLocation1Seat = TestSharedMethods.testLocation1Seat(authority.clone(), testBuilding);
+        locationDao.addLocation(testLocation1Seat);
+        timeslot1Seat = timeslotDAO.addTimeslot(TestSharedMethods.upcomingCalendarPeriods(testLocation1Seat).get(0));
+
+        // The random pool of this timeslot is still open for another five minutes.
+        Timeslot open = TestSharedMethods.upcomingCalendarPeriods(testLocation1Seat).get(0);
+        open.setTimeslotDate(open.timeslotDate().plusDays(1));
+        open.setReservableFrom(LocalDateTime.now().minusMinutes(5));
+        openRandomPoolTimeslot = timeslotDAO.addTimeslot(open);
+
+        users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(TestSharedMethods.studentTestUser(String.format("%03d", i)));
+        }
+        TestSharedMethods.addTestUsers(userDao, users.toArray(new User[0]));
+    }
+
+    @Test
+    public void concurrentClaimsDoNotOversubscribeTest() throws Exception {
+        for (User user : users) {
+            locationReservationDao.addLocationReservation(new LocationReservation(user, timeslot, LocationReservation.State.PENDING));
+            locationReservationDao.addLocationReservation(new LocationReservation(user, timeslot1Seat, LocationReservation.State.PENDING));
+        }
+
+        // Every thread acts as a backend instance that claims one timeslot at a time until nothing is left.
+        List<PoolDecision> decisions = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService instances = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(instances.submit(() -> {
+                List<PoolDecision> claimed;
+                do {
+                    claimed = poolApprovalService.approvePending(1);
+                    decisions.addAll(claimed);
+                } while (!claimed.isEmpty());
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        instances.shutdown();
+
+        assertDecidedOnce(decisions, timeslot, timeslot.getSeatCount());
+        assertDecidedOnce(decisions, timeslot1Seat, 1);
+    }
+
+    @Test
+    public void openRandomPoolIsNotClaimedTest() {
+        locationReservationDao.addLocationReservation(
+                new LocationReservation(users.get(0), openRandomPoolTimeslot, LocationReservation.State.PENDING));
+
+        Assert.assertEquals(Collections.emptyList(), poolApprovalService.approvePending(10));
+        Assert.assertEquals(LocationReservation.State.PENDING,
+                locationReservationDao.getLocationReservation(users.get(0).getUserId(), openRandomPoolTimeslot).getStateE());
+    }
+
+    @Test
+    public void reservationMadeTooEarlyIsRejectedTest() throws SQLException {
+        User early = users.get(0);
+        User onTime = users.get(1);
+        locationReservationDao.addLocationReservation(new LocationReservation(early, timeslot, LocationReservation.State.PENDING));
+        locationReservationDao.addLocationReservation(new LocationReservation(onTime, timeslot, LocationReservation.State.PENDING));
+        try (Connection conn = connectionProvider.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("update location_reservations set updated_at = t.reservable_from - interval '1 minute' " +
+                    "from timeslots t where t.sequence_number = timeslot_sequence_number " +
+                    "and timeslot_sequence_number = " + timeslot.getTimeslotSeqnr() + " and user_id = '" + early.getUserId() + "'");
+        }
+
+        List<PoolDecision> decisions = poolApprovalService.approvePending(10);
+        Assert.assertEquals(1, decisions.size());
+        Assert.assertEquals(Collections.singletonList(onTime.getUserId()), decisions.get(0).getApproved());
+        Assert.assertEquals(Collections.singletonList(early.getUserId()),
+                decisions.get(0).getRejected(PoolDecision.RejectionReason.TOO_EARLY));
+        Assert.assertEquals(LocationReservation.State.REJECTED,
+                locationReservationDao.getLocationReservation(early.getUserId(), timeslot).getStateE());
+    }
+
+    @Test
+    public void signalReachesListenerTest() throws SQLException {
+        try (DistributedReservationQueue.Listener listener = distributedQueue.listen()) {
+            distributedQueue.signal(timeslot.getTimeslotSeqnr());
+            Assert.assertTrue(listener.await(5000));
+        }
+    }
+
+    private void assertDecidedOnce(List<PoolDecision> decisions, Timeslot t, int seats) {
+        Set<String> decided = new HashSet<>();
+        int approved = 0;
+        for (PoolDecision decision : decisions) {
+            if (decision.getTimeslotSeqnr() != t.getTimeslotSeqnr()) {
+                continue;
+            }
+            approved += decision.getApproved().size();
+            for (String userId : decision.getApproved()) {
+                Assert.assertTrue(decided.add(userId));
+            }
+            for (String userId : decision.getRejected()) {
+                Assert.assertTrue(decided.add(userId));
+            }
+        }
+        Assert.assertEquals(USERS, decided.size());
+        Assert.assertEquals(seats, approved);
+        Assert.assertEquals(seats, timeslotDAO.getTimeslot(t.getTimeslotSeqnr()).getAmountOfReservations());
+        for (LocationReservation reservation : locationReservationDao.getAllLocationReservationsOfTimeslot(t)) {
+            Assert.assertNotEquals(LocationReservation.State.PENDING, reservation.getStateE());
+        }
+    }
+
+}
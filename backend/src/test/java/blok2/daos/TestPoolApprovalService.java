@@ -0,0 +1,170 @@
+package blok2.daos;
+
+import blok2.BaseTest;
+import blok2.TestSharedMethods;
+import blok2.daos.services.PoolApprovalService;
+import blok2.model.Authority;
+import blok2.model.Building;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservables.Location;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import blok2.scheduling.PoolDecision;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestPoolApprovalService extends BaseTest {
+
+    @Autowired
+    private PoolApprovalService poolApprovalService;
+
+    @Autowired
+    private ILocationReservationDao locationReservationDao;
+
+    @Autowired
+    private IUserDao userDao;
+
+    @Autowired
+    private ILocationDao locationDao;
+
+    @Autowired
+    private IAuthorityDao authorityDao;
+
+    @Autowired
+    private ITimeslotDao timeslotDAO;
+
+    @Autowired
+    private IBuildingDao buildingDao;
+
+    private Timeslot timeslot;
+    private Timeslot otherTimeslot;
+    private List<User> users;
+
+    @Override
+    public void populateDatabase() throws SQLException {
+        Authority authority = TestSharedMethods.insertTestAuthority(authorityDao);
+        Building testBuilding = buildingDao.addBuilding(TestSharedMethods.testBuilding());
+
+        // One seat and three candidates: only the first of the pool may get a seat.
+        Location testLocation1Seat = TestSharedMethods.testLocation1Seat(authority.clone(), testBuilding);
+        locationDao.addLocation(testLocation1Seat);
+        timeslot = timeslotDAO.addTimeslot(TestSharedMethods.upcomingCalendarPeriods(testLocation1Seat).get(0));
+        Timeslot next = TestSharedMethods.upcomingCalendarPeriods(testLocation1Seat).get(0);
+        next.setTimeslotDate(next.timeslotDate().plusDays(1));
+        otherTimeslot = timeslotDAO.addTimeslot(next);
+
+        users = Arrays.asList(TestSharedMethods.studentTestUser("001"), TestSharedMethods.studentTestUser("002"),
+                TestSharedMethods.studentTestUser("003"));
+        TestSharedMethods.addTestUsers(userDao, users.toArray(new User[0]));
+    }
+
+    @Test
+    public void approvePoolUntilFullTest() {
+        List<LocationReservation> pool = new ArrayList<>();
+        for (User user : users) {
+            LocationReservation reservation = new LocationReservation(user, timeslot, LocationReservation.State.PENDING);
+            locationReservationDao.addLocationReservation(reservation);
+            pool.add(reservation);
+        }
+
+        PoolDecision decision = poolApprovalService.approvePool(timeslot.getTimeslotSeqnr(), pool);
+
+        Assert.assertEquals(Collections.singletonList("001"), decision.getApproved());
+        Assert.assertEquals(Arrays.asList("002", "003"), decision.getRejected(PoolDecision.RejectionReason.FULL));
+
+        Assert.assertEquals(LocationReservation.State.APPROVED,
+                locationReservationDao.getLocationReservation("001", timeslot).getStateE());
+        Assert.assertEquals(LocationReservation.State.REJECTED,
+                locationReservationDao.getLocationReservation("002", timeslot).getStateE());
+        Assert.assertEquals(LocationReservation.State.REJECTED,
+                locationReservationDao.getLocationReservation("003", timeslot).getStateE());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(timeslot.getTimeslotSeqnr()).getAmountOfReservations());
+    }
+
+    @Test
+    public void approvePoolIgnoresNoLongerPendingTest() {
+        List<LocationReservation> pool = new ArrayList<>();
+        for (User user : users) {
+            LocationReservation reservation = new LocationReservation(user, timeslot, LocationReservation.State.PENDING);
+            locationReservationDao.addLocationReservation(reservation);
+            pool.add(reservation);
+        }
+        // The first user cancelled the reservation before the pool got processed.
+        LocationReservation deleted = new LocationReservation(users.get(0), timeslot, LocationReservation.State.DELETED);
+        locationReservationDao.addLocationReservation(deleted);
+
+        PoolDecision decision = poolApprovalService.approvePool(timeslot.getTimeslotSeqnr(), pool);
+
+        Assert.assertEquals(Collections.singletonList("002"), decision.getApproved());
+        Assert.assertEquals(LocationReservation.State.DELETED,
+                locationReservationDao.getLocationReservation("001", timeslot).getStateE());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(timeslot.getTimeslotSeqnr()).getAmountOfReservations());
+    }
+
+    @Test
+    public void applyDecisionReturnsStoredDecisionTest() {
+        for (User user : users) {
+            locationReservationDao.addLocationReservation(new LocationReservation(user, timeslot, LocationReservation.State.PENDING));
+        }
+        // The first user cancelled the reservation after the pool was decided in memory.
+        locationReservationDao.addLocationReservation(new LocationReservation(users.get(0), timeslot, LocationReservation.State.DELETED));
+
+        PoolDecision decision = new PoolDecision(timeslot.getTimeslotSeqnr());
+        decision.approve("001");
+        decision.reject("002", PoolDecision.RejectionReason.FULL);
+        decision.reject("003", PoolDecision.RejectionReason.FULL);
+        PoolDecision stored = poolApprovalService.applyDecision(decision);
+
+        // The seat of the cancelled reservation goes to the next user, like approvePool() decides.
+        Assert.assertEquals(Collections.singletonList("002"), stored.getApproved());
+        Assert.assertEquals(Collections.singletonList("003"), stored.getRejected(PoolDecision.RejectionReason.FULL));
+        Assert.assertEquals(LocationReservation.State.DELETED,
+                locationReservationDao.getLocationReservation("001", timeslot).getStateE());
+        Assert.assertEquals(LocationReservation.State.APPROVED,
+                locationReservationDao.getLocationReservation("002", timeslot).getStateE());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(timeslot.getTimeslotSeqnr()).getAmountOfReservations());
+    }
+
+    @Test
+    public void approveWaveTest() {
+        Map<Integer, List<LocationReservation>> wave = new LinkedHashMap<>();
+        for (Timeslot t : Arrays.asList(timeslot, otherTimeslot)) {
+            List<LocationReservation> pool = new ArrayList<>();
+            for (User user : users) {
+                LocationReservation reservation = new LocationReservation(user, t, LocationReservation.State.PENDING);
+                locationReservationDao.addLocationReservation(reservation);
+                pool.add(reservation);
+            }
+            wave.put(t.getTimeslotSeqnr(), pool);
+        }
+        // The pools are decided independently, the second one in a different order.
+        Collections.reverse(wave.get(otherTimeslot.getTimeslotSeqnr()));
+
+        List<PoolDecision> decisions = poolApprovalService.approveWave(wave);
+
+        Assert.assertEquals(2, decisions.size());
+        Assert.assertEquals(Collections.singletonList("001"), decisions.get(0).getApproved());
+        Assert.assertEquals(Collections.singletonList("003"), decisions.get(1).getApproved());
+
+        Assert.assertEquals(LocationReservation.State.APPROVED,
+                locationReservationDao.getLocationReservation("001", timeslot).getStateE());
+        Assert.assertEquals(LocationReservation.State.REJECTED,
+                locationReservationDao.getLocationReservation("003", timeslot).getStateE());
+        Assert.assertEquals(LocationReservation.State.APPROVED,
+                locationReservationDao.getLocationReservation("003", otherTimeslot).getStateE());
+        Assert.assertEquals(LocationReservation.State.REJECTED,
+                locationReservationDao.getLocationReservation("001", otherTimeslot).getStateE());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(timeslot.getTimeslotSeqnr()).getAmountOfReservations());
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(otherTimeslot.getTimeslotSeqnr()).getAmountOfReservations());
+    }
+
+}
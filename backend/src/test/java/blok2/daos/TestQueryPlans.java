@@ -0,0 +1,235 @@
+package blok2.daos;
+
+import blok2.BaseTest;
+import blok2.TestSharedMethods;
+import blok2.daos.repositories.LocationReservationRepository;
+import blok2.daos.repositories.PenaltyRepository;
+import blok2.daos.repositories.TimeslotRepository;
+import blok2.model.Authority;
+import blok2.model.Building;
+import blok2.model.reservables.Location;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Seeds the database with about as much data as production has after a couple of academic years, and checks
+ * that none of the queries that are executed on every request or by the schedulers scans a large table
+ * sequentially. Those are the queries that need the indexes of V24__Indexes.sql.
+ *
+ * The queries are executed through the repositories, so that the SQL that Hibernate generates is checked, and the
+ * sequential scans are counted by postgres itself (pg_stat_xact_user_tables) in the transaction of the query.
+ * Queries that list (almost) a whole table, like PenaltyRepository.findAllByOrderByCreatedAtDesc, can't do
+ * without a sequential scan and are not checked.
+ */
+public class TestQueryPlans extends BaseTest {
+
+    private static final int LOCATIONS = 40;
+    private static final int DAYS = 600;
+    private static final int USERS = 20000;
+    private static final int RESERVATIONS_PER_TIMESLOT = 8;
+    private static final int PENDING_RESERVATIONS = 50;
+
+    private static final List<String> LARGE_TABLES =
+            Arrays.asList("users", "timeslots", "location_reservations", "penalty_points");
+
+    @Autowired
+    private ILocationDao locationDao;
+
+    @Autowired
+    private IAuthorityDao authorityDao;
+
+    @Autowired
+    private IBuildingDao buildingDao;
+
+    @Autowired
+    private LocationReservationRepository locationReservationRepository;
+
+    @Autowired
+    private PenaltyRepository penaltyRepository;
+
+    @Autowired
+    private TimeslotRepository timeslotRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private int locationId;
+    private int timeslotSeqnr;
+    private String userId;
+
+    @Override
+    public void populateDatabase() throws SQLException {
+        Authority authority = TestSharedMethods.insertTestAuthority(authorityDao);
+        Building building = buildingDao.addBuilding(TestSharedMethods.testBuilding());
+        for (int i = 0; i < LOCATIONS; i++) {
+            Location location = TestSharedMethods.testLocation(authority.clone(), building);
+            location.setName("QueryPlanLocation" + i);
+            locationId = locationDao.addLocation(location).getLocationId();
+        }
+
+        try (Connection conn = connectionProvider.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("insert into users (user_id, first_name, last_name, penalty_points, mail, password, institution, admin) " +
+                    "select 'plan' || g, 'First', 'Last', 0, 'plan' || g || '@ugent.be', 'password', 'UGent', false " +
+                    "from generate_series(1, " + USERS + ") g");
+
+            // One timeslot a day per location, from well in the past until some weeks ahead.
+            stmt.execute("insert into timeslots (timeslot_date, opening_hour, closing_hour, seat_count, reservation_count, " +
+                    "    reservable, reservable_from, location_id) " +
+                    "select current_date - " + (DAYS - 42) + " + d, time '08:00', time '18:00', 50, 0, " +
+                    "    true, current_date - " + (DAYS - 35) + " + d, l.location_id " +
+                    "from locations l cross join generate_series(0, " + (DAYS - 1) + ") d");
+            // The reservations of these timeslots need partitions (cfr. ReservationPartitionMaintenance).
+            stmt.execute("select create_location_reservation_partitions(5000, 2)");
+
+            // Past reservations are mostly attended, upcoming ones approved. A few are still pending.
+            stmt.execute("insert into location_reservations (timeslot_sequence_number, user_id, state, created_at, updated_at) " +
+                    "select t.sequence_number, 'plan' || ((t.sequence_number * 37 + k * 2503) % " + USERS + " + 1), " +
+                    "    case when t.timeslot_date >= current_date then 'APPROVED' " +
+                    "         when k = 1 then 'ABSENT' when k = 2 then 'DELETED' else 'PRESENT' end, " +
+                    "    t.timeslot_date - 3, t.timeslot_date - 3 " +
+                    "from timeslots t cross join generate_series(1, " + RESERVATIONS_PER_TIMESLOT + ") k");
+            stmt.execute("update location_reservations set state = 'PENDING' " +
+                    "where (timeslot_sequence_number, user_id) in (select timeslot_sequence_number, user_id " +
+                    "    from location_reservations where state = 'APPROVED' limit " + PENDING_RESERVATIONS + ")");
+            stmt.execute("update timeslots t set reservation_count = c.amount " +
+                    "from (select timeslot_sequence_number, count(*) as amount from location_reservations " +
+                    "      group by timeslot_sequence_number) c " +
+                    "where t.sequence_number = c.timeslot_sequence_number");
+
+            stmt.execute("insert into penalty_points (user_id, description, class, points, timeslot_sequence_number, created_at) " +
+                    "select user_id, '', 'Not attended', 30, timeslot_sequence_number, updated_at " +
+                    "from location_reservations where state = 'ABSENT'");
+
+            stmt.execute("analyze");
+        }
+
+        // The timeslot of today.
+        timeslotSeqnr = timeslotRepository.getAllByLocationIdAfter(locationId, LocalDate.now().minusDays(1), Integer.MAX_VALUE,
+                PageRequest.of(0, 1)).get(0).getTimeslotSeqnr();
+        userId = "plan1";
+    }
+
+    @Test
+    public void hotQueriesDoNotScanLargeTablesTest() {
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        queries.put("LocationReservationRepository.findAllPendingFromDate",
+                () -> locationReservationRepository.findAllPendingFromDate(today));
+        queries.put("LocationReservationRepository.countPending",
+                () -> locationReservationRepository.countPending());
+        queries.put("LocationReservationRepository.findAllByUserId",
+                () -> locationReservationRepository.findAllByUserId(userId));
+        queries.put("LocationReservationRepository.findAllByUserIdAfterTimeslot",
+                () -> locationReservationRepository.findAllByUserIdAfterTimeslot(userId, timeslotSeqnr, PageRequest.of(0, 50)));
+        queries.put("LocationReservationRepository.findAllByTimeslot",
+                () -> locationReservationRepository.findAllByTimeslot(timeslotSeqnr));
+        queries.put("LocationReservationRepository.findAllUnattendedByDate",
+                () -> locationReservationRepository.findAllUnattendedByDate(today.minusDays(1)));
+        queries.put("LocationReservationRepository.findAllUnattendedByDateAnd21PMRestriction",
+                () -> locationReservationRepository.findAllUnattendedByDateAnd21PMRestriction(today.minusDays(1), today,
+                        today.minusDays(1).atTime(21, 0), today.atTime(21, 0)));
+        queries.put("LocationReservationRepository.findAllUnknownAttendanceByTimeslot",
+                () -> locationReservationRepository.findAllUnknownAttendanceByTimeslot(timeslotSeqnr));
+        queries.put("LocationReservationRepository.countReservedSeatsOfTimeslot",
+                () -> locationReservationRepository.countReservedSeatsOfTimeslot(timeslotSeqnr));
+        queries.put("LocationReservationRepository.findAllByLocationIdAndDateFromTo",
+                () -> locationReservationRepository.findAllByLocationIdAndDateFromTo(locationId, today, today.plusDays(7)));
+        queries.put("LocationReservationRepository.findAllCreatedAndApprovedAfterDateTime",
+                () -> locationReservationRepository.findAllCreatedAndApprovedAfterDateTime(now.minusHours(1)));
+        queries.put("LocationReservationRepository.findPendingUserIdsOfTimeslot",
+                () -> locationReservationRepository.findPendingUserIdsOfTimeslot(timeslotSeqnr, Collections.singletonList(userId)));
+        queries.put("LocationReservationRepository.findPendingIdsOfTimeslots",
+                () -> locationReservationRepository.findPendingIdsOfTimeslots(Collections.singletonList(timeslotSeqnr)));
+        queries.put("LocationReservationRepository.claimPending",
+                () -> locationReservationRepository.claimPending(now, 10));
+        queries.put("PenaltyRepository.findAllByDesignee",
+                () -> penaltyRepository.findAllByDesignee(userId));
+        queries.put("PenaltyRepository.findAllBefore",
+                () -> penaltyRepository.findAllBefore(now.minusDays(30), Integer.MAX_VALUE, PageRequest.of(0, 50)));
+        queries.put("PenaltyRepository.findAllByLocationReservation",
+                () -> penaltyRepository.findAllByLocationReservation(userId, timeslotSeqnr));
+        queries.put("TimeslotRepository.getAllFromTimeslotDate",
+                () -> timeslotRepository.getAllFromTimeslotDate(today.minusDays(14)));
+        queries.put("TimeslotRepository.getAllByLocationIdAndOnTimeslotDate",
+                () -> timeslotRepository.getAllByLocationIdAndOnTimeslotDate(locationId, today.minusMonths(6)));
+        queries.put("TimeslotRepository.getAllByLocationIdAndAfterTimeslotDate",
+                () -> timeslotRepository.getAllByLocationIdAndAfterTimeslotDate(locationId, today.minusMonths(6)));
+        queries.put("TimeslotRepository.getAllByLocationIdBetweenOrReservableAfter",
+                () -> timeslotRepository.getAllByLocationIdBetweenOrReservableAfter(locationId, today, today.plusDays(8), now));
+        queries.put("TimeslotRepository.getAllByLocationIdAfter",
+                () -> timeslotRepository.getAllByLocationIdAfter(locationId, today, timeslotSeqnr, PageRequest.of(0, 50)));
+        queries.put("TimeslotRepository.getByTimeslotSeqnr",
+                () -> timeslotRepository.getByTimeslotSeqnr(timeslotSeqnr));
+
+        List<String> offenders = new ArrayList<>();
+        for (Map.Entry<String, Runnable> query : queries.entrySet()) {
+            for (String table : sequentiallyScannedTables(query.getValue())) {
+                // The partitions of a table are named after the table.
+                if (LARGE_TABLES.stream().anyMatch(table::startsWith)) {
+                    offenders.add(query.getKey() + " scans " + table);
+                }
+            }
+        }
+        Assert.assertTrue("Sequential scans on large tables: " + offenders, offenders.isEmpty());
+    }
+
+    /**
+     * Runs the query in a transaction of its own and returns the tables that it scanned sequentially.
+     */
+    private List<String> sequentiallyScannedTables(Runnable query) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        return transactionTemplate.execute(status -> {
+            // The scans of parallel workers are not counted in this transaction, so don't let the planner use them.
+            entityManager.createNativeQuery("set local max_parallel_workers_per_gather = 0").executeUpdate();
+            Map<String, Long> before = sequentialScans();
+            query.run();
+            Map<String, Long> after = sequentialScans();
+
+            List<String> scanned = new ArrayList<>();
+            for (Map.Entry<String, Long> table : after.entrySet()) {
+                if (table.getValue() > before.getOrDefault(table.getKey(), 0L)) {
+                    scanned.add(table.getKey());
+                }
+            }
+            status.setRollbackOnly();
+            return scanned;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> sequentialScans() {
+        List<Object[]> rows = entityManager
+                .createNativeQuery("select cast(relname as text), seq_scan from pg_stat_xact_user_tables")
+                .getResultList();
+        Map<String, Long> scans = new HashMap<>();
+        for (Object[] row : rows) {
+            scans.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        return scans;
+    }
+
+}
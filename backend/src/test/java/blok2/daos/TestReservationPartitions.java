@@ -0,0 +1,140 @@
+package blok2.daos;
+
+import blok2.BaseTest;
+import blok2.TestSharedMethods;
+import blok2.daos.db.DBReservationPartitionDao;
+import blok2.model.Authority;
+import blok2.model.Building;
+import blok2.model.calendar.Timeslot;
+import blok2.model.penalty.Penalty;
+import blok2.model.reservables.Location;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Collections;
+
+public class TestReservationPartitions extends BaseTest {
+
+    @Autowired
+    private DBReservationPartitionDao partitionDao;
+
+    @Autowired
+    private ILocationReservationDao locationReservationDao;
+
+    @Autowired
+    private IPenaltyDao penaltyDao;
+
+    @Autowired
+    private IUserDao userDao;
+
+    @Autowired
+    private ILocationDao locationDao;
+
+    @Autowired
+    private IAuthorityDao authorityDao;
+
+    @Autowired
+    private ITimeslotDao timeslotDAO;
+
+    @Autowired
+    private IBuildingDao buildingDao;
+
+    private Location testLocation;
+    private User testUser;
+    private Timeslot pastTimeslot;
+
+    @Override
+    public void populateDatabase() throws SQLException {
+        Authority authority = TestSharedMethods.insertTestAuthority(authorityDao);
+        Building testBuilding = buildingDao.addBuilding(TestSharedMethods.testBuilding());
+        testLocation = locationDao.addLocation(TestSharedMethods.testLocation(authority.clone(), testBuilding));
+
+        testUser = TestSharedMethods.studentTestUser();
+        TestSharedMethods.addTestUsers(userDao, testUser);
+
+        pastTimeslot = timeslotDAO.addTimeslot(TestSharedMethods.pastCalendarPeriods(testLocation).get(0));
+        LocationReservation reservation = new LocationReservation(testUser, pastTimeslot, LocationReservation.State.ABSENT);
+        Assert.assertTrue(locationReservationDao.addLocationReservationIfStillRoomAtomically(reservation));
+        penaltyDao.addPenalty(new Penalty(50, "", null, "custom", reservation));
+    }
+
+    @Test
+    public void createPartitionsAheadTest() throws SQLException {
+        // Nothing to do right after the migration
+        Assert.assertEquals(0, partitionDao.createPartitions(5000, 2));
+
+        // The next timeslots would not fit in the partitions of the migration (up to 15000)
+        execute("select setval('timeslot_id_seq', 20000)");
+        Assert.assertEquals(3, partitionDao.createPartitions(5000, 2));
+        Assert.assertEquals(0, partitionDao.createPartitions(5000, 2));
+    }
+
+    @Test
+    public void createPartitionsForNewTimeslotsTest() throws SQLException {
+        // Timeslots are created past the partitions of the migration, e.g. in bulk, before the nightly maintenance
+        execute("select setval('timeslot_id_seq', 20000)");
+        Timeslot timeslot = timeslotDAO.addTimeslot(TestSharedMethods.upcomingCalendarPeriods(testLocation).get(0));
+
+        // Their reservations can be stored right away, the partitions ahead are created as well
+        LocationReservation reservation = new LocationReservation(testUser, timeslot, LocationReservation.State.APPROVED);
+        Assert.assertTrue(locationReservationDao.addLocationReservationIfStillRoomAtomically(reservation));
+        Assert.assertEquals(0, partitionDao.createPartitions(5000, 2));
+    }
+
+    @Test
+    public void updateSetsUpdatedAtTest() throws SQLException {
+        // A reservation in a partition of the migration, and one in a partition that was created afterwards
+        execute("select setval('timeslot_id_seq', 20000)");
+        Timeslot timeslot = timeslotDAO.addTimeslot(TestSharedMethods.upcomingCalendarPeriods(testLocation).get(0));
+        LocationReservation reservation = new LocationReservation(testUser, timeslot, LocationReservation.State.APPROVED);
+        Assert.assertTrue(locationReservationDao.addLocationReservationIfStillRoomAtomically(reservation));
+
+        // The update can't backdate updated_at, the trigger of every partition sets it to the time of the update
+        execute("update location_reservations set state = 'PRESENT', updated_at = '2000-01-01'");
+        Assert.assertEquals(2, count("select count(*) from location_reservations " +
+                "where updated_at > now() - interval '1 hour'"));
+    }
+
+    @Test
+    public void archivePartitionsTest() throws SQLException {
+        // The partition of the past timeslot is still in use, timeslots are created in it
+        Assert.assertTrue(partitionDao.archivePartitions(LocalDate.now()).isEmpty());
+
+        execute("select setval('timeslot_id_seq', 10000)");
+        partitionDao.createPartitions(5000, 2);
+
+        // Partitions with timeslots on or after the cutoff are kept, the partitions ahead as well
+        Assert.assertEquals(Collections.singletonList("location_reservations_5000_10000"),
+                partitionDao.archivePartitions(pastTimeslot.timeslotDate()));
+        Assert.assertEquals(Collections.singletonList("location_reservations_0_5000"),
+                partitionDao.archivePartitions(LocalDate.now()));
+
+        // The reservation is archived, its penalty is kept
+        Assert.assertTrue(locationReservationDao.getAllLocationReservationsOfUser(testUser.getUserId()).isEmpty());
+        Assert.assertEquals(1, count("select count(*) from archive.location_reservations_0_5000"));
+        Assert.assertEquals(50, penaltyDao.getUserPenalty(testUser.getUserId()));
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = connectionProvider.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection conn = connectionProvider.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+}
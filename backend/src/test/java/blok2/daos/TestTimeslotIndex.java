@@ -0,0 +1,193 @@
+package blok2.daos;
+
+import blok2.BaseTest;
+import blok2.TestSharedMethods;
+import blok2.daos.repositories.TimeslotRepository;
+import blok2.model.Authority;
+import blok2.model.Building;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservables.Location;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TestTimeslotIndex extends BaseTest {
+
+    @Autowired
+    private ILocationDao locationDao;
+
+    @Autowired
+    private IAuthorityDao authorityDao;
+
+    @Autowired
+    private IBuildingDao buildingDao;
+
+    @Autowired
+    private ITimeslotDao timeslotDAO;
+
+    @Autowired
+    private IUserDao userDao;
+
+    @Autowired
+    private ILocationReservationDao locationReservationDao;
+
+    @Autowired
+    private TimeslotRepository timeslotRepository;
+
+    private final LocalDate today = LocalDate.now();
+    private final LocalDate tomorrow = today.plusDays(1);
+
+    private Location testLocation;
+    private Timeslot yesterday;
+    private Timeslot tomorrowMorning;
+    private Timeslot tomorrowAfternoon;
+    private Timeslot later;
+    private User testUser;
+
+    @Override
+    public void populateDatabase() {
+        Authority authority = TestSharedMethods.insertTestAuthority(authorityDao);
+        Building testBuilding = buildingDao.addBuilding(TestSharedMethods.testBuilding());
+        testLocation = locationDao.addLocation(TestSharedMethods.testLocation(authority.clone(), testBuilding));
+
+        // Added out of order, the index sorts them by date and closing hour.
+        later = timeslotDAO.addTimeslot(timeslot(today.plusWeeks(2), 9, 17));
+        tomorrowAfternoon = timeslotDAO.addTimeslot(timeslot(tomorrow, 13, 17));
+        tomorrowMorning = timeslotDAO.addTimeslot(timeslot(tomorrow, 9, 12));
+        yesterday = timeslotDAO.addTimeslot(timeslot(today.minusDays(1), 9, 17));
+
+        testUser = TestSharedMethods.studentTestUser();
+        TestSharedMethods.addTestUsers(userDao, testUser);
+    }
+
+    @Test
+    public void lookupsMatchDatabaseTest() {
+        int locationId = testLocation.getLocationId();
+        // The timeslots in the database, ordered like the index orders them.
+        List<Timeslot> inDatabase = timeslotRepository.getAllByLocationId(locationId).stream()
+                .sorted(Comparator.comparing(Timeslot::timeslotDate).thenComparing(Timeslot::getClosingHour))
+                .collect(Collectors.toList());
+
+        // The morning closes before half past twelve, the afternoon is the next one.
+        Assert.assertEquals(tomorrowAfternoon, timeslotIndex.getCurrentOrNextTimeslot(locationId, tomorrow.atTime(12, 30)).orElse(null));
+        Assert.assertEquals(inDatabase.stream()
+                        .filter(t -> t.timeslotDate().isAfter(tomorrow)
+                                || (t.timeslotDate().equals(tomorrow) && t.getClosingHour().isAfter(LocalTime.of(12, 30))))
+                        .findFirst(),
+                timeslotIndex.getCurrentOrNextTimeslot(locationId, tomorrow.atTime(12, 30)));
+        Assert.assertEquals(tomorrowMorning, timeslotIndex.getCurrentOrNextTimeslot(locationId, today.atTime(18, 0)).orElse(null));
+        Assert.assertFalse(timeslotIndex.getCurrentOrNextTimeslot(locationId, today.plusWeeks(3).atStartOfDay()).isPresent());
+
+        Assert.assertEquals(Arrays.asList(tomorrowMorning, tomorrowAfternoon), timeslotIndex.getTimeslotsOnDate(locationId, tomorrow));
+        Assert.assertEquals(inDatabase.stream().filter(t -> t.timeslotDate().equals(tomorrow)).collect(Collectors.toList()),
+                timeslotIndex.getTimeslotsOnDate(locationId, tomorrow));
+        Assert.assertTrue(timeslotIndex.getTimeslotsOnDate(locationId, today).isEmpty());
+
+        Assert.assertEquals(Arrays.asList(tomorrowMorning, tomorrowAfternoon, later), timeslotIndex.getTimeslotsAfterDate(locationId, today));
+        Assert.assertEquals(inDatabase.stream().filter(t -> t.timeslotDate().isAfter(today.minusWeeks(1))).collect(Collectors.toList()),
+                timeslotIndex.getTimeslotsAfterDate(locationId, today.minusWeeks(1)));
+    }
+
+    @Test
+    public void writesKeepIndexCurrentTest() throws SQLException {
+        int locationId = testLocation.getLocationId();
+        Assert.assertEquals(Arrays.asList(tomorrowMorning, tomorrowAfternoon), timeslotIndex.getTimeslotsOnDate(locationId, tomorrow));
+
+        // Moving the afternoon to the evening keeps it after the morning, moving the morning to today removes it from tomorrow.
+        tomorrowAfternoon.setClosingHour(LocalTime.of(22, 0));
+        timeslotDAO.updateTimeslot(tomorrowAfternoon);
+        tomorrowMorning.setTimeslotDate(today);
+        timeslotDAO.updateTimeslot(tomorrowMorning);
+        Assert.assertEquals(Collections.singletonList(tomorrowAfternoon), timeslotIndex.getTimeslotsOnDate(locationId, tomorrow));
+        Assert.assertEquals(LocalTime.of(22, 0), timeslotIndex.getTimeslotsOnDate(locationId, tomorrow).get(0).getClosingHour());
+        Assert.assertEquals(Collections.singletonList(tomorrowMorning), timeslotIndex.getTimeslotsOnDate(locationId, today));
+
+        timeslotDAO.deleteTimeslot(tomorrowAfternoon);
+        Assert.assertTrue(timeslotIndex.getTimeslotsOnDate(locationId, tomorrow).isEmpty());
+        Timeslot added = timeslotDAO.addTimeslot(timeslot(tomorrow, 8, 10));
+        Assert.assertEquals(Collections.singletonList(added), timeslotIndex.getTimeslotsOnDate(locationId, tomorrow));
+
+        // The amount of reservations follows the reservations.
+        LocationReservation reservation = new LocationReservation(testUser, later, LocationReservation.State.APPROVED);
+        Assert.assertTrue(locationReservationDao.addLocationReservationIfStillRoomAtomically(reservation));
+        Assert.assertEquals(1, timeslotIndex.getTimeslotsAfterDate(locationId, today.plusWeeks(1)).get(0).getAmountOfReservations());
+        locationReservationDao.deleteLocationReservation(locationReservationDao.getLocationReservation(testUser.getUserId(), later));
+        Assert.assertEquals(0, timeslotIndex.getTimeslotsAfterDate(locationId, today.plusWeeks(1)).get(0).getAmountOfReservations());
+
+        // The index hands out copies, changing them does not change the index.
+        timeslotIndex.getTimeslotsOnDate(locationId, today).get(0).setSeatCount(0);
+        Assert.assertEquals(testLocation.getNumberOfSeats(), (int) timeslotIndex.getTimeslotsOnDate(locationId, today).get(0).getSeatCount());
+    }
+
+    @Test
+    public void deletedLocationTest() {
+        int locationId = testLocation.getLocationId();
+        Assert.assertEquals(4, timeslotIndex.getTimeslotsAfterDate(locationId, today.minusWeeks(1)).size());
+
+        // The timeslots of the location are deleted with it.
+        locationDao.deleteLocation(locationId);
+        Assert.assertTrue(timeslotIndex.getTimeslotsAfterDate(locationId, today.minusWeeks(1)).isEmpty());
+        Assert.assertFalse(timeslotIndex.getCurrentOrNextTimeslot(locationId, today.atStartOfDay()).isPresent());
+    }
+
+    @Test
+    public void reconcileCorrectsDriftTest() throws SQLException {
+        int locationId = testLocation.getLocationId();
+        Assert.assertEquals(0, timeslotIndex.getTimeslotsOnDate(locationId, tomorrow).get(0).getAmountOfReservations());
+
+        // Changes that do not go through the services, e.g. of another backend instance, are only seen after a reconcile.
+        try (Connection conn = connectionProvider.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("update timeslots set reservation_count = 3 where sequence_number = " + tomorrowMorning.getTimeslotSeqnr());
+            stmt.execute("delete from timeslots where sequence_number = " + yesterday.getTimeslotSeqnr());
+        }
+        Assert.assertEquals(0, timeslotIndex.getTimeslotsOnDate(locationId, tomorrow).get(0).getAmountOfReservations());
+
+        timeslotIndex.reconcile();
+        Assert.assertEquals(3, timeslotIndex.getTimeslotsOnDate(locationId, tomorrow).get(0).getAmountOfReservations());
+        Assert.assertTrue(timeslotIndex.getTimeslotsOnDate(locationId, today.minusDays(1)).isEmpty());
+    }
+
+    @Test
+    public void windowTest() {
+        int locationId = testLocation.getLocationId();
+        LocalDate longAgo = today.minusMonths(2);
+        Assert.assertTrue(timeslotIndex.covers(today.minusDays(1)));
+        Assert.assertFalse(timeslotIndex.covers(longAgo));
+
+        // Timeslots before the window are not kept in the index, they are looked up in the database.
+        Timeslot old = timeslotDAO.addTimeslot(timeslot(longAgo, 9, 17));
+        Assert.assertTrue(timeslotIndex.getTimeslotsOnDate(locationId, longAgo).isEmpty());
+        Assert.assertEquals(Collections.singletonList(old), timeslotDAO.getTimeslotsOfLocationOnTimeslotDate(locationId, longAgo));
+        Assert.assertEquals(Arrays.asList(old, yesterday, tomorrowMorning, tomorrowAfternoon, later),
+                timeslotDAO.getTimeslotsOfLocationAfterTimeslotDate(locationId, longAgo.minusDays(1)));
+        timeslotIndex.reconcile();
+        Assert.assertTrue(timeslotIndex.getTimeslotsOnDate(locationId, longAgo).isEmpty());
+
+        // As the window moves on, the dates that fall out of it are dropped.
+        timeslotIndex.reconcile(tomorrow);
+        Assert.assertFalse(timeslotIndex.covers(today));
+        Assert.assertEquals(Arrays.asList(tomorrowMorning, tomorrowAfternoon, later),
+                timeslotIndex.getTimeslotsAfterDate(locationId, today.minusWeeks(1)));
+        Assert.assertEquals(Collections.singletonList(yesterday),
+                timeslotDAO.getTimeslotsOfLocationOnTimeslotDate(locationId, today.minusDays(1)));
+    }
+
+    private Timeslot timeslot(LocalDate date, int openingHour, int closingHour) {
+        return new Timeslot(null, date, LocalTime.of(openingHour, 0), LocalTime.of(closingHour, 0), false, null,
+                testLocation.getNumberOfSeats(), testLocation.getLocationId());
+    }
+
+}
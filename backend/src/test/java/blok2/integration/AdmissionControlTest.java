@@ -0,0 +1,55 @@
+package blok2.integration;
+
+import blok2.helpers.exceptions.NoSuchDatabaseObjectException;
+import blok2.model.calendar.Timeslot;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithSecurityContextTestExecutionListener;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * With a queue depth threshold of 0, the reservation queue is always considered to be overloaded.
+ */
+@TestExecutionListeners(WithSecurityContextTestExecutionListener.class)
+@TestPropertySource(properties = "custom.reservations.admission.maxQueueDepth=0")
+public class AdmissionControlTest extends BaseIntegrationTest {
+
+    @Test(expected = NoSuchDatabaseObjectException.class)
+    @WithUserDetails(value = "student2", userDetailsServiceBeanName = "testUserDetails")
+    public void testCreateReservationWhenOverloaded() throws Exception {
+        Timeslot timeslot = timeslotDAO.getTimeslot(calendarPeriods.get(0).getTimeslotSeqnr());
+
+        mockMvc.perform(post("/locations/reservations").with(csrf())
+                .content(objectMapper.writeValueAsString(timeslot)).contentType("application/json")).andDo(print())
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+        // The reservation must not have been queued.
+        locationReservationDao.getLocationReservation(student2.getUserId(), timeslot);
+    }
+
+    @Test
+    @WithUserDetails(value = "admin", userDetailsServiceBeanName = "testUserDetails")
+    public void testAdmissionStats() throws Exception {
+        Timeslot timeslot = timeslotDAO.getTimeslot(calendarPeriods.get(0).getTimeslotSeqnr());
+        mockMvc.perform(post("/locations/reservations").with(csrf())
+                .content(objectMapper.writeValueAsString(timeslot)).contentType("application/json"))
+                .andExpect(status().isTooManyRequests());
+
+        mockMvc.perform(get("/stats/admission").with(csrf())).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.maxQueueDepth").value(0))
+                .andExpect(jsonPath("$.rejectedOnQueueDepth").isNumber());
+    }
+
+}
@@ -0,0 +1,124 @@
+package blok2.integration;
+
+import blok2.model.calendar.Timeslot;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithSecurityContextTestExecutionListener;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.context.TestExecutionListeners;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The public read endpoints answer a request with the ETag of an unchanged resource with 304 Not Modified, without
+ * any query. The queries are counted by Hibernate, which executes every query of the repositories.
+ */
+@TestExecutionListeners(WithSecurityContextTestExecutionListener.class)
+public class ConditionalGetTest extends BaseIntegrationTest {
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private List<String> resources() {
+        return Arrays.asList(
+                "/locations",
+                "/locations/" + testLocation.getLocationId(),
+                "/locations/timeslots/" + testLocation.getLocationId(),
+                "/stadgent/locations"
+        );
+    }
+
+    @After
+    public void disableStatistics() {
+        if (statistics != null) {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    @WithUserDetails(value = "student1", userDetailsServiceBeanName = "testUserDetails")
+    public void testUnchangedResourcesAreNotModified() throws Exception {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        for (String resource : resources()) {
+            String etag = etagOf(resource);
+
+            statistics.clear();
+            mockMvc.perform(get(resource).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isNotModified())
+                    .andExpect(header().string(HttpHeaders.ETAG, etag));
+            Assert.assertEquals("Queries for " + resource, 0, statistics.getPrepareStatementCount());
+        }
+    }
+
+    @Test
+    @WithUserDetails(value = "student1", userDetailsServiceBeanName = "testUserDetails")
+    public void testChangedResourcesAreSentAgain() throws Exception {
+        String[] etags = new String[resources().size()];
+        for (int i = 0; i < etags.length; i++) {
+            etags[i] = etagOf(resources().get(i));
+        }
+
+        // Every resource shows the timeslots of the location, or whether it is open
+        Timeslot timeslot = timeslotDAO.getTimeslot(calendarPeriods.get(0).getTimeslotSeqnr());
+        timeslot.setSeatCount(timeslot.getSeatCount() + 1);
+        timeslotDAO.updateTimeslot(timeslot);
+
+        for (int i = 0; i < etags.length; i++) {
+            String etag = mockMvc.perform(get(resources().get(i)).header(HttpHeaders.IF_NONE_MATCH, etags[i]))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            Assert.assertNotEquals(etags[i], etag);
+        }
+    }
+
+    @Test
+    @WithUserDetails(value = "student1", userDetailsServiceBeanName = "testUserDetails")
+    public void testChangesOfOtherInstancesAreSentAgain() throws Exception {
+        List<String> resources = Arrays.asList(
+                "/locations/" + testLocation.getLocationId(),
+                "/locations/timeslots/" + testLocation.getLocationId()
+        );
+        String[] etags = new String[resources.size()];
+        for (int i = 0; i < etags.length; i++) {
+            etags[i] = etagOf(resources.get(i));
+        }
+
+        // The reservations of another location are not shown
+        dataVersions.receive("reservations:" + testLocationHoGent.getLocationId());
+        for (int i = 0; i < etags.length; i++) {
+            mockMvc.perform(get(resources.get(i)).header(HttpHeaders.IF_NONE_MATCH, etags[i]))
+                    .andExpect(status().isNotModified());
+        }
+
+        // Another instance stored a reservation for the location
+        dataVersions.receive("reservations:" + testLocation.getLocationId());
+        for (int i = 0; i < etags.length; i++) {
+            mockMvc.perform(get(resources.get(i)).header(HttpHeaders.IF_NONE_MATCH, etags[i]))
+                    .andExpect(status().isOk());
+        }
+    }
+
+    private String etagOf(String resource) throws Exception {
+        String etag = mockMvc.perform(get(resource))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Assert.assertNotNull("ETag of " + resource, etag);
+        return etag;
+    }
+
+}
@@ -35,6 +35,25 @@ public class LocationControllerTest extends BaseIntegrationTest {
                 .andExpect(jsonPath("$.length()").value(locations.size() + unapprovedLocations.size()));
     }
 
+    @Test
+    @WithUserDetails(value = "student1", userDetailsServiceBeanName = "testUserDetails")
+    public void testGetAllLocationsAfterChanges() throws Exception {
+        int count = locations.size() + unapprovedLocations.size();
+        mockMvc.perform(get("/locations")).andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(count));
+
+        // The served list must follow the changes to the locations
+        Location location = locationDao.getLocationById(testLocation.getLocationId());
+        location.setName("ZZZ Renamed location");
+        locationDao.updateLocation(location);
+        mockMvc.perform(get("/locations")).andExpect(status().isOk())
+                .andExpect(jsonPath("$[" + (count - 1) + "].name").value("ZZZ Renamed location"));
+
+        locationDao.deleteLocation(testLocation.getLocationId());
+        mockMvc.perform(get("/locations")).andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(count - 1));
+    }
+
     @Test
     @WithUserDetails(value = "admin", userDetailsServiceBeanName = "testUserDetails")
     public void testPostNewLocationDuplicate() throws Exception {
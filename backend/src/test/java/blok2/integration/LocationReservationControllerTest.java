@@ -2,6 +2,7 @@ package blok2.integration;
 
 import blok2.TestSharedMethods;
 import blok2.helpers.Base64String;
+import blok2.helpers.KeysetPage;
 import blok2.helpers.Pair;
 import blok2.model.calendar.Timeslot;
 import blok2.model.reservations.LocationReservation;
@@ -25,6 +26,7 @@ import java.util.List;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -51,6 +53,27 @@ public class LocationReservationControllerTest extends BaseIntegrationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    @WithUserDetails(value = "admin", userDetailsServiceBeanName = "testUserDetails")
+    public void testGetReservationsOfStudentPaged() throws Exception {
+        String nextPageToken = mockMvc.perform(get("/locations/reservations/user?limit=2&id=" + student.getUserId()).with(csrf()))
+                .andDo(print())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(header().exists(KeysetPage.NEXT_PAGE_TOKEN_HEADER))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(KeysetPage.NEXT_PAGE_TOKEN_HEADER);
+
+        mockMvc.perform(get("/locations/reservations/user?limit=2&id=" + student.getUserId() + "&pageToken=" + nextPageToken).with(csrf()))
+                .andDo(print())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(header().doesNotExist(KeysetPage.NEXT_PAGE_TOKEN_HEADER))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/locations/reservations/user?id=" + student.getUserId() + "&pageToken=garbage").with(csrf()))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @WithUserDetails(value = "student1", userDetailsServiceBeanName = "testUserDetails")
     public void testGetReservationsOfStudentAsSelf() throws Exception {
@@ -92,7 +115,7 @@ public class LocationReservationControllerTest extends BaseIntegrationTest {
         int currentAmount = locationReservationDao.getAllLocationReservationsOfUser(student.getUserId()).size();
         mockMvc.perform(post("/locations/reservations").with(csrf())
                 .content(objectMapper.writeValueAsString(timeslot)).contentType("application/json")).andDo(print())
-                .andExpect(status().isOk()); // NOTE: Validity of reservation is not checked before the response is sent in queued system.
+                .andExpect(status().isOk()); // The student already has an approved reservation for the timeslot, it is kept.
 
         // NOTE: Cannot guarantee reservation is already visible with queued system, but the amount should not be changed
         //       regardless of wheter the reservation has been processed already or not.
@@ -100,6 +123,39 @@ public class LocationReservationControllerTest extends BaseIntegrationTest {
         Assert.assertEquals(currentAmount, list.size());
     }
 
+    @Test
+    @WithUserDetails(value = "student2", userDetailsServiceBeanName = "testUserDetails")
+    public void testCreateReservationPendingDuplicate() throws Exception {
+        Timeslot timeslot = timeslotDAO.getTimeslot(calendarPeriods.get(0).getTimeslotSeqnr());
+
+        mockMvc.perform(post("/locations/reservations").with(csrf())
+                .content(objectMapper.writeValueAsString(timeslot)).contentType("application/json")).andDo(print())
+                .andExpect(status().isOk());
+
+        // The repeat gets the same response, whether the reservation is still pending or approved in the meantime.
+        mockMvc.perform(post("/locations/reservations").with(csrf())
+                .content(objectMapper.writeValueAsString(timeslot)).contentType("application/json")).andDo(print())
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithUserDetails(value = "student2", userDetailsServiceBeanName = "testUserDetails")
+    public void testCreateReservationIdempotencyKey() throws Exception {
+        Timeslot timeslot = timeslotDAO.getTimeslot(calendarPeriods.get(0).getTimeslotSeqnr());
+        Timeslot other = timeslotDAO.getTimeslot(upcomingTimeslots.get(0).getTimeslotSeqnr());
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/locations/reservations").with(csrf()).header("Idempotency-Key", "key-1")
+                    .content(objectMapper.writeValueAsString(timeslot)).contentType("application/json")).andDo(print())
+                    .andExpect(status().isOk());
+        }
+
+        // The key belongs to the first timeslot.
+        mockMvc.perform(post("/locations/reservations").with(csrf()).header("Idempotency-Key", "key-1")
+                .content(objectMapper.writeValueAsString(other)).contentType("application/json")).andDo(print())
+                .andExpect(status().isUnprocessableEntity());
+    }
+
     // todo more tests for more specific calendar periods
 
     @Test
@@ -8,11 +8,14 @@ import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.TestExecutionListeners;
 import org.threeten.extra.Weeks;
 
+import java.time.LocalDate;
 import java.time.LocalTime;
 
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @TestExecutionListeners(WithSecurityContextTestExecutionListener.class)
@@ -52,6 +55,17 @@ public class TimeslotControllerTest extends BaseIntegrationTest {
         Assert.assertNotEquals(toUpdate.getClosingHour(), nowInDb.getClosingHour());
     }
 
+    @Test
+    public void testTimeslotsFromSixMonthsAgo() throws Exception {
+        // The timeslots of the first date are on the first page as well.
+        Timeslot first = timeslotDAO.addTimeslot(new Timeslot(null, LocalDate.now().minusMonths(6), LocalTime.of(9, 0),
+                LocalTime.of(17, 0), false, null, testLocation.getNumberOfSeats(), testLocation.getLocationId()));
+
+        mockMvc.perform(get("/locations/timeslots/" + testLocation.getLocationId()))
+                .andDo(print()).andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.timeslotSeqnr == " + first.getTimeslotSeqnr() + ")]").isNotEmpty());
+    }
+
     @Test
     @WithUserDetails(value = "admin", userDetailsServiceBeanName = "testUserDetails")
     public void testValidTimeslot() throws Exception {
@@ -0,0 +1,89 @@
+package blok2.scheduling;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ChunkedMpscQueueTest {
+
+    @Test
+    public void drainKeepsInsertionOrderTest() {
+        ChunkedMpscQueue<Integer> queue = new ChunkedMpscQueue<>(4);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i + 1, queue.add(i));
+        }
+        Assert.assertEquals(10, queue.size());
+
+        List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(10, queue.drainTo(batch));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i), batch.get(i));
+        }
+
+        // The first element after a drain is reported as the first one again.
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, queue.drainTo(batch));
+        Assert.assertEquals(1, queue.add(10));
+    }
+
+    @Test
+    public void capacityBoundTest() {
+        ChunkedMpscQueue<Integer> queue = new ChunkedMpscQueue<>(2, 3);
+        Assert.assertEquals(1, queue.add(0));
+        Assert.assertEquals(2, queue.add(1));
+        Assert.assertEquals(3, queue.add(2));
+        Assert.assertEquals(0, queue.add(3));
+
+        List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(3, queue.drainTo(batch));
+        Assert.assertEquals(1, queue.add(4));
+    }
+
+    @Test
+    public void concurrentProducersTest() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 50_000;
+        ChunkedMpscQueue<long[]> queue = new ChunkedMpscQueue<>(64);
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    queue.add(new long[]{producer, i});
+                }
+            });
+        }
+        start.countDown();
+
+        // Drain while the producers are still adding: nothing may be lost and the
+        // elements of every producer must come out in the order they were added.
+        List<long[]> drained = new ArrayList<>();
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            queue.drainTo(drained);
+        }
+        queue.drainTo(drained);
+
+        Assert.assertEquals(producers * perProducer, drained.size());
+        long[] expected = new long[producers];
+        for (long[] element : drained) {
+            int producer = (int) element[0];
+            Assert.assertEquals(expected[producer], element[1]);
+            expected[producer]++;
+        }
+    }
+
+}
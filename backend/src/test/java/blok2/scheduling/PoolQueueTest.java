@@ -0,0 +1,107 @@
+package blok2.scheduling;
+
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
+
+public class PoolQueueTest {
+
+    @Test
+    public void randomPoolIsReleasedAtItsDeadlineTest() throws InterruptedException {
+        // The pre-reservation timer of this timeslot expires in 300 ms.
+        LocalDateTime deadline = LocalDateTime.now().plusNanos(300_000_000);
+        Timeslot timeslot = new Timeslot(1, LocalDate.now(), LocalTime.of(9, 0), LocalTime.of(17, 0),
+                true, deadline.minusMinutes(RANDOM_RESERVATION_DURATION_MINS), 100, 1);
+
+        PoolQueue poolQueue = new PoolQueue();
+        for (int i = 0; i < 10; i++) {
+            User user = new User();
+            user.setUserId("user-" + i);
+            poolQueue.pushReservation(new LocationReservation(user, timeslot, LocationReservation.State.PENDING));
+        }
+        Assert.assertEquals(1, poolQueue.getRandomPoolCount());
+
+        poolQueue.releaseRandomPool();
+        LocalDateTime releasedAt = LocalDateTime.now();
+        Assert.assertTrue(releasedAt.isAfter(deadline));
+        // Generous margin for a busy test machine, the minute cron could be 59 seconds late.
+        Assert.assertTrue(releasedAt.isBefore(deadline.plusNanos(200_000_000)));
+
+        ReservationPool pool = poolQueue.popPool();
+        Assert.assertEquals(ReservationPool.Kind.RANDOM, pool.getKind());
+        Assert.assertEquals(10, pool.size());
+        Assert.assertEquals(0, poolQueue.getRandomPoolCount());
+    }
+
+    @Test
+    public void poolsClosingTogetherFormOneWaveTest() throws InterruptedException {
+        LocalDateTime reservableFrom = LocalDateTime.now().plusNanos(100_000_000).minusMinutes(RANDOM_RESERVATION_DURATION_MINS);
+        PoolQueue poolQueue = new PoolQueue(true);
+        for (int seqnr = 0; seqnr < 5; seqnr++) {
+            Timeslot timeslot = new Timeslot(seqnr, LocalDate.now(), LocalTime.of(9, 0), LocalTime.of(17, 0),
+                    true, reservableFrom, 100, seqnr);
+            for (int i = 0; i < 3; i++) {
+                User user = new User();
+                user.setUserId(String.format("user-%d-%d", seqnr, i));
+                poolQueue.pushReservation(new LocationReservation(user, timeslot, LocationReservation.State.PENDING));
+            }
+        }
+        Assert.assertEquals(5, poolQueue.getRandomPoolCount());
+        Assert.assertEquals(15, poolQueue.getRandomPoolReservationCount());
+
+        // One size per random pool that was part of the wave.
+        Assert.assertEquals(Arrays.asList(3, 3, 3, 3, 3), poolQueue.releaseRandomPool());
+
+        ReservationPool wave = poolQueue.popPool();
+        Assert.assertEquals(ReservationPool.Kind.RELEASE_WAVE, wave.getKind());
+        Assert.assertEquals(15, wave.size());
+        Set<Integer> timeslots = new HashSet<>();
+        for (LocationReservation reservation : wave.getReservations()) {
+            timeslots.add(reservation.getTimeslot().getTimeslotSeqnr());
+        }
+        Assert.assertEquals(5, timeslots.size());
+        Assert.assertEquals(0, poolQueue.getRandomPoolCount());
+    }
+
+    @Test(timeout = 10000)
+    public void pushesDuringReleaseAreNotLostTest() throws InterruptedException {
+        LocalDateTime deadline = LocalDateTime.now().plusNanos(50_000_000);
+        Timeslot timeslot = new Timeslot(1, LocalDate.now(), LocalTime.of(9, 0), LocalTime.of(17, 0),
+                true, deadline.minusMinutes(RANDOM_RESERVATION_DURATION_MINS), 100, 1);
+        PoolQueue poolQueue = new PoolQueue();
+
+        // Keeps pushing while the random pool is released, every reservation must end up in a pool.
+        int amount = 20000;
+        Thread pusher = new Thread(() -> {
+            for (int i = 1; i < amount; i++) {
+                User user = new User();
+                user.setUserId("user-" + i);
+                poolQueue.pushReservation(new LocationReservation(user, timeslot, LocationReservation.State.PENDING));
+            }
+        });
+        User first = new User();
+        first.setUserId("user-0");
+        poolQueue.pushReservation(new LocationReservation(first, timeslot, LocationReservation.State.PENDING));
+        pusher.start();
+        poolQueue.releaseRandomPool();
+        pusher.join();
+
+        int popped = 0;
+        while (popped < amount) {
+            popped += poolQueue.popPool().size();
+        }
+        Assert.assertEquals(amount, popped);
+    }
+
+}
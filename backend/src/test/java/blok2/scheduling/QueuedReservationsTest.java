@@ -0,0 +1,33 @@
+package blok2.scheduling;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class QueuedReservationsTest {
+
+    @Test
+    public void duplicatesAreRecognizedUntilDecidedTest() {
+        QueuedReservations queued = new QueuedReservations();
+        Assert.assertTrue(queued.add(1, "001"));
+        Assert.assertFalse(queued.add(1, "001"));
+        // Same user, other timeslot.
+        Assert.assertTrue(queued.add(2, "001"));
+        Assert.assertTrue(queued.add(1, "002"));
+
+        queued.removeAll(1, Arrays.asList("001", "002"));
+        Assert.assertFalse(queued.contains(1, "001"));
+        Assert.assertTrue(queued.contains(2, "001"));
+        Assert.assertTrue(queued.add(1, "001"));
+    }
+
+    @Test
+    public void removedReservationCanBeQueuedAgainTest() {
+        QueuedReservations queued = new QueuedReservations();
+        Assert.assertTrue(queued.add(1, "001"));
+        queued.remove(1, "001");
+        Assert.assertTrue(queued.add(1, "001"));
+    }
+
+}
@@ -0,0 +1,54 @@
+package blok2.scheduling;
+
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class ReservationMetricsTest {
+
+    @Test
+    public void decisionsAreCountedPerReasonTest() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReservationMetrics metrics = new ReservationMetrics(registry);
+
+        PoolDecision decision = new PoolDecision(1);
+        decision.approve("user-1");
+        decision.approve("user-2");
+        decision.reject("user-3", PoolDecision.RejectionReason.FULL);
+        metrics.recordDecision(decision);
+        metrics.recordRejected(PoolDecision.RejectionReason.TOO_EARLY);
+
+        Assert.assertEquals(2, registry.get("reservations.decisions").tag("outcome", "approved").counter().count(), 0);
+        Assert.assertEquals(1, registry.get("reservations.decisions").tag("reason", "full").counter().count(), 0);
+        Assert.assertEquals(1, registry.get("reservations.decisions").tag("reason", "too_early").counter().count(), 0);
+        Assert.assertEquals(0, registry.get("reservations.decisions").tag("reason", "not_reservable").counter().count(), 0);
+    }
+
+    @Test
+    public void decisionLatencyIsCountedFromEnqueueTest() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReservationMetrics metrics = new ReservationMetrics(registry);
+
+        Timeslot timeslot = new Timeslot(1, LocalDate.now(), LocalTime.of(9, 0), LocalTime.of(17, 0),
+                true, LocalDateTime.now().minusDays(1), 100, 1);
+        LocationReservation first = new LocationReservation(new User(), timeslot, LocationReservation.State.PENDING);
+        first.setEnqueuedAt(1000);
+        LocationReservation second = new LocationReservation(new User(), timeslot, LocationReservation.State.PENDING);
+        second.setEnqueuedAt(3000);
+        metrics.recordDecided(Arrays.asList(first, second), 5000);
+
+        Assert.assertEquals(2, registry.get("reservations.decision.latency").timer().count());
+        Assert.assertEquals(4000, registry.get("reservations.decision.latency").timer().max(TimeUnit.MILLISECONDS), 0);
+        Assert.assertEquals(6000, registry.get("reservations.decision.latency").timer().totalTime(TimeUnit.MILLISECONDS), 0);
+    }
+
+}
@@ -0,0 +1,41 @@
+package blok2.scheduling;
+
+import blok2.config.WebSocketConfiguration;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.reservations.LocationReservationStateChange;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ReservationStatePublisherTest {
+
+    @Test
+    public void publishSendsEveryUserTheirStateTest() {
+        SimpMessageSendingOperations template = mock(SimpMessageSendingOperations.class);
+        ReservationStatePublisher publisher = new ReservationStatePublisher(template);
+
+        PoolDecision decision = new PoolDecision(7);
+        decision.approve("001");
+        decision.reject("002", PoolDecision.RejectionReason.FULL);
+        publisher.publish(decision);
+
+        ArgumentCaptor<Object> approved = ArgumentCaptor.forClass(Object.class);
+        verify(template).convertAndSendToUser(eq("001"), eq(WebSocketConfiguration.RESERVATIONS_QUEUE), approved.capture());
+        LocationReservationStateChange change = (LocationReservationStateChange) approved.getValue();
+        Assert.assertEquals(7, change.getTimeslotSeqnr());
+        Assert.assertEquals(LocationReservation.State.APPROVED, change.getState());
+        Assert.assertNull(change.getReason());
+
+        ArgumentCaptor<Object> rejected = ArgumentCaptor.forClass(Object.class);
+        verify(template).convertAndSendToUser(eq("002"), eq(WebSocketConfiguration.RESERVATIONS_QUEUE), rejected.capture());
+        change = (LocationReservationStateChange) rejected.getValue();
+        Assert.assertEquals(LocationReservation.State.REJECTED, change.getState());
+        Assert.assertEquals("FULL", change.getReason());
+    }
+
+}
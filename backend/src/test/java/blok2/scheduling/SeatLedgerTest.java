@@ -0,0 +1,117 @@
+package blok2.scheduling;
+
+import blok2.BaseTest;
+import blok2.TestSharedMethods;
+import blok2.daos.*;
+import blok2.model.Authority;
+import blok2.model.Building;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservables.Location;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SeatLedgerTest extends BaseTest {
+
+    @Autowired
+    private ILocationReservationDao locationReservationDao;
+
+    @Autowired
+    private IUserDao userDao;
+
+    @Autowired
+    private ILocationDao locationDao;
+
+    @Autowired
+    private IAuthorityDao authorityDao;
+
+    @Autowired
+    private ITimeslotDao timeslotDAO;
+
+    @Autowired
+    private IBuildingDao buildingDao;
+
+    private Timeslot timeslot;
+    private User user1;
+    private User user2;
+
+    @Override
+    public void populateDatabase() throws SQLException {
+        Authority authority = TestSharedMethods.insertTestAuthority(authorityDao);
+        Building testBuilding = buildingDao.addBuilding(TestSharedMethods.testBuilding());
+
+        Location testLocation1Seat = TestSharedMethods.testLocation1Seat(authority.clone(), testBuilding);
+        locationDao.addLocation(testLocation1Seat);
+        timeslot = timeslotDAO.addTimeslot(TestSharedMethods.upcomingCalendarPeriods(testLocation1Seat).get(0));
+
+        user1 = TestSharedMethods.studentTestUser("001");
+        user2 = TestSharedMethods.studentTestUser("002");
+        TestSharedMethods.addTestUsers(userDao, user1, user2);
+    }
+
+    @Test
+    public void ledgerFollowsReservationsTest() throws SQLException {
+        LocationReservation lr1 = new LocationReservation(user1, timeslot, LocationReservation.State.APPROVED);
+        Assert.assertTrue(locationReservationDao.addLocationReservationIfStillRoomAtomically(lr1));
+
+        // The single seat is taken, the ledger knows this without asking the database.
+        Assert.assertFalse(seatLedger.tryReserve(timeslot.getTimeslotSeqnr()));
+        LocationReservation lr2 = new LocationReservation(user2, timeslot, LocationReservation.State.APPROVED);
+        Assert.assertFalse(locationReservationDao.addLocationReservationIfStillRoomAtomically(lr2));
+
+        // Deleting the reservation frees the seat in the ledger as well.
+        locationReservationDao.deleteLocationReservation(locationReservationDao.getLocationReservation(user1.getUserId(), timeslot));
+        Assert.assertTrue(locationReservationDao.addLocationReservationIfStillRoomAtomically(lr2));
+        Assert.assertEquals(1, timeslotDAO.getTimeslot(timeslot.getTimeslotSeqnr()).getAmountOfReservations());
+    }
+
+    @Test
+    public void reconcileCorrectsDriftTest() {
+        // Take the seat in the ledger without ever storing a reservation: the ledger drifts from the database.
+        Assert.assertTrue(seatLedger.tryReserve(timeslot.getTimeslotSeqnr()));
+        seatLedger.confirm(timeslot.getTimeslotSeqnr(), true);
+        Assert.assertFalse(seatLedger.tryReserve(timeslot.getTimeslotSeqnr()));
+
+        seatLedger.reconcile();
+
+        Assert.assertTrue(seatLedger.tryReserve(timeslot.getTimeslotSeqnr()));
+        seatLedger.confirm(timeslot.getTimeslotSeqnr(), false);
+    }
+
+    @Test
+    public void reconcileKeepsPendingSeatsTest() throws InterruptedException {
+        // A seat of which the reservation is still being stored is not in the database yet, but stays taken.
+        Assert.assertTrue(seatLedger.tryReserve(timeslot.getTimeslotSeqnr()));
+        seatLedger.reconcile();
+        Assert.assertFalse(seatLedger.tryReserve(timeslot.getTimeslotSeqnr()));
+        seatLedger.confirm(timeslot.getTimeslotSeqnr(), false);
+
+        // Reconciling while seats are being taken and freed never frees a seat that is still pending.
+        AtomicBoolean reconciling = new AtomicBoolean(true);
+        AtomicBoolean overbooked = new AtomicBoolean(false);
+        Thread reserver = new Thread(() -> {
+            while (reconciling.get()) {
+                if (seatLedger.tryReserve(timeslot.getTimeslotSeqnr())) {
+                    if (seatLedger.tryReserve(timeslot.getTimeslotSeqnr())) {
+                        overbooked.set(true);
+                        seatLedger.confirm(timeslot.getTimeslotSeqnr(), false);
+                    }
+                    seatLedger.confirm(timeslot.getTimeslotSeqnr(), false);
+                }
+            }
+        });
+        reserver.start();
+        for (int i = 0; i < 200; i++) {
+            seatLedger.reconcile();
+        }
+        reconciling.set(false);
+        reserver.join();
+        Assert.assertFalse(overbooked.get());
+    }
+
+}
@@ -0,0 +1,133 @@
+package blok2.scheduling;
+
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservations.LocationReservation;
+import blok2.model.users.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Burst test for the pool workers.
+ */
+public class TimeslotShardedExecutorTest {
+
+    private static final int TIMESLOTS = 32;
+    private static final int RESERVATIONS_PER_TIMESLOT = 20;
+
+    @Test
+    public void orderWithinTimeslotIsKeptTest() throws InterruptedException {
+        List<LocationReservation> burst = burst();
+        Map<Integer, List<String>> processed = new ConcurrentHashMap<>();
+
+        TimeslotShardedExecutor executor = new TimeslotShardedExecutor(4);
+        // Dispatch the burst in two pools, the second pool must be processed after the first one.
+        executor.dispatch(burst.subList(0, burst.size() / 2), pool -> record(pool, processed));
+        executor.dispatch(burst.subList(burst.size() / 2, burst.size()), pool -> record(pool, processed));
+        Assert.assertTrue(executor.shutdown(1, TimeUnit.MINUTES));
+
+        Assert.assertEquals(TIMESLOTS, processed.size());
+        for (int seqnr = 0; seqnr < TIMESLOTS; seqnr++) {
+            List<String> expected = new ArrayList<>();
+            for (LocationReservation reservation : burst) {
+                if (reservation.getTimeslot().getTimeslotSeqnr() == seqnr) {
+                    expected.add(reservation.getUser().getUserId());
+                }
+            }
+            Assert.assertEquals(expected, processed.get(seqnr));
+        }
+    }
+
+    @Test
+    public void shardsRunConcurrentlyTest() throws InterruptedException {
+        // Timeslots 0 to 3 belong to the four different shards. Each of them waits until all four are
+        // being processed at the same time, which only happens if the shards run concurrently.
+        List<LocationReservation> burst = burst().subList(0, 4);
+        CyclicBarrier allShards = new CyclicBarrier(4);
+        AtomicInteger met = new AtomicInteger(0);
+
+        TimeslotShardedExecutor executor = new TimeslotShardedExecutor(4);
+        executor.dispatch(burst, pool -> {
+            try {
+                allShards.await(10, TimeUnit.SECONDS);
+                met.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (BrokenBarrierException | TimeoutException e) {
+                // Not all shards got to run at the same time, the count stays short.
+            }
+        });
+        Assert.assertTrue(executor.shutdown(1, TimeUnit.MINUTES));
+
+        Assert.assertEquals(4, met.get());
+    }
+
+    @Test
+    public void throughputScalesWithWorkersTest() throws InterruptedException {
+        // Every reservation blocks for a fixed time, like a database round trip, so the time a burst takes does
+        // not depend on the amount of cores. Four workers should take about a quarter of the time of one, at
+        // least half of it is asserted to leave room for slow machines.
+        long oneWorker = processBurstMillis(1);
+        long fourWorkers = processBurstMillis(4);
+        Assert.assertTrue(String.format("1 worker took %d ms, 4 workers took %d ms", oneWorker, fourWorkers),
+                fourWorkers * 2 < oneWorker);
+    }
+
+    private long processBurstMillis(int workers) throws InterruptedException {
+        List<LocationReservation> burst = burst();
+        TimeslotShardedExecutor executor = new TimeslotShardedExecutor(workers);
+        long start = System.nanoTime();
+        executor.dispatch(burst, pool -> {
+            try {
+                Thread.sleep(2L * pool.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(executor.shutdown(1, TimeUnit.MINUTES));
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * A burst of reservations in which the timeslots are interleaved, as they would be in the FCFS pool.
+     */
+    private List<LocationReservation> burst() {
+        List<Timeslot> timeslots = new ArrayList<>();
+        for (int seqnr = 0; seqnr < TIMESLOTS; seqnr++) {
+            timeslots.add(new Timeslot(seqnr, LocalDate.now(), LocalTime.of(9, 0), LocalTime.of(17, 0),
+                    true, LocalDateTime.now().minusDays(1), 100, seqnr % 4));
+        }
+
+        List<LocationReservation> burst = new ArrayList<>();
+        for (int i = 0; i < RESERVATIONS_PER_TIMESLOT; i++) {
+            for (Timeslot timeslot : timeslots) {
+                User user = new User();
+                user.setUserId(String.format("user-%d-%d", timeslot.getTimeslotSeqnr(), i));
+                burst.add(new LocationReservation(user, timeslot, LocationReservation.State.PENDING));
+            }
+        }
+        return burst;
+    }
+
+    private void record(List<LocationReservation> pool, Map<Integer, List<String>> processed) {
+        for (LocationReservation reservation : pool) {
+            processed.computeIfAbsent(reservation.getTimeslot().getTimeslotSeqnr(),
+                    seqnr -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(reservation.getUser().getUserId());
+        }
+    }
+
+}
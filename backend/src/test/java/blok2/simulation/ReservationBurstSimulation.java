@@ -0,0 +1,351 @@
+package blok2.simulation;
+
+import blok2.BaseTest;
+import blok2.TestSharedMethods;
+import blok2.controllers.LocationReservationController;
+import blok2.daos.IAuthorityDao;
+import blok2.daos.IBuildingDao;
+import blok2.daos.ILocationDao;
+import blok2.daos.ITimeslotDao;
+import blok2.helpers.Institution;
+import blok2.model.Authority;
+import blok2.model.Building;
+import blok2.model.calendar.Timeslot;
+import blok2.model.reservables.Location;
+import blok2.model.users.User;
+import blok2.scheduling.PoolDecision;
+import blok2.scheduling.ReservationStatePublisher;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+import org.threeten.extra.YearWeek;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static blok2.config.PoolProcessor.RANDOM_RESERVATION_DURATION_MINS;
+
+/**
+ * Fires a burst of concurrent reservations at the controller, in-process and against the local test database,
+ * as a replacement for the artillery script in load-testing/ that needs a deployed server and real tokens.
+ *
+ * Every user reserves one timeslot whose random window is still open and one timeslot that is first come first
+ * serve. The simulation reports the enqueue latency (the call to createLocationReservation), the time until the
+ * decision was published and the end-to-end throughput, and fails if a timeslot got more reservations approved
+ * than it has seats.
+ *
+ * This takes minutes, so it is excluded from the test task. Run it with ./gradlew reservationBurst, the
+ * parameters can be changed with e.g. -Psimulation.users=20000 -Psimulation.seed=7 (cfr. the defaults below).
+ */
+@TestPropertySource(properties = "custom.reservations.admission.enabled=false")
+public class ReservationBurstSimulation extends BaseTest {
+
+    private static final long SEED = Long.getLong("simulation.seed", 42);
+    private static final int USERS = Integer.getInteger("simulation.users", 15000);
+    private static final int TIMESLOTS_PER_WINDOW = Integer.getInteger("simulation.timeslotsPerWindow", 20);
+    private static final int THREADS = Integer.getInteger("simulation.threads", 64);
+    // How long the random window is still open once the burst starts, the burst should be sent well within it.
+    private static final int RANDOM_WINDOW_SECONDS = Integer.getInteger("simulation.randomWindowSeconds", 60);
+
+    @Autowired
+    private LocationReservationController locationReservationController;
+
+    @Autowired
+    private RecordingStatePublisher statePublisher;
+
+    @Autowired
+    private IAuthorityDao authorityDao;
+
+    @Autowired
+    private IBuildingDao buildingDao;
+
+    @Autowired
+    private ILocationDao locationDao;
+
+    @Autowired
+    private ITimeslotDao timeslotDAO;
+
+    private final Random random = new Random(SEED);
+
+    private List<Timeslot> randomTimeslots;
+    private List<Timeslot> firstComeFirstServeTimeslots;
+    private List<User> users;
+    private LocalDateTime randomWindowClosesAt;
+
+    @Override
+    public void populateDatabase() throws SQLException {
+        Authority authority = TestSharedMethods.insertTestAuthority(authorityDao);
+        Building building = buildingDao.addBuilding(TestSharedMethods.testBuilding());
+        Location location = TestSharedMethods.testLocation(authority.clone(), building);
+        location.setNumberOfSeats(USERS);
+        locationDao.addLocation(location);
+        locationDao.approveLocation(location, true);
+
+        // Less seats than users in total, so that both windows also reject reservations because they are full.
+        randomWindowClosesAt = LocalDateTime.now().plusSeconds(RANDOM_WINDOW_SECONDS);
+        LocalDateTime randomReservableFrom = randomWindowClosesAt.minusMinutes(RANDOM_RESERVATION_DURATION_MINS);
+        LocalDateTime firstComeFirstServeReservableFrom = LocalDateTime.now().minusMinutes(RANDOM_RESERVATION_DURATION_MINS + 1);
+        int averageSeats = Math.max(1, USERS / TIMESLOTS_PER_WINDOW * 3 / 4);
+        randomTimeslots = addTimeslots(location, 0, randomReservableFrom, averageSeats);
+        firstComeFirstServeTimeslots = addTimeslots(location, TIMESLOTS_PER_WINDOW, firstComeFirstServeReservableFrom, averageSeats);
+
+        users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(TestSharedMethods.studentTestUser(String.format("burst%06d", i)));
+        }
+        insertUsers(users);
+        statePublisher.clear();
+    }
+
+    private List<Timeslot> addTimeslots(Location location, int firstDay, LocalDateTime reservableFrom, int averageSeats) {
+        YearWeek week = YearWeek.now().plusWeeks(1);
+        List<Timeslot> timeslots = new ArrayList<>();
+        for (int i = 0; i < TIMESLOTS_PER_WINDOW; i++) {
+            int seats = averageSeats / 2 + random.nextInt(averageSeats + 1);
+            timeslots.add(new Timeslot(null, week.atDay(DayOfWeek.MONDAY).plusDays(firstDay + i), LocalTime.of(8, 0),
+                    LocalTime.of(18, 0), true, reservableFrom, seats, location.getLocationId()));
+        }
+        return timeslotDAO.addTimeslots(timeslots);
+    }
+
+    private void insertUsers(List<User> users) throws SQLException {
+        String sql = "insert into users (user_id, first_name, last_name, penalty_points, mail, password, institution, admin) " +
+                "values (?, ?, ?, 0, ?, ?, ?, false)";
+        try (Connection conn = connectionProvider.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (User user : users) {
+                pstmt.setString(1, user.getUserId());
+                pstmt.setString(2, user.getFirstName());
+                pstmt.setString(3, user.getLastName());
+                pstmt.setString(4, user.getMail());
+                pstmt.setString(5, user.getPassword());
+                pstmt.setString(6, Institution.UGent);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    @Test
+    public void reservationBurst() throws Exception {
+        List<Request> requests = new ArrayList<>(2 * USERS);
+        for (User user : users) {
+            requests.add(new Request(user, randomTimeslots.get(random.nextInt(randomTimeslots.size())), true));
+            requests.add(new Request(user, firstComeFirstServeTimeslots.get(random.nextInt(firstComeFirstServeTimeslots.size())), false));
+        }
+        Collections.shuffle(requests, random);
+
+        AtomicInteger failed = new AtomicInteger(0);
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (Request request : requests) {
+            clients.execute(() -> {
+                try {
+                    start.await();
+                    request.send(locationReservationController);
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                }
+            });
+        }
+        long startedAt = System.nanoTime();
+        start.countDown();
+        clients.shutdown();
+        Assert.assertTrue("The burst did not finish in time", clients.awaitTermination(RANDOM_WINDOW_SECONDS, TimeUnit.SECONDS));
+        long sentAt = System.nanoTime();
+
+        int queued = requests.size() - failed.get();
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(RANDOM_WINDOW_SECONDS) + TimeUnit.MINUTES.toMillis(5);
+        Assert.assertTrue("Not every reservation was decided in time", statePublisher.awaitDecided(queued, timeoutMillis));
+        long decidedAt = System.nanoTime();
+
+        List<Long> enqueueLatencies = new ArrayList<>();
+        List<Long> randomDecisionTimes = new ArrayList<>();
+        List<Long> firstComeFirstServeDecisionTimes = new ArrayList<>();
+        for (Request request : requests) {
+            if (request.sentAt == 0) {
+                continue;
+            }
+            enqueueLatencies.add(request.queuedAt - request.sentAt);
+            Long requestDecidedAt = statePublisher.getDecidedAt(request.timeslot.getTimeslotSeqnr(), request.user.getUserId());
+            if (requestDecidedAt != null) {
+                (request.random ? randomDecisionTimes : firstComeFirstServeDecisionTimes).add(requestDecidedAt - request.sentAt);
+            }
+        }
+
+        System.out.println(String.format("Reservation burst: seed %d, %d users, %d timeslots per window, %d client threads",
+                SEED, USERS, TIMESLOTS_PER_WINDOW, THREADS));
+        System.out.println(String.format("  %d requests sent in %d ms (%.0f requests/s), %d failed",
+                requests.size(), TimeUnit.NANOSECONDS.toMillis(sentAt - startedAt),
+                requests.size() / ((sentAt - startedAt) / 1e9), failed.get()));
+        System.out.println(String.format("  %d reservations decided after %d ms (%.0f reservations/s end-to-end)",
+                queued, TimeUnit.NANOSECONDS.toMillis(decidedAt - startedAt), queued / ((decidedAt - startedAt) / 1e9)));
+        System.out.println("  enqueue latency                 " + percentiles(enqueueLatencies));
+        System.out.println("  decision time, first come first serve " + percentiles(firstComeFirstServeDecisionTimes));
+        // Includes the wait until the random window closes.
+        System.out.println("  decision time, random window    " + percentiles(randomDecisionTimes));
+
+        Assert.assertEquals("Every request should have been queued", 0, failed.get());
+        assertNothingPending();
+        assertNotOversubscribed();
+    }
+
+    private static String percentiles(List<Long> nanos) {
+        if (nanos.isEmpty()) {
+            return "no samples";
+        }
+        long[] sorted = new long[nanos.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = nanos.get(i);
+        }
+        Arrays.sort(sorted);
+        return String.format("p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms (%d samples)",
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6, sorted.length);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private void assertNothingPending() throws SQLException {
+        String sql = "select count(*) from location_reservations where state = 'PENDING'";
+        try (Connection conn = connectionProvider.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            Assert.assertEquals("No reservation should still be pending", 0, rs.getInt(1));
+        }
+    }
+
+    private void assertNotOversubscribed() throws SQLException {
+        String sql = "select t.sequence_number, t.seat_count, count(lr.user_id) " +
+                "from timeslots t join location_reservations lr on lr.timeslot_sequence_number = t.sequence_number " +
+                "where lr.state = 'APPROVED' " +
+                "group by t.sequence_number, t.seat_count " +
+                "having count(lr.user_id) > t.seat_count";
+        try (Connection conn = connectionProvider.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Assert.fail(String.format("Timeslot %d has %d seats, but %d approved reservations",
+                        rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+            }
+        }
+    }
+
+    private static class Request {
+        private final User user;
+        private final Timeslot timeslot;
+        private final boolean random;
+
+        private volatile long sentAt;
+        private volatile long queuedAt;
+
+        private Request(User user, Timeslot timeslot, boolean random) {
+            this.user = user;
+            this.timeslot = timeslot;
+            this.random = random;
+        }
+
+        private void send(LocationReservationController controller) {
+            // The controller is secured, the call is made on behalf of the user.
+            SecurityContextHolder.getContext().setAuthentication(
+                    new UsernamePasswordAuthenticationToken(user, "", user.getAuthorities()));
+            try {
+                long sentAt = System.nanoTime();
+                controller.createLocationReservation(user, timeslot, null);
+                this.queuedAt = System.nanoTime();
+                this.sentAt = sentAt;
+            } finally {
+                SecurityContextHolder.clearContext();
+            }
+        }
+    }
+
+    /**
+     * Remembers when every reservation was decided, right before the decision is pushed to the user.
+     */
+    static class RecordingStatePublisher extends ReservationStatePublisher {
+
+        // timeslot sequence number + user id -> System.nanoTime() of the decision
+        private final Map<String, Long> decidedAt = new ConcurrentHashMap<>();
+
+        RecordingStatePublisher(SimpMessageSendingOperations messagingTemplate) {
+            super(messagingTemplate);
+        }
+
+        @Override
+        public void publish(PoolDecision decision) {
+            long now = System.nanoTime();
+            for (String userId : decision.getApproved()) {
+                decidedAt.put(key(decision.getTimeslotSeqnr(), userId), now);
+            }
+            for (PoolDecision.RejectionReason reason : PoolDecision.RejectionReason.values()) {
+                for (String userId : decision.getRejected(reason)) {
+                    decidedAt.put(key(decision.getTimeslotSeqnr(), userId), now);
+                }
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+            super.publish(decision);
+        }
+
+        Long getDecidedAt(int timeslotSeqnr, String userId) {
+            return decidedAt.get(key(timeslotSeqnr, userId));
+        }
+
+        synchronized boolean awaitDecided(int count, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (decidedAt.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        void clear() {
+            decidedAt.clear();
+        }
+
+        private static String key(int timeslotSeqnr, String userId) {
+            return timeslotSeqnr + "/" + userId;
+        }
+    }
+
+    @TestConfiguration
+    static class SimulationConfiguration {
+        @Bean
+        @Primary
+        public RecordingStatePublisher recordingStatePublisher(SimpMessageSendingOperations messagingTemplate) {
+            return new RecordingStatePublisher(messagingTemplate);
+        }
+    }
+
+}
@@ -15,10 +15,12 @@ import {
     ReplaySubject,
     Subject,
     Subscription,
-    throwError
+    throwError,
+    timer
 } from 'rxjs';
 import {map} from 'rxjs/internal/operators/map';
 import {LocationReservationsService} from 'src/app/services/api/location-reservations/location-reservations.service';
+import {ReservationUpdatesService} from 'src/app/services/api/location-reservations/reservation-updates.service';
 import {AuthenticationService} from 'src/app/services/authentication/authentication.service';
 import {TimeslotCalendarEventService} from 'src/app/services/timeslots/timeslot-calendar-event/timeslot-calendar-event.service';
 import {LocationReservation, LocationReservationState} from 'src/app/shared/model/LocationReservation';
@@ -32,7 +34,7 @@ import {Location} from '../../shared/model/Location';
 import {LocationTag} from '../../shared/model/LocationTag';
 import * as Leaf from 'leaflet';
 import {LoginRedirectService} from 'src/app/services/authentication/login-redirect.service';
-import {catchError, tap} from 'rxjs/operators';
+import {catchError, switchMap, tap} from 'rxjs/operators';
 import {CalendarEvent} from 'angular-calendar';
 
 // Leaflet stuff.
@@ -104,6 +106,8 @@ export class LocationDetailsComponent implements OnInit, AfterViewInit, OnDestro
 
     locationSub: Subscription;
     calendarSub: Subscription;
+    reservationUpdatesSub: Subscription;
+    refreshSub: Subscription;
 
     leafletMap: Leaf.Map;
 
@@ -125,6 +129,7 @@ export class LocationDetailsComponent implements OnInit, AfterViewInit, OnDestro
         private datepipe: DatePipe,
         private authenticationService: AuthenticationService,
         private locationReservationService: LocationReservationsService,
+        private reservationUpdatesService: ReservationUpdatesService,
         private modalService: MatDialog,
         private router: Router,
         private breadcrumbs: BreadcrumbService,
@@ -183,10 +188,20 @@ export class LocationDetailsComponent implements OnInit, AfterViewInit, OnDestro
             this.updateCalendar();
         });
 
-        setInterval(() => {
+        // The decisions of the own reservations are pushed. Only while they can't be, they are polled every minute.
+        // The occupancy of the timeslots is not pushed, it is refreshed less often while the decisions are pushed.
+        this.reservationUpdatesSub = this.reservationUpdatesService.stateChanges().subscribe(() => {
             this.updateCalendar();
             this.updateOwnReservations();
-        }, 60 * 1000); // 1 minute
+        });
+        this.refreshSub = this.reservationUpdatesService.isConnected().pipe(
+            switchMap(connected => timer(60 * 1000, (connected ? 10 : 1) * 60 * 1000).pipe(map(() => connected)))
+        ).subscribe(connected => {
+            this.updateCalendar();
+            if (!connected) {
+                this.updateOwnReservations();
+            }
+        });
 
         this.location.pipe().subscribe(location => {
             this.locationSubscribed = location.subscribed;
@@ -209,6 +224,8 @@ export class LocationDetailsComponent implements OnInit, AfterViewInit, OnDestro
     ngOnDestroy(): void {
         this.locationSub?.unsubscribe();
         this.calendarSub?.unsubscribe();
+        this.reservationUpdatesSub?.unsubscribe();
+        this.refreshSub?.unsubscribe();
         if (this.leafletMap) {
             this.leafletMap.off();
             this.leafletMap.remove();
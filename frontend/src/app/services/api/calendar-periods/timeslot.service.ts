@@ -6,6 +6,7 @@ import { Observable } from 'rxjs';
 import { map } from 'rxjs/internal/operators/map';
 import { filter } from 'rxjs/internal/operators/filter';
 import { api } from '../endpoints';
+import { getFirstPages } from '../paging';
 import { LocationStatus } from '../../../app.constants';
 import { Cache } from '../../../shared/cache/Cache';
 import { Timeslot } from 'src/app/shared/model/Timeslot';
@@ -25,8 +26,8 @@ export class TimeslotsService {
   getTimeslotsOfLocation(
     locationId: number
   ): Observable<Timeslot[]> {
-    return this.http
-      .get<Timeslot[]>(
+    return getFirstPages<Timeslot>(
+        this.http,
         api.timeslots.replace('{locationId}', String(locationId))
       )
       .pipe(
@@ -58,6 +58,8 @@ export const api = {
     '/api/locations/reservations/{userId}',
   locationReservationsOfNotScannedUsers:
     '/api/locations/reservations/not-scanned',
+  // STOMP over a plain WebSocket, the decisions of the own reservations are pushed to /user/queue/reservations
+  reservationUpdates: '/api/ws/websocket',
 
   // USER_LOCATION_SUBSCRIPTIONS
   userLocationSubscriptions: '/api/locations/{locationId}/subscriptions',
@@ -1,6 +1,7 @@
 import { Injectable } from '@angular/core';
 import { HttpClient, HttpHeaders, HttpParams } from '@angular/common/http';
 import { api } from '../endpoints';
+import { getFirstPages } from '../paging';
 import { LocationReservation } from '../../../shared/model/LocationReservation';
 import { combineLatest, Observable } from 'rxjs';
 import { Timeslot } from 'src/app/shared/model/Timeslot';
@@ -21,8 +22,7 @@ export class LocationReservationsService {
       return of<LocationReservation[]>([]);
     }
     const params = new HttpParams().set('id', id);
-    return this.http
-      .get<LocationReservation[]>(api.locationReservationsOfUser, { params })
+    return getFirstPages<LocationReservation>(this.http, api.locationReservationsOfUser, params)
       .pipe(map((ls) => ls.map(LocationReservation.fromJSON.bind(this))));
   }
 
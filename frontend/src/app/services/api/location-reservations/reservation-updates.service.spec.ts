@@ -0,0 +1,16 @@
+import { TestBed } from '@angular/core/testing';
+
+import { ReservationUpdatesService } from './reservation-updates.service';
+
+describe('ReservationUpdatesService', () => {
+  let service: ReservationUpdatesService;
+
+  beforeEach(() => {
+    void TestBed.configureTestingModule({});
+    service = TestBed.inject(ReservationUpdatesService);
+  });
+
+  it('should be created', () => {
+    expect(service).toBeTruthy();
+  });
+});
@@ -0,0 +1,100 @@
+import { Injectable, NgZone } from '@angular/core';
+import { BehaviorSubject, Observable, Subject } from 'rxjs';
+import { LocationReservationState } from '../../../shared/model/LocationReservation';
+import { api } from '../endpoints';
+
+export interface LocationReservationStateChange {
+  timeslotSeqnr: number;
+  state: LocationReservationState;
+  // Why the reservation was rejected, null if it was approved.
+  reason: string | null;
+}
+
+const RESERVATIONS_QUEUE = '/user/queue/reservations';
+const MAX_RETRY_DELAY_MS = 60 * 1000;
+
+/**
+ * Receives the decisions of the own reservations as soon as they are made, so that they don't need
+ * to be polled. This speaks just enough STOMP to connect, authenticated with the token, and to subscribe
+ * to the queue of the user. The connection is opened on first use and reopened when it is lost.
+ */
+@Injectable({
+  providedIn: 'root',
+})
+export class ReservationUpdatesService {
+  private socket: WebSocket = null;
+  private retryDelay = 1000;
+
+  private readonly changes = new Subject<LocationReservationStateChange>();
+  private readonly connected = new BehaviorSubject<boolean>(false);
+
+  constructor(private zone: NgZone) {}
+
+  /**
+   * The decisions of the own reservations, from now on.
+   */
+  stateChanges(): Observable<LocationReservationStateChange> {
+    this.connect();
+    return this.changes.asObservable();
+  }
+
+  /**
+   * Whether the decisions are being received. While they are not, the reservations have to be polled.
+   */
+  isConnected(): Observable<boolean> {
+    this.connect();
+    return this.connected.asObservable();
+  }
+
+  private connect(): void {
+    const token = localStorage.getItem('access_token');
+    if (this.socket || !token) {
+      return;
+    }
+    const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+    // Keep the socket and its timers outside of Angular, only the decisions need change detection.
+    this.zone.runOutsideAngular(() => {
+      const socket = new WebSocket(`${protocol}//${window.location.host}${api.reservationUpdates}`);
+      socket.onopen = () => {
+        socket.send(frame('CONNECT', { 'accept-version': '1.2', 'heart-beat': '0,0', 'X-AUTH': token }));
+        socket.send(frame('SUBSCRIBE', { id: 'reservations', destination: RESERVATIONS_QUEUE }));
+      };
+      socket.onmessage = (event: MessageEvent) => this.receive(String(event.data));
+      socket.onclose = () => {
+        this.socket = null;
+        this.zone.run(() => this.connected.next(false));
+        setTimeout(() => this.connect(), this.retryDelay);
+        this.retryDelay = Math.min(2 * this.retryDelay, MAX_RETRY_DELAY_MS);
+      };
+      this.socket = socket;
+    });
+  }
+
+  private receive(data: string): void {
+    // A frame is a command, its headers, an empty line and the body, terminated by a NULL character.
+    for (const raw of data.split('\0')) {
+      const text = raw.replace(/^\n+/, '');
+      if (text.length === 0) {
+        continue;
+      }
+      const bodyStart = text.indexOf('\n\n');
+      const command = text.substring(0, text.indexOf('\n'));
+      const body = bodyStart < 0 ? '' : text.substring(bodyStart + 2);
+      if (command === 'CONNECTED') {
+        this.retryDelay = 1000;
+        this.zone.run(() => this.connected.next(true));
+      } else if (command === 'MESSAGE') {
+        const change = JSON.parse(body) as LocationReservationStateChange;
+        this.zone.run(() => this.changes.next(change));
+      } else if (command === 'ERROR') {
+        // E.g. an expired token, retry once a new one may be there.
+        this.socket?.close();
+      }
+    }
+  }
+}
+
+function frame(command: string, headers: { [name: string]: string }): string {
+  const lines = Object.keys(headers).map((name) => `${name}:${headers[name]}`);
+  return `${command}\n${lines.join('\n')}\n\n\0`;
+}
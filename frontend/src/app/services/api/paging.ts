@@ -0,0 +1,63 @@
+import { HttpClient, HttpParams } from '@angular/common/http';
+import { EMPTY, Observable } from 'rxjs';
+import { expand, map, reduce } from 'rxjs/operators';
+
+export const NEXT_PAGE_TOKEN_HEADER = 'X-Next-Page-Token';
+
+/**
+ * The most pages that are fetched at once. With the page size of the backend (500), this is far more than
+ * a list is expected to hold, but it keeps an unexpectedly long list from being fetched as a whole.
+ */
+export const MAX_PAGES = 10;
+
+export interface Pages<T> {
+  items: T[];
+  // The token to fetch the following pages with on demand, or null if there are none.
+  nextPageToken: string | null;
+}
+
+/**
+ * Fetch the pages of a paged list endpoint, starting at the page of the given token, until there are no more
+ * or maxPages pages are fetched. The backend returns the items of a page as the body, and the token of the
+ * next page in the X-Next-Page-Token header (cfr. KeysetPage in the backend).
+ */
+export function getPages<T>(
+  http: HttpClient,
+  url: string,
+  params: HttpParams = new HttpParams(),
+  maxPages: number = MAX_PAGES,
+  pageToken: string | null = null
+): Observable<Pages<T>> {
+  const getPage = (token: string | null) =>
+    http.get<T[]>(url, {
+      params: token ? params.set('pageToken', token) : params,
+      observe: 'response',
+    });
+
+  return getPage(pageToken).pipe(
+    // The pages are fetched one after the other, the index is the number of the page that was fetched.
+    expand((response, index) => {
+      const nextPageToken = response.headers.get(NEXT_PAGE_TOKEN_HEADER);
+      return nextPageToken && index + 1 < maxPages ? getPage(nextPageToken) : EMPTY;
+    }),
+    reduce(
+      (pages, response) => ({
+        items: pages.items.concat(response.body || []),
+        nextPageToken: response.headers.get(NEXT_PAGE_TOKEN_HEADER),
+      }),
+      { items: [], nextPageToken: null } as Pages<T>
+    )
+  );
+}
+
+/**
+ * Fetch the items of the first maxPages pages of a paged list endpoint (cfr. getPages).
+ */
+export function getFirstPages<T>(
+  http: HttpClient,
+  url: string,
+  params: HttpParams = new HttpParams(),
+  maxPages: number = MAX_PAGES
+): Observable<T[]> {
+  return getPages<T>(http, url, params, maxPages).pipe(map((pages) => pages.items));
+}
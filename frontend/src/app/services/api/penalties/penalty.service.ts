@@ -2,6 +2,7 @@ import { Injectable } from '@angular/core';
 import { HttpClient, HttpHeaders } from '@angular/common/http';
 import { Penalty } from '../../../shared/model/Penalty';
 import { api } from '../endpoints';
+import { getFirstPages } from '../paging';
 import {Observable, of} from 'rxjs';
 import { PenaltyEvent } from '../../../shared/model/PenaltyEvent';
 import { map } from 'rxjs/operators';
@@ -43,6 +44,6 @@ export class PenaltyService {
   }
 
   getAllPenalties(): Observable<Penalty[]> {
-    return this.http.get<Penalty[]>(api.getAllPenalties).pipe(map(v => v.map(p => Penalty.fromJSON(p))))
+    return getFirstPages<Penalty>(this.http, api.getAllPenalties).pipe(map(v => v.map(p => Penalty.fromJSON(p))))
   }
 }